@@ -5,7 +5,7 @@
   Java class name: DumpFile5
   Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL.
 
-  This is a Java 1.4 application to dump the contents of files in hexadecimal
+  This is a Java 8 application to dump the contents of files in hexadecimal
   and as 8-bit text bytes.  For example, using eight input bytes per line of
   the dump output:
 
@@ -20,7 +20,29 @@
   Choose your options; then click on the "Open Files" button and select one or
   more files to be dumped.  Output will be shown in a scrolling text area, and
   this output can be saved into a text file with the "Save Output As" button or
-  by copying and pasting from the text area.
+  by copying and pasting from the text area.  For large files, click on the
+  "Dump to File" button instead, which writes the dump directly into a file
+  without putting anything in the text area.  A progress bar at the bottom of
+  the window shows how much of the selected files have been dumped, and an
+  estimate of the time left.  The "Pause" button stops a long dump for a while
+  without losing your place, until you click "Resume", and "Cancel" stops it
+  for good.
+
+  To browse a single file of any size, click on the "View File" button instead.
+  The "File View" tab formats only the lines that are visible, directly from
+  the file, so memory use is the same for small and huge files.  You can jump
+  to any hexadecimal offset, and changing the number of bytes per line or the
+  8-bit option redraws the view immediately.  Identical lines are not replaced
+  by ellipses in this view.
+
+  Identical Lines
+  ---------------
+  When two or more dump lines in a row are the same as the line before them,
+  they are replaced by one line with ellipses ("...") followed by the number of
+  identical bytes and the offset of the last identical byte.  A single
+  duplicate line is printed as usual.  Lines are compared as raw input bytes,
+  eight bytes at a time, so long runs of zeros in disk images or sparse files
+  are skipped without formatting anything.
 
   Apache License or GNU General Public License
   --------------------------------------------
@@ -50,7 +72,29 @@
 
       java  DumpFile5  -w16  c:\msdos.sys  >d:\temp\filedump.txt
 
-  The graphical interface can be very slow when the output text area gets too
+  The "-o" option followed by a file name does the same without redirection,
+  for all files that come after it on the command line.
+
+  Only part of a file is dumped when you give a start offset with "-s" and/or
+  a length with "-n".  A negative start offset counts back from the end of the
+  file, and numbers may be decimal, hexadecimal with "0x", or have a "k", "m",
+  or "g" suffix for kilobytes, megabytes, or gigabytes.  We seek directly to
+  the start offset, so a small range of a huge file is dumped immediately.  To
+  dump the last 64 KB of a file:
+
+      java  DumpFile5  -s -64k  bigfile.dat
+
+  File offsets grow from 8 to as many as 16 hexadecimal digits for files that
+  are bigger than 4 GB.  The same range options are in the graphical interface.
+
+  Dump lines are formatted as bytes with lookup tables for the hexadecimal
+  digits and text characters, and are written to standard output in large
+  blocks, so that the console application runs at the speed of the disk.
+  Eight input bytes are handled together as one 64-bit "long" number: their
+  hexadecimal digits go out in three 8-byte stores, and plain text characters
+  are checked and replaced by dots in the same register.
+
+  The "Dump Output" tab can be very slow when the output text area gets too
   big.  The Java Swing components JScrollPane and JTextArea get themselves in
   knots trying to display more than a megabyte of scrolling output text.  The
   console application is much faster and uses a constant amount of virtual
@@ -60,94 +104,530 @@
   to a file.  Then open the output file in your favorite word processor or
   plain text editor.
 
+  Large files can be dumped in parallel with the "-p" option, which splits the
+  file into chunks with a whole number of dump lines, formats the chunks in
+  separate threads (one per processor by default), and prints the chunks in
+  their original order.  The output is exactly the same as the sequential dump.
+
+  Folders on the command line are searched for files, including subfolders,
+  and the files are dumped in order of their names.  The "-i" and "-x" options
+  include or exclude files found in folders by matching their names with "*"
+  and "?" wildcards.  To dump many small files quickly, "-j" dumps several
+  files at the same time (one per processor, or "-j#" for # files), with the
+  output still in the original order.  The "-d" option followed by a folder
+  name writes the dump of each file into its own file in that folder, named
+  after the input file with ".txt" added (or ".txt.gz" with "-z").  For
+  example:
+
+      java  DumpFile5  -j  -i *.dmp  -d d:\temp\dumps  d:\crashes
+
+  A summary with the number of files per second is written on standard error
+  when more than one file is dumped.
+
+  Input files are read through NIO channels.  Large files are mapped into
+  memory in windows of 64 MB (change with the "-m" option), and smaller files
+  are read into a direct buffer, which avoids copying bytes into the Java heap.
+  Special files that can't be mapped fall back to channel reads, and "-m0"
+  selects the original stream reads, if ever needed.
+
+  Compressed files are dumped as raw bytes, unless you give the "-u" option,
+  which dumps the decompressed contents of gzip files, and each entry in zip or
+  jar files, without writing temporary files.  Files are recognized by their
+  first few bytes, not by their names.  Zip entries are chosen with the same
+  "-i" and "-x" patterns as files in folders, and offsets are those of the
+  decompressed bytes.  One thread decompresses while another formats, so both
+  run at the same time on different processors:
+
+      java  DumpFile5  -u  -i *.class  program.jar
+
+  A file name of "-" dumps standard input, so the output of another program
+  can be piped into this one.  The "-t" option follows files as they grow,
+  like "tail -f" does, and keeps dumping bytes as they are added, with offsets
+  that continue from where they left off.  Idle files are checked more and
+  more slowly, and new lines are shown within 200 milliseconds ("-t#" for #
+  milliseconds), even if the last line isn't complete yet; it is shown again
+  when it is.  Identical lines are still replaced by ellipses across reads.
+  To watch the last 1 KB of a capture file and everything written after it:
+
+      java  DumpFile5  -t  -s -1k  capture.pcap
+
+  Comparing Files
+  ---------------
+  The "-c" option followed by two file names compares the files and prints
+  only the dump lines that differ, with the line from the first file followed
+  by the line from the second file, and a line of "^" marks under the bytes
+  that are different.  The "-cs" option puts the two lines side by side, which
+  needs a wide window.  Both files are read at the same time in large blocks,
+  and identical bytes are skipped eight at a time without being formatted, so
+  comparing two copies of a huge file runs at the speed of the disk.  A summary
+  at the end gives the number of differing regions (groups of consecutive
+  bytes that differ), the total number of bytes in them, and the largest one.
+  The "-s" and "-n" options compare only part of each file, and the "-l"
+  option followed by a number stops after that many differing regions:
+
+      java  DumpFile5  -l 10  -c  old\program.exe  new\program.exe
+
+  Checksums and Digests
+  ---------------------
+  The "--digest" option followed by a list of names, separated by commas,
+  prints checksums and digests of the dumped bytes after each summary, such as
+  "crc32,md5,sha256" (any message digest in Java works, like "sha3-256").  The
+  bytes are hashed while they are dumped, by another thread, so a large file
+  is read only once.  With "-s" or "-n", only the dumped range is hashed, and
+  with "-u", the uncompressed bytes.  The "--digest-only" option reads the
+  files at full speed and prints the digests without dumping anything, and a
+  list of "-" turns both off again.  The "crc32c" checksum needs Java 9:
+
+      java  DumpFile5  --digest-only sha256,md5  d:\evidence\disk.img
+
+  Analyzing Files
+  ---------------
+  The "-a" option prints a map of what is where in each file, instead of
+  dumping it.  Each block of 64 KB gets a byte histogram and a Shannon entropy
+  from zero to eight bits per byte, and is called zeros, fill (one repeated
+  byte), text, binary, or compressed or encrypted (7.5 bits or more).  Blocks
+  of the same kind are printed as one region with its average entropy,
+  followed by the entropy and most common bytes of the whole file.  Use "-a#"
+  for blocks of # KB, such as "-a4" for 4 KB.  Parallel threads count bytes in
+  their own arrays and add them together at the end, so the speed is usually
+  that of the disk:
+
+      java  DumpFile5  -a  d:\evidence\disk.img
+
+  In the graphical interface, a heat map beside the file view is filled in
+  while the file is analyzed: blue is low entropy, red is high, green is text,
+  and gray is zeros or fill.  Click on the map to jump to that block.
+
+  Rebuilding Files
+  ----------------
+  The "-r" option followed by two file names reads dump output from the first
+  file, and rebuilds the original bytes in the second file, like "xxd -r"
+  does.  Any number of bytes per line is allowed, each line is written at its
+  own file offset, and ellipses for identical lines are expanded again.  The
+  text column is ignored, so you can edit the hexadecimal digits in a dump and
+  rebuild a patched file.  Only the first file in the dump is rebuilt:
+
+      java  DumpFile5  -r  d:\temp\filedump.txt  d:\temp\patched.bin
+
+  Searching Files
+  ---------------
+  The "-f" option followed by a pattern searches all following files for that
+  pattern, instead of dumping them, and prints the file offset of each match.
+  Patterns for "-f" are hexadecimal bytes, where "??" matches any byte, such as
+  "4D 5A ?? 00" (with quotes on the command line because of the spaces).  Use
+  "-ft" for text exactly as typed, or "-fi" for text where upper and lower
+  case letters are the same.  The "-k" option followed by a number prints that
+  many dump lines before and after each match, and "-l" stops after a number
+  of matches.  The search uses the Boyer-Moore-Horspool algorithm, which skips
+  ahead by up to the length of the pattern without looking at most bytes, and
+  large files are searched by parallel threads with the "-p" option:
+
+      java  DumpFile5  -p  -k 2  -fi "password"  d:\temp\memory.dmp
+
+  In the graphical interface, type a pattern in the "Find" field of the file
+  view, choose what kind of pattern it is, and click "Next" or "Previous" to
+  jump to the next or previous match, which is shown with a colored background.
+
+  Performance
+  -----------
+  Benchmarks for formatting dump lines in memory and for dumping whole files
+  are kept outside this program, in the "jmh" source set of the Gradle build
+  ("gradle jmh").  Run them before and after changing this program, on the
+  same computer, and compare the numbers.
+
+  The "--stats" option prints statistics on standard error after the files
+  are dumped: bytes read, lines printed and skipped as identical, megabytes
+  and lines per second, and the time that all threads spent reading,
+  formatting, writing, and waiting for each other.  If reading takes longer
+  than formatting, a faster disk helps more than more threads.  The same
+  numbers are published as an MBean named "DumpFile5:type=Statistics", which
+  JConsole or another JMX client can watch while a long dump is running.
+
+  Formatting in Other Programs
+  ----------------------------
+  Dump lines are formatted by the DumpFile5Formatter class, which has no static
+  variables and never changes after it is made from a DumpFile5Options object,
+  so one formatter can be used by many threads at once.  Other Java classes
+  compiled with this source file can format a ByteBuffer, a channel, or an
+  input stream into a StringBuilder, a Writer, a byte channel, or a callback
+  for each line, without running a separate copy of this program.  See the
+  comments for that class.  All of these classes are in the default package,
+  and Java doesn't let a class in a named package refer to the default
+  package, so only code that is also in the default package can call them
+  directly.  Programs in named packages must run this program instead, or
+  find the classes by name with reflection (as the JMH benchmarks do).
+
+  Hex Views Over HTTP
+  -------------------
+  The "--serve" option followed by a port number and a folder runs a small web
+  server, with the web server that comes with the JDK, so that files on a
+  shared computer can be viewed in a browser or with "curl" without copying
+  them or opening the graphical interface.  The server listens only on the
+  loopback address (127.0.0.1), so use an SSH tunnel to reach it from another
+  computer.  For example:
+
+      java  DumpFile5  -w32  --serve 8080  /data/artifacts
+
+      http://localhost:8080/dump/build/core.bin?offset=0x1000&length=64k
+
+  A path name that ends with a folder lists the names in that folder.  The
+  query may have "offset" (negative from the end of the file), "length" (up to
+  1 MB), "width", and "e=1" or "e=0" for 8-bit or 7-bit text.  Numbers are
+  written the same as for "-s" and "-n".  The width and text options given on
+  the command line before "--serve" are the defaults.  Requests are handled
+  by a pool of threads ("-p#" picks how many, otherwise one per processor),
+  and each one reads its range with positional reads, so a slow request never
+  holds up another.  Formatted pages are kept in a 64 MB cache, with the least
+  recently used pages thrown away first.  Pages are cached by file name,
+  modification time, size, and options, so a changed file is read again.  The
+  cache hits and misses are shown at "/stats", and are in the MBean for
+  "--stats".
+
+  Multi-Byte Text
+  ---------------
+  The "--text" option followed by "utf8", "utf16le", or "utf16be" decodes the
+  text column as Unicode characters instead of one character per byte, and
+  "ascii" goes back to the usual text.  Each character is shown where its
+  first byte is, and its other bytes are spaces.  A character that starts near
+  the end of a line is shown on that line, and its bytes at the start of the
+  next line are spaces.  Bytes that aren't part of a valid character are
+  periods, as are controls and characters that the output can't show.  UTF-16
+  characters start at even file offsets.  The decoders are lookup tables, not
+  Java character set decoders, so most of the cost is for the characters that
+  aren't ASCII.  The same text is used by "--serve" and by the dump output in
+  the graphical interface, but not by the file view:
+
+      java  DumpFile5  --text utf16le  c:\windows\system32\notepad.exe
+
+  Fast Startup
+  ------------
+  A console dump doesn't load any AWT or Swing classes.  The graphical
+  interface opens before the list of font names is ready, because finding the
+  installed fonts can take seconds on some computers, and locale data for
+  numbers with commas is loaded by a background thread.  Most of the time for
+  a small file is spent starting Java itself, and two features of newer JDKs
+  (version 13 or later) help with that.  Class data sharing keeps the classes
+  that a dump needs in an archive file, which must be made from the jar file,
+  not from loose class files:
+
+      java  -XX:ArchiveClassesAtExit=DumpFile5.jsa  -jar DumpFile5.jar  x.txt
+
+      java  -XX:SharedArchiveFile=DumpFile5.jsa  -jar DumpFile5.jar  [files]
+
+  A runtime image with only the modules for console dumps is smaller than the
+  full JDK and starts faster.  Add "java.desktop" for the graphical interface,
+  and "jdk.httpserver" for "--serve".  Make the image's own archive of JDK
+  classes, and then make the archive above with the image's "java" command:
+
+      jlink  --add-modules java.base,java.management  --strip-debug
+        --no-header-files  --no-man-pages  --output dumprt
+
+      dumprt/bin/java  -Xshare:dump
+
+  On one test computer (JDK 17, one processor), the time to the first line of
+  a 2 KB file was 171 ms with the full JDK, 155 ms with an archive, 124 ms
+  with the smaller runtime image, and 111 ms with both, compared to 77 ms for
+  a program that only prints "hello".  The "-XX:TieredStopAtLevel=1" option
+  saves another 10 ms for small files, but takes twice as long for big ones.
+
+  Compressed Output
+  -----------------
+  Dump output is about four and a half times the size of the input, and is
+  easy to compress.  The "-z" option compresses the output of all following
+  files with gzip, whether the output goes to standard output, to a file from
+  "-o", or to one file per input file from "-d" (which then adds ".txt.gz" to
+  the names).  The output is cut into blocks of 1 MB ("--gzip-block" followed
+  by a size to change that), and each block is compressed by itself, by one
+  thread per processor, and written in order as a separate gzip member.  The
+  result is a standard gzip file that "gunzip" and "zcat" read as if it were
+  compressed in one piece, and which is only slightly bigger.  For example:
+
+      java  DumpFile5  -p  -z  -o core.txt.gz  core.bin
+
+      zcat  core.txt.gz  |  less
+
+  The default level is the fastest, "-z1", which already makes dump output
+  four times smaller.  Higher levels, up to "-z9", make files as much as a
+  third smaller than that, but level 6 is already five times slower.  On one
+  processor, level 1 compresses dump output at about 65 MB per second, so a
+  dump that makes 300 MB of output per second needs about five processors to
+  compress it without waiting.  The "-z0" option goes back to plain text.
+
   Restrictions and Limitations
   ----------------------------
-  Input bytes are shown only as 7-bit or 8-bit ASCII text.  A period (".") is
-  substituted for unprintable characters.  It would be possible to display
-  pairs of bytes as simple 16-bit Unicode text.  However, none of the double-
-  byte shifting character sets common in Chinese, Japanese, or Korean are
-  practical because multi-byte character sequences will most likely be broken
-  across lines in the dump output.  Extended Unicode characters can not be
-  supported for the same reason, where multiple 16-bit values are combined into
-  additional character codes.
+  Input bytes are shown as 7-bit or 8-bit ASCII text, or as UTF-8 or UTF-16
+  with the "--text" option.  A period (".") is substituted for unprintable
+  characters.  None of the double-byte shifting character sets common in
+  Chinese, Japanese, or Korean are supported, because their shift state can't
+  be known from a few bytes before each line.  Characters that are twice as
+  wide as others in a terminal window may move the right side of the text
+  column, and combining marks are shown as periods so that they don't.  The
+  first bytes of a line after ellipses for identical lines, or after a line
+  that "-t" showed while waiting for more bytes, are periods if they continue
+  a character from the line before.
 */
 
+import com.sun.net.httpserver.HttpExchange; // hex views for "--serve"
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 import java.awt.*;                // older Java GUI support
 import java.awt.event.*;          // older Java GUI event support
 import java.io.*;                 // standard I/O
+import java.lang.management.*;    // buffer pools and the platform MBean server
+import javax.management.*;        // statistics published as an MBean
+import java.net.InetAddress;      // loopback address for "--serve"
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;       // query values in requests
+import java.nio.*;                // byte buffers for input files
+import java.nio.channels.*;       // file channels and memory mapping
+import java.nio.charset.Charset;  // text encoding for dump lines
+import java.nio.charset.CharsetEncoder;
+import java.security.MessageDigest; // digests of dumped bytes
+import java.security.NoSuchAlgorithmException;
 import java.text.*;               // number formatting
+import java.util.Arrays;          // sorting file names in folders
+import java.util.Enumeration;     // entries in zip files
+import java.util.Iterator;        // removing least recently used pages
+import java.util.LinkedHashMap;   // page cache in order of access
+import java.util.Vector;          // lists of files and name patterns
+import java.util.concurrent.CancellationException; // results of dump jobs
+import java.util.concurrent.Executors; // thread pool for "--serve"
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer; // line callback for formatter library
+import java.util.regex.*;         // regular expressions for file names
+import java.util.zip.*;           // gzip and zip files, gzip output
 import javax.swing.*;             // newer Java GUI support
 
 public class DumpFile5
 {
   /* constants */
 
+  static final int ANALYZE_BLOCKS = 0x100000; // most blocks analyzed per file
+  static final double ANALYZE_RANDOM = 7.5; // bits per byte when compressed
+  static final int ANALYZE_SIZE = 0x10000; // default analysis block (64 KB)
+  static final int ANALYZE_UNIT = 0x100000; // bytes read at once per thread
+  static final int BATCH_LIMIT = 0x400000; // most output kept for one file
   static final int BUFFER_SIZE = 0x10000; // input buffer size in bytes (64 KB)
+  static final int CHUNK_SIZE = 0x40000; // input bytes per chunk (256 KB)
+  static final int COMPARE_SIZE = 0x100000; // compare buffer size (1 MB)
+  static final int DIGEST_SIZE = 0x100000; // digest-only read size (1 MB)
   static final String COPYRIGHT_NOTICE =
     "Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL.";
   static final String[] DUMP_WIDTHS = {"4", "8", "12", "16", "24", "32"};
                                   // number of input bytes per dump line
+  static final int FOLLOW_DELAY = 200; // default milliseconds to show new bytes
   static final String[] FONT_SIZES = {"10", "12", "14", "16", "18", "20", "24",
     "30"};                        // point sizes for text in output text area
-  static final int OFFSET_DIGITS = 8; // hex digits in file offset (location)
+  static final int GZIP_BLOCK = 0x100000; // compressed output block (1 MB)
+  static final int GZIP_TYPE = 1; // input file is gzip compressed
+  static final int MAP_MINIMUM = 0x100000; // smallest file to map (1 MB)
+  static final int MAP_WINDOW = 64; // default mapped window size in megabytes
+  static final int MAX_DIGITS = 16; // most hex digits in a file offset
+  static final int MAX_THREADS = 64; // maximum number of parallel dump threads
+  static final int MAX_WIDTH = 32; // largest number in <DUMP_WIDTHS>
+  static final byte[] HEX_DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7',
+    '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'}; // hexadecimal digits
+  static final int OFFSET_DIGITS = 8; // fewest hex digits in file offset
+  static final int OUTPUT_SIZE = 0x40000; // output block size in bytes (256 KB)
+  static final int PIPE_BLOCKS = 8; // decompressed blocks waiting to be dumped
+  static final int POLL_FIRST = 5; // first wait for a followed file to grow
   static final String PROGRAM_TITLE =
     "Dump Files in Hexadecimal and as Text - by: Keith Fenske";
+  static final int PUBLISH_DELAY = 100; // milliseconds between GUI updates
+  static final int PUBLISH_LIMIT = 0x100000; // most characters waiting for GUI
+  static final int REVERSE_SIZE = 0x100000; // reverse mode buffer size (1 MB)
+  static final int SEARCH_SIZE = 0x400000; // search region size (4 MB)
+  static final int ZIP_TYPE = 2;  // input file is a zip or jar archive
 
   /* class variables */
 
+  static int analyzeSize;         // analysis block size, or 0 to dump files
+  static File[] batchFiles;       // all files in a batch, folders expanded
+  static DumpFile5Job[] batchJobs; // jobs waiting to print, by number
+  static final Object batchLock = new Object(); // synchronizes batch threads
+  static String[] batchNames;     // output names for <batchFiles>
+  static int batchNext;           // next file number to be dumped
+  static int batchPrinted;        // number of files already printed
+  static int batchSpareCount;     // number of jobs in <batchSpares>
+  static DumpFile5Job[] batchSpares; // printed jobs that can be reused
   static JButton cancelButton;    // graphical button for <cancelFlag>
-  static boolean cancelFlag;      // our signal from user to stop processing
+  static volatile boolean cancelFlag; // our signal from user to stop processing
+  static DumpFile5Chunk[] chunkBuffers; // formatted chunks waiting to print
+  static FileChannel chunkChannel; // file being dumped by parallel threads
+  static long chunkCount;         // total number of chunks in parallel dump
+  static int chunkDigits;         // hex digits in file offset for chunks
+  static boolean chunkDigest;     // true if chunks keep input for digests
+  static String chunkError;       // first error message from a chunk thread
+  static long chunkLineCount;     // total number of dump lines in range
+  static long chunkLines;         // number of dump lines in each chunk
+  static final Object chunkLock = new Object(); // synchronizes chunk threads
+  static long chunkNext;          // next chunk number to be formatted
+  static long chunkPrinted;       // number of chunks already printed
+  static long chunkSize;          // number of bytes to dump from file
+  static int chunkSpareCount;     // number of chunks in <chunkSpares>
+  static DumpFile5Chunk[] chunkSpares; // printed chunks that can be reused
+  static long chunkStart;         // file offset of first byte to dump
+  static boolean compareSide;     // true if compared lines are side by side
   static boolean consoleFlag;     // true if running as a console application
-  static int dumpStart;           // index where first hexadecimal digits go
+  static String digestNames;      // checksums and digests to compute, or null
+  static boolean digestOnly;      // true if we compute digests without dump
   static int dumpWidth;           // number of input bytes per dump line
   static JComboBox dumpWidthDialog; // graphical option for <dumpWidth>
   static JCheckBox eightBitCheckbox; // graphical option for <eightBitFlag>
   static boolean eightBitFlag;     // true if we display bytes as 8-bit text
+  static JButton dumpButton;      // "Dump to File" button
+  static Vector<Pattern> excludeList; // patterns for file names to exclude
   static JButton exitButton;      // "Exit" button
   static JFileChooser fileChooser; // asks for input and output file names
+  static DumpFile5Job fileJob;    // buffers for dumping one file at a time
   static String fontName;         // font name for text in output text area
-  static JComboBox fontNameDialog; // graphical option for <fontName>
+  static JComboBox<String> fontNameDialog; // graphical option for <fontName>
   static int fontSize;            // point size for text in output text area
+  static DumpFile5Formatter formatter; // formats lines with current options
   static JComboBox fontSizeDialog; // graphical option for <fontSize>
-  static NumberFormat formatComma; // formats with commas (digit grouping)
-  static JFrame mainFrame;        // this application's window if GUI
+  static int followDelay;         // milliseconds before showing new bytes
+  static boolean followFlag;      // true if we follow files as they grow
+  static NumberFormat formatComma; // digit grouping, made when first needed
+  static int gzipBlock;           // output bytes compressed as one member
+  static int gzipLevel;           // gzip compression level, or zero for none
+  static DumpFile5Heatmap heatmap; // entropy map of file view, for GUI
+  static Vector<Pattern> includeList; // patterns for file names to include
+  static int jobCount;            // number of files dumped at the same time
+  static long limitCount;         // most differences or matches, zero for all
+  static int lineSize;            // maximum bytes in one formatted line
+  static Component mainFrame;     // this application's window if GUI
+  static int mapSize;             // mapped window size in bytes, or zero
   static JButton openButton;      // "Open Files" button
   static File[] openFileList;     // list of files selected by user
   static Thread openFilesThread;  // separate thread for openFiles() method
-  static int outputSize;          // characters needed in each dump buffer
+  static DumpFile5Task openTask;  // dump job started by openFiles() method
+  static String outputFolder;     // folder for one output file per input
+  static String outputName;       // output file name, or null for standard
+  static OutputStream outputStream; // buffered output stream, or null for GUI
+  static JTabbedPane outputTabs;  // dump output and file view
   static JTextArea outputText;    // generated report
+  static JButton pauseButton;     // pauses and resumes <openTask>
+  static JProgressBar progressBar; // how much has been dumped, if GUI
+  static Timer progressTimer;     // updates <progressBar> and <outputText>
+  static StringBuffer publishBuffer; // text waiting to go into <outputText>
+  static final Object publishLock = new Object(); // synchronizes <publish...>
+  static boolean publishScroll;   // true if we scroll after next update
+  static long rangeLength;        // number of bytes to dump, or -1 for all
+  static JTextField rangeLengthText; // graphical option for <rangeLength>
+  static long rangeStart;         // first byte to dump, negative from end
+  static JTextField rangeStartText; // graphical option for <rangeStart>
+  static ByteBuffer reverseBlock; // rebuilt bytes waiting to be written
+  static FileChannel reverseChannel; // output file for reverse mode
+  static int reverseFiles;        // number of "Dumping file" lines seen
+  static long reverseCount;       // number of bytes rebuilt
+  static byte[] reverseLast;      // bytes from previous dump line
+  static int reverseLength;       // number of bytes in <reverseLast>
+  static long reverseNext;        // file offset after previous dump line
+  static boolean reverseOpen;     // true if ellipses wait for next line
+  static long reverseStart;       // file offset of <reverseBlock>
   static JButton saveButton;      // "Save Output As" button
-  static int textStart;           // where first ASCII text character goes
+  static FileChannel searchChannel; // file being searched by parallel threads
+  static int searchContext;       // dump lines around each match, or -1
+  static long searchCount;        // total number of regions in search
+  static long searchEnd;          // file offset after last byte to search
+  static String searchError;      // first error message from a search thread
+  static DumpFile5Found[] searchFound; // regions waiting to print, by number
+  static final Object searchLock = new Object(); // synchronizes search threads
+  static long searchNext;         // next region number to be searched
+  static DumpFile5Pattern searchPattern; // search following files, or null
+  static long searchPrinted;      // number of regions already printed
+  static long searchStart;        // file offset of first byte to search
+  static boolean searchStop;      // true when enough matches were printed
+  static DumpFile5Stats stats;    // counters and timings for dumping
+  static boolean statsFlag;       // true if we print statistics after dumping
+  static DumpFile5Task task;      // dump job that is running now, or null
+  static final Object taskLock = new Object(); // one dump job at a time
+  static DumpFile5Decoder textDecoder; // UTF-8 or UTF-16 text, or null
+  static int threadCount;         // number of parallel dump threads, or zero
+  static boolean unzipFlag;       // true if we dump gzip and zip contents
+  static JButton viewButton;      // "View File" button
+  static String viewError;        // error message from searching file view
+  static DumpFile5View viewFile;  // virtual view of one file, for GUI
+  static JLabel viewFindLabel;    // result from searching file view
+  static JTextField viewFindText; // pattern to search for in file view
+  static JComboBox<String> viewFindType; // kind of pattern in <viewFindText>
+  static long viewFound;          // file offset of match in view, or -1
+  static JButton viewNextButton;  // "Next" match in file view
+  static JTextField viewOffsetText; // hexadecimal offset to show in <viewFile>
+  static DumpFile5Pattern viewPattern; // pattern for searching file view
+  static JButton viewPrevButton;  // "Previous" match in file view
+  static File viewSearchFile;     // file being searched for file view
+  static boolean viewSearchForward; // true to search forward, false backward
+  static long viewSearchFrom;     // file offset where search starts
+  static Thread viewSearchThread; // separate thread for searching file view
+  static Timer viewTimer;         // waits for <viewSearchThread> to finish
 
 /*
   main() method
 
   If we are running as a GUI application, set the window layout and then let
-  the graphical interface run the show.
+  the graphical interface run the show.  The window is made by another class,
+  so that console dumps don't load any graphical classes.
 */
   public static void main(String[] args)
   {
-    ActionListener action;        // our shared action listener
+    Vector<File> fileList;        // file names waiting to be dumped
     int i;                        // index variable
+    int size;                     // port number for web server
     String word;                  // one parameter from command line
 
     /* Initialize variables used by both console and GUI applications. */
 
+    analyzeSize = 0;              // default to dump files, not analyze them
     cancelFlag = false;           // don't cancel unless user complains
+    compareSide = false;          // default to interleaved compare lines
     consoleFlag = false;          // assume no file names on command line
+    digestNames = null;           // default to no checksums or digests
+    digestOnly = false;           // and dump files, of course
     dumpWidth = 16;               // default input bytes per dump line
     eightBitFlag = false;         // default to display bytes as 8-bit text
+    excludeList = new Vector<Pattern>(); // no file name patterns yet
     fontName = "Monospaced";      // default font name for output text area
+    followDelay = FOLLOW_DELAY;   // show new bytes this soon when following
+    followFlag = false;           // default to stop at the end of each file
     fontSize = 14;                // default point size for output text area
+    formatter = null;             // made when first needed, for each batch
+    gzipBlock = GZIP_BLOCK;       // default size of compressed output blocks
+    gzipLevel = 0;                // default to plain text output
+    includeList = new Vector<Pattern>();
+    jobCount = 1;                 // default to one file at a time
+    limitCount = 0;               // default to find all differences, matches
+    mapSize = MAP_WINDOW * 0x100000; // default mapped window size in bytes
+    outputFolder = null;          // no output file for each input file
+    outputName = null;            // no output file, use standard output
+    outputStream = new BufferedOutputStream(System.out, OUTPUT_SIZE);
+                                  // console output goes out in large blocks
     outputText = null;            // write to standard output until GUI ready
-
-    /* Initialize number formatting styles. */
-
-    formatComma = NumberFormat.getInstance(); // current locale
-    formatComma.setGroupingUsed(true); // use commas or digit groups
+    rangeLength = -1;             // default to dump all bytes in file
+    rangeStart = 0;               // from the beginning of the file
+    searchContext = -1;           // default to print only match offsets
+    searchPattern = null;         // default to dump files, not search them
+    stats = new DumpFile5Stats(); // counters are always kept, and cheap
+    statsFlag = false;            // but not printed unless asked for
+    textDecoder = null;           // default to one text character per byte
+    threadCount = 0;              // default to sequential dump, no threads
+    unzipFlag = false;            // default to dump compressed files as bytes
+
+    /* Loading locale data for the number format takes longer than dumping a
+    small file.  Do that in the background while we check options and read
+    the first file; formatComma() waits if it's still busy. */
+
+    new Thread(new DumpFile5Worker(DumpFile5Worker.NUMBERS), "numberRunner")
+      .start();
 
     /* Check command-line parameters for options.  Anything we don't recognize
-    as an option is assumed to be a file name. */
+    as an option is assumed to be a file name.  File names that come together
+    on the command line are dumped as one batch, since options change only
+    before or after them. */
+
+    fileList = new Vector<File>(); // no file names yet
 
     for (i = 0; i < args.length; i ++)
     {
@@ -166,6 +646,211 @@ public class DumpFile5
         System.exit(0);           // exit from application after printing help
       }
 
+      else if (word.equals("-a") || word.equals("/a"))
+        analyzeSize = ANALYZE_SIZE; // analyze files with default block size
+      else if (word.startsWith("-a")
+        || (word.startsWith("/a") && (word.length() < 4)))
+      {
+        /* Analyze following files instead of dumping them, with blocks of
+        this many kilobytes.  Zero goes back to dumping files. */
+
+        try                       // convert number after option letter
+        {
+          analyzeSize = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe)
+        {
+          analyzeSize = -1;       // force an error message below
+        }
+        if ((analyzeSize < 0) || (analyzeSize > 1024))
+        {
+          System.err.println("Analysis block size must be from 0 to 1024 KB: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        analyzeSize *= 0x400;     // convert kilobytes to bytes
+      }
+
+      else if (word.equals("--stats") || word.equals("-stats")
+        || word.equals("/stats"))
+      {
+        /* Print statistics on standard error after each batch of files, and
+        publish them as an MBean for JMX clients while we are running. */
+
+        if (statsFlag == false)   // register only once
+        {
+          try
+          {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(stats,
+              new ObjectName(DumpFile5Stats.OBJECT_NAME));
+          }
+          catch (Exception jmxe)  // statistics still go on standard error
+          {
+            System.err.println("Can't publish statistics as an MBean: "
+              + jmxe);
+          }
+        }
+        statsFlag = true;
+      }
+
+      else if (word.equals("--digest") || word.equals("-digest")
+        || word.equals("/digest") || word.equals("--digest-only")
+        || word.equals("-digest-only") || word.equals("/digest-only"))
+      {
+        /* The next parameter is a list of checksums and digests, separated by
+        commas, for all following files.  They are computed while the files
+        are dumped (--digest), or instead of dumping (--digest-only).  A list
+        of "-" goes back to dumping without them. */
+
+        i ++;                     // skip to the list
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing list of digests after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if (args[i].equals("-"))  // go back to plain dumps?
+        {
+          digestNames = null;
+          digestOnly = false;
+        }
+        else try
+        {
+          new DumpFile5Digest(args[i]); // check the names once, here
+          digestNames = args[i];
+          digestOnly = word.endsWith("only");
+        }
+        catch (NoSuchAlgorithmException nsae)
+        {
+          System.err.println("Unknown checksum or digest for option "
+            + args[i - 1] + ": " + nsae.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
+
+      else if (word.equals("--text") || word.equals("-text")
+        || word.equals("/text"))
+      {
+        /* The next parameter is how to decode the text column for following
+        files: "utf8", "utf16le", or "utf16be" for multi-byte characters, or
+        "ascii" (or "-") for one character per byte, as usual. */
+
+        i ++;                     // skip to the name
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing text decoder after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if (args[i].equals("-") || args[i].equalsIgnoreCase("ascii"))
+          textDecoder = null;     // go back to plain bytes
+        else try
+        {
+          textDecoder = new DumpFile5Decoder(args[i]);
+        }
+        catch (IllegalArgumentException iae)
+        {
+          System.err.println(iae.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
+
+      else if (word.equals("--gzip-block") || word.equals("-gzip-block")
+        || word.equals("/gzip-block"))
+      {
+        /* The next parameter is the number of output bytes that "-z"
+        compresses together as one gzip member, which is also how much each
+        thread compresses at once.  Bigger blocks compress a little better. */
+
+        i ++;                     // skip to the size
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing block size after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        try
+        {
+          gzipBlock = (int) Math.min(parseOffset(args[i], -1), 0x7FFFFFFF);
+        }
+        catch (NumberFormatException nfe)
+        {
+          gzipBlock = -1;         // force an error message below
+        }
+        if ((gzipBlock < 0x1000) || (gzipBlock > 0x4000000))
+        {
+          System.err.println("Compressed block size must be from 4k to 64m: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if ((outputName == null) && (gzipLevel > 0)) // standard output?
+        {
+          closeOutput();          // finish what was already written
+          outputStream = openOutput(System.out);
+        }
+      }
+
+      else if (word.equals("--serve") || word.equals("-serve")
+        || word.equals("/serve"))
+      {
+        /* The next two parameters are a port number and a folder.  Hex views
+        of files in that folder are served over HTTP until we are stopped,
+        with the width and 8-bit options given before this option as the
+        defaults for each request. */
+
+        if ((i + 2) >= args.length) // not enough parameters after option?
+        {
+          System.err.println("Missing port number and folder after option: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        try
+        {
+          size = Integer.parseInt(args[i + 1]); // port number
+        }
+        catch (NumberFormatException nfe)
+        {
+          size = -1;              // force an error message below
+        }
+        if ((size < 0) || (size > 65535))
+        {
+          System.err.println("Port number must be from 0 to 65535: "
+            + args[i + 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        consoleFlag = true;       // don't allow GUI methods to be called
+        serveFiles(size, new File(args[i + 2]));
+        i += 2;                   // skip over port number and folder
+      }
+
+      else if (word.equals("-c") || word.equals("/c")
+        || word.equals("-cs") || word.equals("/cs"))
+      {
+        /* The next two parameters are files to compare, with the differing
+        lines interleaved (-c) or side by side (-cs). */
+
+        if ((i + 2) >= args.length) // not enough file names after option?
+        {
+          System.err.println("Missing two file names after option: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        consoleFlag = true;       // don't allow GUI methods to be called
+        compareSide = word.endsWith("s");
+        compareFiles(new File(args[i + 1]), new File(args[i + 2]));
+        i += 2;                   // skip over both file names
+      }
+
       else if (word.equals("-e") || word.equals("/e")
         || word.equals("-e1") || word.equals("/e1"))
       {
@@ -174,176 +859,399 @@ public class DumpFile5
       else if (word.equals("-e0") || word.equals("/e0"))
         eightBitFlag = false;     // display input bytes as 7-bit plain text
 
-      else if (word.equals("-w4") || word.equals("/w4"))
-        dumpWidth = 4;            // user wants 4 input bytes per dump line
-      else if (word.equals("-w8") || word.equals("/w8"))
-        dumpWidth = 8;
-      else if (word.equals("-w12") || word.equals("/w12"))
-        dumpWidth = 12;
-      else if (word.equals("-w16") || word.equals("/w16"))
-        dumpWidth = 16;
-      else if (word.equals("-w24") || word.equals("/w24"))
-        dumpWidth = 24;
-      else if (word.equals("-w32") || word.equals("/w32"))
-        dumpWidth = 32;
-
-      else if ((word.charAt(0) == '-')
-        || ((word.charAt(0) == '/') && (word.length() < 4)))
-                                  // remember UNIX uses '/' for root folder!
+      else if (word.equals("-d") || word.equals("/d"))
       {
-        System.err.println("Option not recognized: " + args[i]);
-        showHelp();               // show help summary
-        System.exit(0);           // exit from application after printing help
+        /* The next parameter is a folder for one output file per input file,
+        for all following files.  A name of "-" goes back to one output. */
+
+        i ++;                     // skip to the folder name
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing output folder name after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        outputFolder = args[i].equals("-") ? null : args[i];
       }
-      else
+
+      else if (word.equals("-i") || word.equals("/i")
+        || word.equals("-x") || word.equals("/x"))
       {
-        /* Parameter does not look like an option.  Assume this is a file name.
-        We ignore <cancelFlag> because the user has no way of interrupting us
-        at this point (no graphical interface). */
+        /* The next parameter is a file name pattern with wildcards, for files
+        to include (-i) or exclude (-x) when searching folders. */
 
-        consoleFlag = true;       // don't allow GUI methods to be called
-        dumpFile(new File(args[i])); // original parameter, not lowercase word
+        i ++;                     // skip to the pattern
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing file name pattern after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if (word.endsWith("i"))
+          includeList.addElement(globPattern(args[i]));
+        else
+          excludeList.addElement(globPattern(args[i]));
       }
-    }
 
-    /* Start the graphical interface if no file names were given on the command
-    line. */
+      else if (word.equals("-f") || word.equals("/f")
+        || word.equals("-fi") || word.equals("/fi")
+        || word.equals("-ft") || word.equals("/ft"))
+      {
+        /* The next parameter is a pattern to search for in all following
+        files, instead of dumping them: hexadecimal bytes (-f), text (-ft), or
+        text where case doesn't matter (-fi).  A pattern of "-" goes back to
+        dumping files. */
 
-    if (!consoleFlag)
-    {
-      /* The standard Java interface style is the most reliable, but you can
-      switch to something closer to the local system, if you want. */
+        i ++;                     // skip to the pattern
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing search pattern after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if (args[i].equals("-"))  // go back to dumping files?
+          searchPattern = null;
+        else try
+        {
+          searchPattern = new DumpFile5Pattern(args[i], (word.endsWith("i")
+            ? DumpFile5Pattern.ANY_CASE : word.endsWith("t")
+            ? DumpFile5Pattern.TEXT : DumpFile5Pattern.HEX));
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Invalid search pattern for option "
+            + args[i - 1] + ": " + nfe.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
 
-      try
+      else if (word.equals("-j") || word.equals("/j"))
       {
-        UIManager.setLookAndFeel(
-          UIManager.getCrossPlatformLookAndFeelClassName());
-//        UIManager.getSystemLookAndFeelClassName());
+        jobCount = Runtime.getRuntime().availableProcessors();
+                                  // one file at a time per processor
       }
-      catch (Exception ulafe)
+      else if (word.startsWith("-j")
+        || (word.startsWith("/j") && (word.length() < 4)))
       {
-        System.err.println("Unsupported Java look-and-feel: " + ulafe);
+        /* Number of files dumped at the same time.  One is the default, and
+        allows large files to be dumped in parallel with "-p". */
+
+        try                       // convert number after option letter
+        {
+          jobCount = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe)
+        {
+          jobCount = -1;          // force an error message below
+        }
+        if ((jobCount < 1) || (jobCount > MAX_THREADS))
+        {
+          System.err.println("Number of files at once must be from 1 to "
+            + MAX_THREADS + ": " + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
       }
 
-      /* Initialize shared graphical objects. */
+      else if (word.equals("-k") || word.equals("/k"))
+      {
+        /* The next parameter is the number of dump lines to print before and
+        after each match when searching files.  Zero prints only the lines
+        with the match. */
 
-      action = new DumpFile5User(); // create our shared action listener
-      fileChooser = new JFileChooser(); // create our shared file chooser
+        i ++;                     // skip to the number
+        try
+        {
+          if (i >= args.length)   // nothing after the option?
+            throw new NumberFormatException("missing number");
+          searchContext = (int) parseOffset(args[i], 0);
+          if ((searchContext < 0) || (searchContext > 1000))
+            throw new NumberFormatException("must be from 0 to 1000");
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Invalid context lines for option "
+            + args[i - 1] + ": " + nfe.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
 
-      /* Create the graphical interface as a series of little panels inside
-      bigger panels.  The intermediate panel names are of no lasting importance
-      and hence are only numbered (panel1, panel2, etc). */
+      else if (word.equals("-l") || word.equals("/l"))
+      {
+        /* The next parameter is the most differing regions to find when
+        comparing files, or the most matches when searching files.  Zero means
+        no limit. */
 
-      /* Create a vertical box to stack buttons and options. */
+        i ++;                     // skip to the number
+        try
+        {
+          if (i >= args.length)   // nothing after the option?
+            throw new NumberFormatException("missing number");
+          limitCount = parseOffset(args[i], 0);
+          if (limitCount < 0)
+            throw new NumberFormatException("limit can't be negative");
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Invalid limit for option " + args[i - 1] + ": "
+            + nfe.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
 
-      Box panel1 = new Box(BoxLayout.Y_AXIS);
-      panel1.add(Box.createVerticalStrut(9)); // extra space at panel top
+      else if (word.startsWith("-m")
+        || (word.startsWith("/m") && (word.length() < 4)))
+      {
+        /* Size of mapped windows for large input files, in megabytes.  Zero
+        means the original stream reads without any mapping. */
 
-      /* Create a horizontal panel to hold the action buttons. */
+        try                       // convert number after option letter
+        {
+          mapSize = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe)
+        {
+          mapSize = -1;           // force an error message below
+        }
+        if ((mapSize < 0) || (mapSize > 1024))
+        {
+          System.err.println("Mapped window size must be from 0 to 1024 MB: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        mapSize *= 0x100000;      // convert megabytes to bytes
+      }
 
-      JPanel panel2 = new JPanel(new FlowLayout(FlowLayout.CENTER, 50, 5));
+      else if (word.equals("-o") || word.equals("/o"))
+      {
+        /* The next parameter is an output file name for all following files.
+        A name of "-" goes back to standard output. */
 
-      openButton = new JButton("Open Files...");
-      openButton.addActionListener(action);
-      openButton.setMnemonic(KeyEvent.VK_O);
-      openButton.setToolTipText("Select one or more files.");
-      panel2.add(openButton);
+        i ++;                     // skip to the output file name
+        if (i >= args.length)     // nothing after the option?
+        {
+          System.err.println("Missing output file name after option: "
+            + args[i - 1]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        closeOutput();            // close any previous output file
+        if (args[i].equals("-") == false)
+        {
+          try
+          {
+            outputName = args[i]; // original parameter, not lowercase word
+            outputStream = openOutput(new FileOutputStream(outputName));
+          }
+          catch (IOException ioe)
+          {
+            System.err.println("Can't write to output file: "
+              + ioe.getMessage());
+            System.exit(-1);      // exit from application with error
+          }
+        }
+      }
 
-      cancelButton = new JButton("Cancel");
-      cancelButton.addActionListener(action);
-      cancelButton.setEnabled(false);
-      cancelButton.setMnemonic(KeyEvent.VK_C);
-      cancelButton.setToolTipText("Stop finding/opening files.");
-      panel2.add(cancelButton);
+      else if (word.equals("-n") || word.equals("/n")
+        || word.equals("-s") || word.equals("/s"))
+      {
+        /* The next parameter is the number of bytes to dump (-n) or the start
+        offset (-s) for all following files. */
 
-      saveButton = new JButton("Save Output As...");
-      saveButton.addActionListener(action);
-      saveButton.setMnemonic(KeyEvent.VK_S);
-      saveButton.setToolTipText("Save output text in a file.");
-      panel2.add(saveButton);
+        i ++;                     // skip to the number
+        try
+        {
+          if (i >= args.length)   // nothing after the option?
+            throw new NumberFormatException("missing number");
+          if (word.endsWith("n"))
+          {
+            rangeLength = parseOffset(args[i], -1);
+            if (rangeLength < 0)
+              throw new NumberFormatException("length can't be negative");
+          }
+          else
+            rangeStart = parseOffset(args[i], 0);
+        }
+        catch (NumberFormatException nfe)
+        {
+          System.err.println("Invalid " + (word.endsWith("n") ? "length"
+            : "start offset") + " for option " + args[i - 1] + ": "
+            + nfe.getMessage());
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
 
-      exitButton = new JButton("Exit");
-      exitButton.addActionListener(action);
-      exitButton.setMnemonic(KeyEvent.VK_X);
-      exitButton.setToolTipText("Close this program.");
-      panel2.add(exitButton);
+      else if (word.equals("-p") || word.equals("/p"))
+      {
+        threadCount = Runtime.getRuntime().availableProcessors();
+                                  // one parallel dump thread per processor
+      }
+      else if (word.startsWith("-p")
+        || (word.startsWith("/p") && (word.length() < 4)))
+      {
+        /* Number of parallel threads for dumping large files.  Zero means the
+        original sequential dump, and is the default. */
 
-      panel1.add(panel2);
-      panel1.add(Box.createVerticalStrut(2)); // extra space between panels
+        try                       // convert number after option letter
+        {
+          threadCount = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe)
+        {
+          threadCount = -1;       // force an error message below
+        }
+        if ((threadCount < 0) || (threadCount > MAX_THREADS))
+        {
+          System.err.println("Number of parallel threads must be from 0 to "
+            + MAX_THREADS + ": " + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+      }
 
-      /* Create a horizontal panel for options. */
+      else if (word.equals("-r") || word.equals("/r"))
+      {
+        /* The next two parameters are dump output to read, and a binary file
+        to rebuild from that dump. */
 
-      JPanel panel3 = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 5));
+        if ((i + 2) >= args.length) // not enough file names after option?
+        {
+          System.err.println("Missing two file names after option: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        consoleFlag = true;       // don't allow GUI methods to be called
+        reverseFile(new File(args[i + 1]), new File(args[i + 2]));
+        i += 2;                   // skip over both file names
+      }
 
-      fontNameDialog = new JComboBox(GraphicsEnvironment
-        .getLocalGraphicsEnvironment().getAvailableFontFamilyNames());
-      fontNameDialog.setEditable(false); // user must select one of our choices
-      fontNameDialog.setSelectedItem(fontName); // select default font name
-      fontNameDialog.setToolTipText("Font name for displayed text.");
-      fontNameDialog.addActionListener(action); // do last so don't fire early
-      panel3.add(fontNameDialog);
+      else if (word.equals("-t") || word.equals("/t"))
+        followFlag = true;        // keep dumping bytes added to files
+      else if (word.startsWith("-t")
+        || (word.startsWith("/t") && (word.length() < 4)))
+      {
+        /* Follow files as they grow, and show new bytes within this many
+        milliseconds.  The same delay applies to standard input. */
 
-      fontSizeDialog = new JComboBox(FONT_SIZES);
-      fontSizeDialog.setEditable(false); // user must select one of our choices
-      fontSizeDialog.setSelectedItem(String.valueOf(fontSize));
-                                  // selected item is our default size
-      fontSizeDialog.setToolTipText("Point size for displayed text.");
-      fontSizeDialog.addActionListener(action); // do last so don't fire early
-      panel3.add(fontSizeDialog);
+        try                       // convert number after option letter
+        {
+          followDelay = Integer.parseInt(word.substring(2));
+        }
+        catch (NumberFormatException nfe)
+        {
+          followDelay = -1;       // force an error message below
+        }
+        if ((followDelay < 1) || (followDelay > 60000))
+        {
+          System.err.println("Follow delay must be from 1 to 60000 ms: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        followFlag = true;
+      }
 
-      panel3.add(Box.createHorizontalStrut(40));
+      else if (word.equals("-u") || word.equals("/u")
+        || word.equals("-u1") || word.equals("/u1"))
+      {
+        unzipFlag = true;         // dump what is inside gzip and zip files
+      }
+      else if (word.equals("-u0") || word.equals("/u0"))
+        unzipFlag = false;        // dump compressed files as raw bytes
 
-      dumpWidthDialog = new JComboBox(DUMP_WIDTHS);
-      dumpWidthDialog.setEditable(false); // user must select one of our choices
-      dumpWidthDialog.setSelectedItem(String.valueOf(dumpWidth));
-                                  // selected item is our default size
-      dumpWidthDialog.setToolTipText("Number of input bytes per dump line.");
-//    dumpWidthDialog.addActionListener(action); // do last so don't fire early
-      panel3.add(dumpWidthDialog);
-      panel3.add(new JLabel("bytes per line"));
+      else if (word.equals("-w4") || word.equals("/w4"))
+        dumpWidth = 4;            // user wants 4 input bytes per dump line
+      else if (word.equals("-w8") || word.equals("/w8"))
+        dumpWidth = 8;
+      else if (word.equals("-w12") || word.equals("/w12"))
+        dumpWidth = 12;
+      else if (word.equals("-w16") || word.equals("/w16"))
+        dumpWidth = 16;
+      else if (word.equals("-w24") || word.equals("/w24"))
+        dumpWidth = 24;
+      else if (word.equals("-w32") || word.equals("/w32"))
+        dumpWidth = 32;
 
-      panel3.add(Box.createHorizontalStrut(30));
+      else if (word.startsWith("-z")
+        || (word.startsWith("/z") && (word.length() < 4)))
+      {
+        /* Compress the following output with gzip.  A digit after the option
+        letter is the compression level, and zero goes back to plain text.
+        Output files opened after this use the new level, and so does standard
+        output, from here on. */
 
-      eightBitCheckbox = new JCheckBox("8-bit text", eightBitFlag);
-      eightBitCheckbox.setToolTipText(
-        "Select to display input bytes as 8-bit ASCII text.");
-      panel3.add(eightBitCheckbox);
+        try                       // convert number after option letter
+        {
+          gzipLevel = (word.length() > 2) ? Integer.parseInt(word.substring(2))
+            : 1;                  // fastest level keeps up best with dump
+        }
+        catch (NumberFormatException nfe)
+        {
+          gzipLevel = -1;         // force an error message below
+        }
+        if ((gzipLevel < 0) || (gzipLevel > 9))
+        {
+          System.err.println("Compression level must be from 0 to 9: "
+            + args[i]);
+          showHelp();             // show help summary
+          System.exit(0);         // exit from application after printing help
+        }
+        if (outputName == null)   // standard output changes now
+        {
+          closeOutput();          // finish what was already written
+          outputStream = openOutput(System.out);
+        }
+      }
 
-      panel1.add(panel3);
-      panel1.add(Box.createVerticalStrut(1)); // extra space at panel bottom
+      else if (((word.charAt(0) == '-') && (word.length() > 1))
+        || ((word.charAt(0) == '/') && (word.length() < 4)))
+                                  // remember UNIX uses '/' for root folder!
+      {
+        System.err.println("Option not recognized: " + args[i]);
+        showHelp();               // show help summary
+        System.exit(0);           // exit from application after printing help
+      }
+      else
+      {
+        /* Parameter does not look like an option.  Assume this is a file name,
+        or "-" for standard input.  We ignore <cancelFlag> because the user has
+        no way of interrupting us at this point (no graphical interface). */
 
-      /* Put above boxed options in a panel that is centered horizontally. */
+        consoleFlag = true;       // don't allow GUI methods to be called
+        fileList.addElement(new File(args[i])); // original parameter
+        if (((i + 1) >= args.length) || (args[i + 1].length() == 0)
+          || ((args[i + 1].charAt(0) == '-') && (args[i + 1].length() > 1))
+          || ((args[i + 1].charAt(0) == '/') && (args[i + 1].length() < 4)))
+        {
+          /* The next parameter is an option (or there is none), so dump the
+          files that we have before the options change. */
 
-      JPanel panel4 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
-      panel4.add(panel1);
+          new DumpFile5Task(fileList.toArray(new File[0])).run();
+          fileList.removeAllElements();
+        }
+      }
+    }
 
-      /* Create a scrolling text area to hold the generated output. */
+    /* Start the graphical interface if no file names were given on the command
+    line. */
 
-      outputText = new JTextArea(6, 30);
-      outputText.setEditable(false); // user can't change this text area
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
-      outputText.setLineWrap(false); // don't allow text lines to wrap
-      outputText.setMargin(new Insets(10, 12, 10, 12));
-      outputText.setText(
-        "\nDump files in hexadecimal and as 8-bit text bytes."
-        + "\n\nChoose your options; then open files that you want to dump.\n\n"
-        + COPYRIGHT_NOTICE + "\n\n");
-
-      /* Create the main window frame for this application.  Stack buttons and
-      options above the text area.  Keep text in the center so that it expands
-      horizontally and vertically. */
-
-      mainFrame = new JFrame(PROGRAM_TITLE);
-      Container panel5 = mainFrame.getContentPane(); // where content meets frame
-      panel5.setLayout(new BorderLayout(5, 5));
-      panel5.add(panel4, BorderLayout.NORTH);
-      panel5.add(new JScrollPane(outputText), BorderLayout.CENTER);
-
-      mainFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-      mainFrame.setLocation(50, 50); // top left corner of application window
-      mainFrame.setSize(700, 500); // initial size of application window
-      mainFrame.validate();       // do the application window layout
-      mainFrame.setVisible(true); // show the application window
+    if (closeOutput() == false)   // close any output file from "-o" option
+      System.exit(-1);            // exit from application with error
+    if (!consoleFlag)
+    {
+      outputFolder = null;        // no output folder in graphical interface
+      searchPattern = null;       // graphical interface searches file view
+      outputStream = null;        // graphical output goes into text area
+      DumpFile5Window.create();   // build and show the application window
 
       /* Let the graphical interface run the application now. */
     }
@@ -352,568 +1260,8049 @@ public class DumpFile5
 // ------------------------------------------------------------------------- //
 
 /*
-  cancelOpen() method
+  addProgress() method
 
-  This method is called while we are opening files if the user wants to end
-  processing early, perhaps because it is taking too long.  We must cleanly
-  terminate any secondary threads.  Leave whatever output has already been
-  generated in the output text area.
+  Add the number of input bytes that were just dumped to the progress of the
+  current dump job, for the progress bar and the estimated time left.  Files
+  in a batch may be dumped by several threads at the same time.
 */
-  static void cancelOpen()
+  static void addProgress(long bytes)
   {
-    cancelFlag = true;            // tell other threads that all work stops now
-    putOutput("Cancelled by user.");
-
-  } // end of cancelOpen() method
+    synchronized (batchLock)
+    {
+      if (task != null)           // compare mode doesn't have a dump job
+        task.progressDone += bytes;
+    }
+  } // end of addProgress() method
 
 
 /*
-  clearLine() method
+  analyzeBlock() method
 
-  Clear a line buffer to all spaces (blanks).  The buffer is assumed to be
-  <outputSize> bytes long.
+  Count each byte value in one block, and find the block's entropy and kind.
+  Four sets of counters take turns, so that a run of the same byte doesn't
+  make each count wait for the one before it.  The block's counts are added
+  to the thread's counts for the whole file.
 */
-  static void clearLine(StringBuffer buffer)
+  static void analyzeBlock(
+    DumpFile5Analysis analysis,   // where the results go
+    int number,                   // block number in file
+    byte[] buffer,                // input bytes
+    int index,                    // index of first byte in <buffer>
+    int length,                   // number of bytes in block
+    int[] counts,                 // four sets of 256 counters, for our use
+    long[] totals)                // thread's counts for the whole file
   {
+    int c;                        // byte value
+    int end;                      // index after last byte in block
+    double entropy;               // Shannon entropy in bits per byte
     int i;                        // index variable
+    int kind;                     // kind of block, such as TEXT
+    int n;                        // number of times that <c> was found
+    double p;                     // probability of <c>
+    int printable;                // number of text bytes in block
+
+    Arrays.fill(counts, 0);
+    end = index + length;
+    for (i = index; (i + 4) <= end; i += 4)
+    {
+      counts[buffer[i] & 0xFF] ++;
+      counts[0x100 | (buffer[i + 1] & 0xFF)] ++;
+      counts[0x200 | (buffer[i + 2] & 0xFF)] ++;
+      counts[0x300 | (buffer[i + 3] & 0xFF)] ++;
+    }
+    for (; i < end; i ++)         // any bytes after the last group of four
+      counts[buffer[i] & 0xFF] ++;
 
-    for (i = 0; i < outputSize; i ++)
-      buffer.setCharAt(i, ' ');   // replace one byte/character at a time
+    entropy = 0.0;
+    kind = -1;                    // not decided yet
+    printable = 0;
+    for (c = 0; c < 256; c ++)
+    {
+      n = counts[c] + counts[0x100 | c] + counts[0x200 | c]
+        + counts[0x300 | c];
+      if (n == 0)
+        continue;
+      totals[c] += n;
+      p = (double) n / length;
+      entropy -= p * Math.log(p);
+      if ((c == '\t') || (c == '\n') || (c == '\r')
+        || ((c >= 0x20) && (c < 0x7F)))
+      {
+        printable += n;
+      }
+      if (n == length)            // only one byte value in block
+        kind = (c == 0) ? DumpFile5Analysis.ZERO : DumpFile5Analysis.FILL;
+    }
+    entropy = Math.max(0.0, (entropy / Math.log(2.0))); // natural log to bits
+
+    if (kind >= 0)                // already decided
+      { /* zeros or fill */ }
+    else if (printable >= (length - (length / 20))) // at least 95%
+      kind = DumpFile5Analysis.TEXT;
+    else if (entropy >= ANALYZE_RANDOM)
+      kind = DumpFile5Analysis.RANDOM;
+    else
+      kind = DumpFile5Analysis.BINARY;
+    analysis.entropy[number] = (float) entropy;
+    analysis.kinds[number] = (byte) kind;
 
-  } // end of clearLine() method
+  } // end of analyzeBlock() method
 
 
 /*
-  compareLine() method
-
-  Compare two line buffers to see if they are the same, except for the file
-  offset at the beginning of each line.  Return <true> if they are the same;
-  <false> othersize.  The buffers are assumed to be <outputSize> bytes long.
+  analyzeFile() method
+
+  Print a summary of where the zeros, text, binary, and compressed or
+  encrypted regions are in one file, for the "-a" option, instead of dumping
+  it.  Parallel threads find the entropy of each block, and we join blocks of
+  the same kind into regions, with the average entropy of each region.  The
+  whole file is read, without the "-s" and "-n" options, and the speed is
+  usually that of the disk.
 */
-  static boolean compareLine(StringBuffer first, StringBuffer second)
+  static void analyzeFile(File givenFile, DumpFile5Job job)
   {
+    DumpFile5Analysis analysis;   // results for this file
+    int best;                     // most common byte value not yet printed
+    int digits;                   // hex digits in file offsets
+    double entropy;               // entropy of region or file
+    int first;                    // first block in region
+    NumberFormat formatTwo;       // two digits after the decimal point
     int i;                        // index variable
-
-    for (i = dumpStart; i < outputSize; i ++)
+    int k;                        // index variable
+    String last;                  // hex file offset of last byte in region
+    DumpFile5Lines lines;         // state and output for this file
+    long size;                    // number of bytes in a block
+    String text;                  // one line of output
+    long[] totals;                // copy of byte counts for whole file
+    double weight;                // number of bytes in region
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    if (givenFile.isFile() == false)
     {
-      if (first.charAt(i) != second.charAt(i))
-        return (false);           // only need to find one difference
+      putOutput(lines, ("Sorry, " + givenFile.getPath() + " is not a file."));
+      return;
     }
-    return (true);                // all characters are the same
-
-  } // end of compareLine() method
-
+    putOutput(lines, ("Analyzing file: " + givenFile.getPath()));
+    try
+    {
+      analysis = new DumpFile5Analysis(givenFile, analyzeSize, true);
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      return;
+    }
+    analysis.start(((threadCount > 0) ? threadCount : Runtime.getRuntime()
+      .availableProcessors()), Thread.currentThread().getPriority());
+    analysis.join();
+    if (analysis.error != null)
+    {
+      putOutput(lines, ("Can't read from input file: " + analysis.error));
+      return;
+    }
+    if (cancelFlag)               // don't print if cancelled by user
+      return;
+    lines.bytesRead += analysis.fileSize;
 
-/*
-  dumpFile() method
+    /* One line for each region of blocks that are the same kind. */
 
-  Dump the contents of one file in hexadecimal and as 8-bit ASCII bytes.  The
-  caller gives us a File object to tell us which file, and this File object may
-  or may not be valid.
-*/
-  static void dumpFile(File givenFile)
-  {
-    int c;                        // input character
-    int dumpOffset;               // where next hexadecimal bytes go in buffer
-    long fileOffset;              // byte offset from start of input file
-    FileInputStream in;           // input file stream
-    byte[] inputBuffer;           // three times faster than read() each byte
-    int inputIndex;               // index of next input byte in <inputBuffer>
-    int inputRead;                // number of bytes actually read into buffer
-    int lineUsed;                 // number of input bytes dumped in this line
-    StringBuffer newBuffer;       // current output line in dump
-    StringBuffer oldBuffer;       // previous output line in dump
-    int sameCount;                // number of identical dump lines found
-    StringBuffer tempBuffer;      // temporary holder for switching buffers
-    int textOffset;               // where next ASCII text goes in buffer
-
-    putOutput("");                // blank line
-    if (givenFile.isFile())       // only if a file, not a folder or unknown
+    digits = OFFSET_DIGITS;       // same file offsets as the dump
+    while ((digits < MAX_DIGITS) && (((analysis.fileSize - 1) >>> (4
+      * digits)) > 0))
     {
-      /* Calculate some variables that are critical constants for inserting
-      text into each "line buffer" for the dump output. */
-
-      dumpStart = OFFSET_DIGITS + 2; // index for first byte as hex digits
-      textStart = dumpStart + (3 * dumpWidth) + 2;
-                                  // index for first byte as ASCII text
-      outputSize = textStart + dumpWidth + 1;
-                                  // exact buffer size needed for one line
+      digits ++;
+    }
+    formatTwo = NumberFormat.getInstance();
+    formatTwo.setMinimumFractionDigits(2);
+    formatTwo.setMaximumFractionDigits(2);
+    first = 0;
+    while (first < analysis.blockCount)
+    {
+      entropy = weight = 0.0;
+      i = first;
+      do
+      {
+        size = Math.min(analysis.blockSize, (analysis.fileSize - ((long) i
+          * analysis.blockSize)));
+        entropy += analysis.entropy[i] * size;
+        weight += size;
+        i ++;
+      } while ((i < analysis.blockCount)
+        && (analysis.kinds[i] == analysis.kinds[first]));
+      text = Long.toHexString((long) first * analysis.blockSize)
+        .toUpperCase();
+      while (text.length() < digits) // same digits as dump lines
+        text = "0" + text;
+      last = Long.toHexString(((long) first * analysis.blockSize)
+        + (long) weight - 1).toUpperCase();
+      while (last.length() < digits)
+        last = "0" + last;
+      putOutput(lines, (text + "-" + last + "  entropy " + formatTwo.format(
+        entropy / weight) + "  " + DumpFile5Analysis.KINDS[analysis
+        .kinds[first]]));
+      first = i;
+    }
 
-      /* Try to open the user's file and start dumping. */
+    /* Entropy of the whole file, and the most common byte values. */
 
-      putOutput("Dumping file: " + givenFile.getPath());
-      try
+    entropy = 0.0;
+    for (i = 0; i < 256; i ++)
+    {
+      if (analysis.totals[i] > 0)
       {
-        in = new FileInputStream(givenFile); // open file for reading bytes
+        weight = (double) analysis.totals[i] / analysis.fileSize;
+        entropy -= weight * Math.log(weight) / Math.log(2.0);
+      }
+    }
+    putOutput(lines, (formatComma(analysis.fileSize) + " bytes in "
+      + formatComma(analysis.blockCount) + " blocks of "
+      + formatComma(analysis.blockSize) + " bytes, entropy "
+      + formatTwo.format(Math.max(0.0, entropy)) + " bits per byte."));
+    totals = analysis.totals.clone();
+    text = "Most common bytes:";
+    for (k = 0; k < 8; k ++)
+    {
+      best = 0;
+      for (i = 1; i < 256; i ++)
+      {
+        if (totals[i] > totals[best])
+          best = i;
+      }
+      if (totals[best] == 0)
+        break;                    // no more byte values in file
+      text += ((k > 0) ? ", " : " ") + Integer.toHexString(0x100 | best)
+        .substring(1).toUpperCase() + " "
+        + formatTwo.format(totals[best] * 100.0 / analysis.fileSize) + "%";
+      totals[best] = 0;           // don't find this one again
+    }
+    if (k > 0)
+      putOutput(lines, (text + "."));
+    putOutput(lines, "");         // blank line
+    flushLines(lines);            // stream output is buffered, so flush now
 
-        dumpOffset = dumpStart;   // where first digits go in this dump line
-        fileOffset = 0;           // we are at the beginning of the file
-        inputBuffer = new byte[BUFFER_SIZE]; // allocate byte buffer for input
-        lineUsed = 0;             // nothing dumped in this line yet
-        sameCount = 0;            // no identical dump lines found yet
-        textOffset = textStart;   // where first text chars go in dump line
+  } // end of analyzeFile() method
 
-        newBuffer = new StringBuffer(outputSize); // allocate dump buffer
-        newBuffer.setLength(outputSize); // and force buffer to have that size
-        startBuffer(newBuffer, fileOffset); // clear buffer, insert file offset
 
-        oldBuffer = new StringBuffer(outputSize); // allocate dump buffer
-        oldBuffer.setLength(outputSize); // and force buffer to have that size
-        clearLine(oldBuffer);     // clear to spaces
+/*
+  analyzeRunner() method
 
-        while ((inputRead = in.read(inputBuffer)) > 0)
+  This method runs in each thread for a DumpFile5Analysis object.  We take
+  units of several blocks in order, read each unit with positional reads, and
+  analyze its blocks.  Counts for the whole file are kept in our own array
+  until we are done, so threads don't wait for each other.
+*/
+  static void analyzeRunner(DumpFile5Analysis analysis)
+  {
+    ByteBuffer block;             // <buffer> wrapped for channel reads
+    byte[] buffer;                // input bytes for one unit
+    int[] counts;                 // counters for one block
+    int first;                    // first block number in unit
+    int index;                    // index of block in <buffer>
+    long start;                   // file offset of first byte in unit
+    long[] totals;                // our counts for the whole file
+    int unit;                     // unit number that we are analyzing
+
+    buffer = new byte[analysis.unitBlocks * analysis.blockSize];
+    block = ByteBuffer.wrap(buffer);
+    counts = new int[4 * 256];
+    totals = new long[256];
+    try
+    {
+      while ((unit = analysis.next()) >= 0)
+      {
+        if (analysis.inTask && (taskCheck() == false))
+        {
+          analysis.stop();        // cancelled by user
+          break;
+        }
+        first = unit * analysis.unitBlocks;
+        start = (long) first * analysis.blockSize;
+        block.clear();            // fill buffer from the beginning
+        block.limit((int) Math.min(buffer.length, (analysis.fileSize
+          - start)));             // but not past the end of the file
+        while (block.hasRemaining())
+        {
+          if (analysis.channel.read(block, (start + block.position())) < 0)
+            throw new EOFException("file is shorter than when opened");
+        }
+        for (index = 0; index < block.limit(); index += analysis.blockSize)
         {
-          if (cancelFlag) break;  // stop if user hit the panic button
+          analyzeBlock(analysis, first, buffer, index, Math.min(analysis
+            .blockSize, (block.limit() - index)), counts, totals);
+          first ++;
+        }
+        if (analysis.inTask)      // for the progress bar, if any
+          addProgress(block.limit());
+      }
+    }
+    catch (IOException ioe)
+    {
+      analysis.fail(ioe.getMessage());
+    }
+    analysis.finish(totals);      // add our counts to the whole file
 
-          for (inputIndex = 0; inputIndex < inputRead; inputIndex ++)
-          {
-            if (cancelFlag) break; // stop if user hit the panic button
+  } // end of analyzeRunner() method
 
-            c = ((int) inputBuffer[inputIndex]) & 0x000000FF; // unsigned byte
 
-            if (lineUsed >= dumpWidth)
-            {
-              /* We have filled up the current dump buffer.  If it differs from
-              the previous dump buffer, then print it.  Otherwise, leave it
-              pending. */
+/*
+  batchDirect() method
 
-              if (compareLine(oldBuffer, newBuffer) == false)
-              {
-                /* This dump line differs from the previous line.  There may be
-                a single line that hasn't been printed yet. */
+  The dump output for one file in a batch has grown too big to keep waiting in
+  memory.  Wait until all earlier files have been printed, then print what we
+  have, and send the rest of this file's output directly to the output stream.
+  The printing thread waits for this file to finish before printing more.  If
+  we are interrupted while waiting, the output stays in memory instead.
+*/
+  static void batchDirect(DumpFile5Lines lines)
+  {
+    ByteArrayOutputStream buffer; // output waiting for this file
 
-                if (sameCount == 1) // was exactly one duplicate line found?
-                  printLine(oldBuffer); // yes, print single line, not ellipses
-                sameCount = 0;    // now ignore previous dump lines
+    buffer = (ByteArrayOutputStream) lines.stream;
+    synchronized (batchLock)
+    {
+      while ((cancelFlag == false) && (batchPrinted < lines.batch))
+      {
+        try { batchLock.wait(); }
+        catch (InterruptedException ie)
+        {
+          Thread.currentThread().interrupt(); // caller may check again
+          return;                 // output stays in memory, in order
+        }
+      }
+    }
+    if (cancelFlag == false)      // don't print more if cancelled by user
+    {
+      try { buffer.writeTo(outputStream); } // earlier files are all printed
+      catch (IOException ioe) { } // same as println(), which ignores errors
+      lines.batch = -1;           // this file isn't waiting any more
+      lines.stream = null;        // and goes directly to the output stream
+    }
+    buffer.reset();               // same buffer is used for the next file
 
-                /* Print the new dump line. */
+  } // end of batchDirect() method
 
-                printLine(newBuffer); // print new dump line
 
-                /* Switch the old and new buffer pointers, to avoid copying the
-                new dump buffer's contents into the old dump buffer. */
+/*
+  batchRunner() method
 
-                tempBuffer = oldBuffer; // save pointer to old buffer object
-                oldBuffer = newBuffer; // switch new and old object pointers
-                newBuffer = tempBuffer;
-              }
-              else
-              {
-                /* This dump line has the same contents as the previous dump
-                line (except for the file offset, of course). */
-
-                sameCount ++;     // increment number of identical dump lines
-
-                if (sameCount == 1)
-                {
-                  /* This is the first time we have seen the same dump line.
-                  We may need to remember this line, if we later find that it
-                  occurs only once (and gets printed). */
-
-                  tempBuffer = oldBuffer; // save pointer to old buffer object
-                  oldBuffer = newBuffer; // switch new and old object pointers
-                  newBuffer = tempBuffer;
-                }
-                else if (sameCount == 2)
-                {
-                  /* This is the second time we have seen the same dump line.
-                  Print ellipses (dots) to represent these two and any later
-                  occurrences. */
-
-                  putOutput("   ...", false); // print one line of ellipses
-                }
-                else
-                {
-                  /* Do nothing for third or following occurrence. */
-                }
-              }
+  This method runs in each of the threads that dump a batch of files at the
+  same time.  We take the next file number, dump that file with our own
+  buffers into the job's output buffer, and tell the printing thread that the
+  file is done.  Threads don't get too far ahead of the printing.
+*/
+  static void batchRunner()
+  {
+    DumpFile5Job job;             // one file with its buffers and output
 
-              dumpOffset = dumpStart; // next hex digits start at beginning
-              lineUsed = 0;       // no dumped bytes in buffer now
-              textOffset = textStart; // next text chars start at beginning
+    while (true)
+    {
+      synchronized (batchLock)
+      {
+        while ((cancelFlag == false) && (batchNext < batchFiles.length)
+          && (batchNext >= (batchPrinted + batchJobs.length)))
+        {
+          try { batchLock.wait(); } // too far ahead of printing, so wait
+          catch (InterruptedException ie) { }
+        }
+        if (cancelFlag || (batchNext >= batchFiles.length))
+          break;                  // nothing more for this thread to do
+        if (batchSpareCount > 0)  // reuse buffers from a printed job?
+          job = batchSpares[-- batchSpareCount];
+        else                      // no, this is one of the first few jobs
+          job = new DumpFile5Job();
+        job.done = false;         // not dumped yet
+        job.number = batchNext ++; // take the next file number
+        batchJobs[job.number % batchJobs.length] = job;
+      }
 
-              startBuffer(newBuffer, fileOffset); // put file offset in buffer
-            }
+      job.file = batchFiles[job.number];
+      job.name = batchNames[job.number];
+      dumpJob(job);               // dump this file into the job's buffer
 
-            putHex(newBuffer, dumpOffset, 2, c); // convert char to hex digits
-            dumpOffset += 3;      // where next hexadecimal digits go
+      synchronized (batchLock)
+      {
+        job.done = true;          // tell printing thread that job is ready
+        batchLock.notifyAll();
+      }
+    }
+  } // end of batchRunner() method
 
-            if ((c < 0x20)        // check for unprintable characters
-              || ((eightBitFlag == false) && (c >= 0x7F))
-              || ((eightBitFlag == true) && (c == 0x7F)))
-            {
-              newBuffer.setCharAt(textOffset, '.'); // substitute
-            }
-            else
-              newBuffer.setCharAt(textOffset, (char) c); // use original char
-            textOffset ++;        // where next text character goes
 
-            fileOffset ++;        // offset of next input byte in file
-            lineUsed ++;          // one more dumped byte in line buffer
+/*
+  cancelOpen() method
 
-          } // end of for loop per input byte
+  This method is called while we are opening files if the user wants to end
+  processing early, perhaps because it is taking too long.  We must cleanly
+  terminate any secondary threads.  Leave whatever output has already been
+  generated in the output text area.  DumpFile5Task.cancel() calls us while
+  holding <batchLock>, so the current job can't finish and let another job
+  start before <cancelFlag> is set.
+*/
+  static void cancelOpen()
+  {
+    cancelFlag = true;            // tell other threads that all work stops now
+    synchronized (batchLock)      // wake up any waiting batch dump threads
+    {
+      batchLock.notifyAll();
+    }
+    synchronized (chunkLock)      // wake up any waiting parallel dump threads
+    {
+      chunkLock.notifyAll();
+    }
+    putOutput("Cancelled by user.");
 
-        } // end of while read buffer loop
+  } // end of cancelOpen() method
 
-        in.close();               // close input file
 
-        /* If the user hasn't cancelled this operation, finish printing the
-        dump if any output lines are pending, and then print a summary. */
+/*
+  chunkRunner() method
 
-        if (!cancelFlag)          // don't do more work if cancelled by user
+  This method is called inside each parallel dump thread.  Take the next chunk
+  number, format that chunk, and leave the output for dumpParallel() to print.
+  We don't get too far ahead of the printing, so that memory use is limited to
+  a few chunks per thread, no matter how big the file is.  Chunks are reused
+  after they are printed.
+*/
+  static void chunkRunner()
+  {
+    DumpFile5Chunk chunk;         // one chunk of formatted output
+    ByteBuffer chunkBlock;        // <chunkBuffer> wrapped for channel reads
+    byte[] chunkBuffer;           // input bytes for one chunk plus look-back
+    DumpFile5Lines lines;         // our own state for formatting lines
+
+    chunkBuffer = new byte[(int) ((chunkLines + 3) * dumpWidth)
+      + DumpFile5Decoder.AHEAD];  // and a few bytes after for decoded text
+    chunkBlock = ByteBuffer.wrap(chunkBuffer);
+    lines = new DumpFile5Lines(dumpWidth, 0, 0); // output is in each chunk
+    try
+    {
+      while (true)
+      {
+        taskCheck();              // wait here if the dump job is paused
+        synchronized (chunkLock)
         {
-          /* Always print last line in the dump, even if the file is empty. */
-
-          if (sameCount == 1)     // any pending single duplicate line?
-            printLine(oldBuffer); // yes, print the duplicate line first
-          printLine(newBuffer);   // then print the partial last line
+          while ((chunkError == null) && (cancelFlag == false)
+            && (chunkNext < chunkCount)
+            && (chunkNext >= (chunkPrinted + chunkBuffers.length)))
+          {
+            chunkLock.wait();     // too far ahead of printing, so wait
+          }
+          if ((chunkError != null) || cancelFlag || (chunkNext >= chunkCount))
+            break;                // nothing more for this thread to do
+          if (chunkSpareCount > 0) // reuse a chunk that has been printed?
+            chunk = chunkSpares[-- chunkSpareCount];
+          else                    // no, this is one of the first few chunks
+            chunk = new DumpFile5Chunk((int) ((chunkLines + 2) * lineSize));
+          chunk.number = chunkNext ++; // take the next chunk number
+        }
 
-          /* Append a summary. */
+        dumpChunk(chunk, lines, chunkBlock); // format this chunk
 
-          putOutput(formatComma.format(fileOffset) + " bytes dumped.");
-          putOutput("");          // blank line
+        synchronized (chunkLock)
+        {
+          chunkBuffers[(int) (chunk.number % chunkBuffers.length)] = chunk;
+          chunkLock.notifyAll();  // tell printing thread that chunk is ready
         }
       }
-      catch (IOException ioe)
-      {
-        putOutput("Can't read from input file: " + ioe.getMessage());
-      }
     }
-    else
+    catch (InterruptedException ie)
     {
-      putOutput("Sorry, " + givenFile.getPath() + " is not a file.");
+      /* Not expected: nobody interrupts our parallel threads. */
     }
-  } // end of dumpFile() method
+    catch (IOException ioe)
+    {
+      synchronized (chunkLock)
+      {
+        if (chunkError == null)   // only the first error gets reported
+          chunkError = ioe.getMessage();
+        chunkLock.notifyAll();    // wake up everybody so they stop early
+      }
+    }
+  } // end of chunkRunner() method
 
 
 /*
-  openFiles() method
+  closeOutput() method
 
-  Ask the user for a list of file names.  We accept all files without any
-  filtering for file types.
+  Flush and close an output file from the "-o" option or the "Dump to File"
+  button, and go back to standard output.  Standard output is only flushed,
+  and if it's compressed, the compressing threads end until there is more.
+  Return <false> if there was an error writing the output file.
 */
-  public static void openFiles()
+  static boolean closeOutput()
   {
-    /* Get options as chosen by the user. */
+    boolean result;               // true if no errors
 
-    dumpWidth = Integer.parseInt((String) dumpWidthDialog.getSelectedItem());
-                                  // safe to parse since we supply the choices
-    eightBitFlag = eightBitCheckbox.isSelected();
+    result = true;                // assume success
+    try
+    {
+      if (outputName != null)     // output file that we opened?
+        outputStream.close();     // flushes any remaining output
+      else if (outputStream instanceof DumpFile5Gzip) // compressed standard?
+        ((DumpFile5Gzip) outputStream).stop(); // flushes, ends its threads
+      else if (outputStream != null) // standard output
+        outputStream.flush();
+    }
+    catch (IOException ioe)
+    {
+      System.err.println("Can't write to output file: " + ioe.getMessage());
+      result = false;
+    }
+    if (outputName != null)       // go back to standard output
+    {
+      outputName = null;
+      outputStream = openOutput(System.out);
+    }
+    return (result);
 
-    /* Ask the user for one or more file names. */
+  } // end of closeOutput() method
 
-    fileChooser.resetChoosableFileFilters(); // remove any existing filters
-    fileChooser.setDialogTitle("Open Files...");
-    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-    fileChooser.setMultiSelectionEnabled(true); // allow more than one file
-    if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
-      return;                     // user cancelled file selection dialog box
-    openFileList = fileChooser.getSelectedFiles();
-                                  // get list of files selected by user
 
-    /* We have a list of files.  Disable the "Open Files" button until we are
-    done, and enable a "Cancel" button in case our secondary thread runs for a
-    long time and the user panics. */
+/*
+  compareBytes() method
 
-    cancelButton.setEnabled(true); // enable button to cancel this processing
-    cancelFlag = false;           // but don't cancel unless user complains
-    openButton.setEnabled(false); // suspend "Open Files" until we are done
-    outputText.setText("");       // clear output text area
+  Return the index of the first byte that differs between two buffers, or the
+  ending index if all bytes are the same.  Bytes are compared eight at a time
+  while they match, then one at a time to find the exact index.
+*/
+  static int compareBytes(
+    ByteBuffer one,               // first buffer with input bytes
+    ByteBuffer two,               // second buffer with input bytes
+    int index,                    // index of first byte to compare
+    int end)                      // index after last byte to compare
+  {
+    int i;                        // index variable
 
-    openFilesThread = new Thread(new DumpFile5User(), "openFilesRunner");
-    openFilesThread.setPriority(Thread.MIN_PRIORITY);
-                                  // use low priority for heavy-duty workers
-    openFilesThread.start();      // run separate thread to open files, report
+    i = index;
+    while (((i + 8) <= end) && (one.getLong(i) == two.getLong(i)))
+      i += 8;                     // eight more bytes are the same
+    while ((i < end) && (one.get(i) == two.get(i)))
+      i ++;                       // finish with single bytes
+    return (i);
 
-  } // end of openFiles() method
+  } // end of compareBytes() method
 
 
 /*
-  openFilesRunner() method
-
-  This method is called inside a separate thread by the runnable interface of
-  our "user" class to process the user's selected files in the context of the
-  "main" class.  By doing all the heavy-duty work in a separate thread, we
-  won't stall the thread that runs the graphical interface, and we allow the
-  user to cancel the work if it takes too long.
+  compareFiles() method
+
+  Compare two files and print the dump lines that differ.  Both files are read
+  into large buffers with a whole number of dump lines, identical bytes are
+  skipped, and each differing line is printed for both files with marks under
+  the differing bytes.  The same range options apply to both files, and only
+  the shorter of the two ranges is compared; the extra bytes in the longer
+  range are mentioned in the summary.
 */
-  static void openFilesRunner()
+  static void compareFiles(File fileOne, File fileTwo)
   {
+    ByteBuffer blockOne;          // block of input bytes from first file
+    int blockSize;                // input bytes per block, in complete lines
+    ByteBuffer blockTwo;          // block of input bytes from second file
+    FileChannel channelOne;       // NIO channel for <inOne>
+    FileChannel channelTwo;       // NIO channel for <inTwo>
+    long compareSize;             // number of bytes compared in both files
+    long counted;                 // <regionBytes> before the current line
+    long done;                    // number of bytes compared so far
     int i;                        // index variable
+    FileInputStream inOne;        // first input file stream
+    FileInputStream inTwo;        // second input file stream
+    int index;                    // index of next byte to compare in blocks
+    long lastOffset;              // largest file offset that we may print
+    int length;                   // number of input bytes in differing line
+    int line;                     // index of differing line in blocks
+    DumpFile5Lines lines;         // state and output for formatting lines
+    long offset;                  // file offset of a differing byte
+    long regionBytes;             // total bytes in all differing regions
+    long regionCount;             // number of differing regions found
+    long regionLargest;           // size of largest differing region
+    long regionNext;              // file offset after current region
+    long regionStart;             // file offset of current region
+    long regionWhere;             // file offset of largest differing region
+    long sizeOne;                 // number of bytes in range of first file
+    long sizeTwo;                 // number of bytes in range of second file
+    long startOne;                // file offset of first byte in first file
+    long startTwo;                // file offset of first byte in second file
+    boolean stopped;              // true if we found enough regions
+
+    lines = new DumpFile5Lines(MAX_WIDTH, (OUTPUT_SIZE + (4 * (MAX_DIGITS
+      + (7 * MAX_WIDTH) + 7))), OUTPUT_SIZE); // room for both files and marks
+    putOutput(lines, "");         // blank line
+    if ((fileOne.isFile() == false) || (fileTwo.isFile() == false))
+    {
+      putOutput(lines, ("Sorry, " + (fileOne.isFile() ? fileTwo : fileOne)
+        .getPath() + " is not a file."));
+      return;
+    }
 
-    /* Loop once for each file selected by the user.  Don't assume that these
-    names are all valid. */
-
-    for (i = 0; i < openFileList.length; i ++)
+    /* Find the range of bytes to compare in each file, in the same way as for
+    dumping a file.  A negative start offset counts back from the end of each
+    file, which may be a different offset in the other file. */
+
+    startOne = (rangeStart < 0) ? Math.max(0, (fileOne.length() + rangeStart))
+      : Math.min(rangeStart, fileOne.length());
+    startTwo = (rangeStart < 0) ? Math.max(0, (fileTwo.length() + rangeStart))
+      : Math.min(rangeStart, fileTwo.length());
+    sizeOne = fileOne.length() - startOne;
+    sizeTwo = fileTwo.length() - startTwo;
+    if (rangeLength >= 0)         // only part of each file?
+    {
+      sizeOne = Math.min(sizeOne, rangeLength);
+      sizeTwo = Math.min(sizeTwo, rangeLength);
+    }
+    compareSize = Math.min(sizeOne, sizeTwo);
+    lastOffset = Math.max((startOne + sizeOne), (startTwo + sizeTwo));
+    lines.digits = OFFSET_DIGITS; // usual number of digits
+    while ((lines.digits < MAX_DIGITS)
+      && ((lastOffset >>> (4 * lines.digits)) != 0))
     {
-      if (cancelFlag) break;      // stop if user hit the panic button
-      dumpFile(openFileList[i]);  // dump contents of one input file
+      lines.digits ++;            // need one more digit
     }
 
-    /* We are done, so turn off the "Cancel" button and allow the user to click
-    the "Open Files" button again. */
+    makeFormatter(outputStream != null);
 
-    cancelButton.setEnabled(false);
-    openButton.setEnabled(true);
+    /* Read both files in blocks with the same number of complete lines, and
+    look for the first byte that differs. */
 
-  } // end of openFilesRunner() method
+    putOutput(lines, ("Comparing file: " + fileOne.getPath()));
+    putOutput(lines, ("     with file: " + fileTwo.getPath()));
+    regionBytes = regionCount = regionLargest = 0; // no differences yet
+    regionNext = regionStart = regionWhere = -1;
+    stopped = false;
+    try
+    {
+      inOne = new FileInputStream(fileOne);
+      inTwo = new FileInputStream(fileTwo);
+      channelOne = inOne.getChannel();
+      channelOne.position(startOne); // seek directly to first byte
+      channelTwo = inTwo.getChannel();
+      channelTwo.position(startTwo);
+      blockOne = ByteBuffer.allocateDirect(COMPARE_SIZE);
+      blockOne.order(ByteOrder.nativeOrder()); // only equality matters
+      blockTwo = ByteBuffer.allocateDirect(COMPARE_SIZE);
+      blockTwo.order(ByteOrder.nativeOrder());
+      blockSize = (COMPARE_SIZE / dumpWidth) * dumpWidth; // complete lines
+
+      done = 0;                   // nothing compared yet
+      while (taskCheck() && (stopped == false) && (done < compareSize))
+      {
+        length = (int) Math.min(blockSize, (compareSize - done));
+        compareRead(channelOne, blockOne, length);
+        compareRead(channelTwo, blockTwo, length);
 
+        index = 0;                // blocks always start with a complete line
+        while ((stopped == false)
+          && ((i = compareBytes(blockOne, blockTwo, index, length)) < length))
+        {
+          /* Count the differing regions in this line.  A region continues
+          from the previous byte, which may be on the previous line. */
 
-/*
-  printLine() method
+          line = i - (i % dumpWidth); // start of line with differing byte
+          counted = regionBytes;  // to see if this line has any counted bytes
+          for (; i < Math.min(length, (line + dumpWidth)); i ++)
+          {
+            if (blockOne.get(i) == blockTwo.get(i))
+              continue;           // this byte is the same
+            offset = startOne + done + i;
+            if (offset != regionNext) // start of a new region?
+            {
+              if ((limitCount > 0) && (regionCount >= limitCount))
+              {
+                stopped = true;   // but still print the whole line
+                break;
+              }
+              if ((regionNext - regionStart) > regionLargest)
+              {
+                regionLargest = regionNext - regionStart;
+                regionWhere = regionStart;
+              }
+              regionCount ++;
+              regionStart = offset;
+            }
+            regionBytes ++;
+            regionNext = offset + 1;
+          }
 
-  Print a given StringBuffer as one output line, after trimming any trailing
-  spaces.  No assumptions are made about the length of the buffer.
+          /* Print the line from both files, and the marks, unless the line
+          only has differences beyond the limit. */
 
-  We actually never have trailing spaces on dump lines because we add marker
-  characters to the beginning and end of the ASCII text.  However, we still
-  need to convert the StringBuffer to a String object before we can print it,
-  so this trimming effort isn't totally wasted.
-*/
-  static void printLine(StringBuffer buffer)
-  {
-    int i;                        // index variable
+          if (regionBytes == counted)
+            break;
+
+          i = Math.min(dumpWidth, (length - line)); // bytes in this line
+          formatter.formatLine(lines, blockOne, line, (startOne + done
+            + line), i);
+          if (compareSide)        // second file goes on the same line
+          {
+            lines.outputUsed -= formatter.lineEnd.length;
+            lines.output[lines.outputUsed ++] = ' ';
+            lines.output[lines.outputUsed ++] = ' ';
+          }
+          formatter.formatLine(lines, blockTwo, line, (startTwo + done
+            + line), i);
+          compareMarks(lines, blockOne, blockTwo, line, i);
+          if (lines.outputUsed > lines.outputLimit) // output buffer full?
+            putLines(lines);      // print what we have so far
+          index = line + dumpWidth; // continue after this line
+        }
+        done += length;
+      }
+      inOne.close();              // try to close input files
+      inTwo.close();
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      stopped = true;             // don't say that the files are identical
+    }
+
+    /* Print a summary of the differences. */
 
-    i = buffer.length() - 1;      // start trimming from the end
-    while ((i >= 0) && (buffer.charAt(i) == ' '))
-      i --;
-    putOutput(buffer.substring(0, (i + 1)), false); // don't scroll dump lines
+    if ((regionNext - regionStart) > regionLargest) // last region may be big
+    {
+      regionLargest = regionNext - regionStart;
+      regionWhere = regionStart;
+    }
+    if (cancelFlag)
+      putOutput(lines, "Cancelled by user.");
+    else if (stopped && (limitCount > 0) && (regionCount >= limitCount))
+      putOutput(lines, ("Stopped after " + formatComma(regionCount)
+        + " differing regions."));
+    if (regionCount > 0)
+    {
+      putOutput(lines, ("Found " + formatComma(regionCount)
+        + " differing regions with " + formatComma(regionBytes)
+        + " bytes; largest is " + formatComma(regionLargest)
+        + " bytes at offset 0x" + Long.toHexString(regionWhere).toUpperCase()
+        + "."));
+    }
+    else if ((stopped == false) && (cancelFlag == false))
+    {
+      putOutput(lines, ("No differences found in " + formatComma(
+        compareSize) + " bytes."));
+    }
+    if (sizeOne != sizeTwo)       // one range is longer than the other?
+    {
+      putOutput(lines, (((sizeOne > sizeTwo) ? "First" : "Second")
+        + " file has " + formatComma(Math.abs(sizeOne - sizeTwo))
+        + " more bytes from offset 0x" + Long.toHexString(((sizeOne > sizeTwo)
+        ? startOne : startTwo) + compareSize).toUpperCase() + "."));
+    }
+    putLines(lines);              // print anything left in output buffer
 
-  } // end of printLine() method
+    if (outputStream != null)
+    {
+      try { outputStream.flush(); } // stream output is buffered, so flush now
+      catch (IOException ioe) { }
+    }
+  } // end of compareFiles() method
 
 
 /*
-  putHex() method
+  compareMarks() method
 
-  Convert a signed long integer to an unsigned hexadecimal string with the
-  number of digits specified by the caller.  Put the result in the caller's
-  line buffer at a specified location.
+  Append a line of marks under the differing bytes in a line from two files.
+  Two marks go under the hexadecimal digits, and one under the text character,
+  so the marks line up with the dump lines from either file.  For lines side
+  by side, the marks are repeated for the second file.
 */
-  static void putHex(
-    StringBuffer buffer,          // line buffer where our output goes
-    int offset,                   // starting offset in buffer
-    int digits,                   // how many hexadecimal digits to convert
-    long number)                  // convert this binary number to hexadecimal
+  static void compareMarks(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer one,               // first buffer with input bytes
+    ByteBuffer two,               // second buffer with input bytes
+    int index,                    // index of first input byte in buffers
+    int length)                   // number of input bytes, up to <dumpWidth>
   {
-    /* constants */
+    int i;                        // index variable
+    int mark;                     // mark character for one byte
+    byte[] output;                // output buffer, for convenience
+    int side;                     // one or two copies of the marks
+    int start;                    // where this line starts in <output>
+    int used;                     // number of bytes used in <output>
+
+    output = lines.output;
+    start = used = lines.outputUsed;
+    for (side = (compareSide ? 2 : 1); side > 0; side --)
+    {
+      for (i = 0; i < (lines.digits + 2); i ++) // under the file offset
+        output[used ++] = ' ';
+      for (i = 0; i < dumpWidth; i ++) // under the hexadecimal digits
+      {
+        mark = ((i < length) && (one.get(index + i) != two.get(index + i)))
+          ? '^' : ' ';
+        output[used ++] = (byte) mark;
+        output[used ++] = (byte) mark;
+        output[used ++] = ' ';
+      }
+      output[used ++] = ' ';      // under the space and left text marker
+      output[used ++] = ' ';
+      for (i = 0; i < dumpWidth; i ++) // under the text characters
+      {
+        output[used ++] = (byte) (((i < length) && (one.get(index + i)
+          != two.get(index + i))) ? '^' : ' ');
+      }
+      output[used ++] = ' ';      // under the right text marker
+      output[used ++] = ' ';      // and the spaces between sides
+      output[used ++] = ' ';
+    }
+    while ((used > start) && (output[used - 1] == ' '))
+      used --;                    // remove trailing spaces
 
-    final char[] hexDigits = {'0', '1', '2', '3', '4', '5', '6', '7',
-      '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'}; // hexadecimal digits
-    final long hexMask = 0x0F;    // bitmask for last hexadecimal digit
-    final int hexShift = 4;       // bits to shift each hexadecimal digit
+    System.arraycopy(formatter.lineEnd, 0, output, used,
+      formatter.lineEnd.length);
+    lines.outputUsed = used + formatter.lineEnd.length;
 
-    /* local variables */
+  } // end of compareMarks() method
 
-    int i;                        // index variable
-    long rem;                     // remaining number to do
 
-    /* procedure */
+/*
+  compareRead() method
 
-    rem = number;                 // start with the whole number
-    for (i = (offset + digits - 1); i >= offset; i --)
+  Read the given number of bytes into a buffer, starting at index zero.  The
+  files being compared were measured before reading, so if one of them ends
+  too soon, then it must have changed while we were comparing.
+*/
+  static void compareRead(
+    FileChannel channel,          // NIO channel for input file
+    ByteBuffer block,             // buffer for input bytes
+    int length)                   // number of bytes to read
+    throws IOException
+  {
+    block.clear();                // start at index zero
+    block.limit(length);          // and read exactly this many bytes
+    while (block.hasRemaining())
     {
-      buffer.setCharAt(i, hexDigits[(int) (rem & hexMask)]);
-                                  // put one hexadecimal digit
-      rem = rem >> hexShift;      // next piece to do
+      if (channel.read(block) < 0) // end of file?
+        throw new EOFException("file is shorter than when opened");
     }
-  } // end of putHex() method
+  } // end of compareRead() method
 
 
 /*
-  putOutput() method
-
-  Append a complete line of text to the end of the output text area.  We add a
-  newline character at the end of the line, not the caller.  By forcing all
-  output to go through this same method, one complete line at a time, the
-  generated output is cleaner and can be redirected.
+  compressedType() method
 
-  The output text area is forced to scroll to the end, after the text line is
-  written, by selecting character positions that are much too large (and which
-  are allowed by the definition of the JTextComponent.select() method).  This
-  is easier and faster than manipulating the scroll bars directly.
+  Look at the first few bytes of a file to see if it is compressed: a gzip
+  file, or a zip archive (including jar files).  Return zero for all other
+  files, including files that can't be read, which are reported later by the
+  usual dump.
 */
-  static void putOutput(String text)
+  static int compressedType(File givenFile)
   {
-    putOutput(text, true);        // default action is to scroll output lines
-  }
+    byte[] magic;                 // first bytes of file
+    FileInputStream in;           // input file stream
+    int length;                   // number of bytes read into <magic>
 
-  static void putOutput(String text, boolean scroll)
-  {
-    if (outputText == null)
-      System.out.println(text);   // console output goes onto standard output
-    else
+    if (givenFile.isFile() == false) // only if a file, not a folder or unknown
+      return (0);
+    magic = new byte[4];
+    length = 0;
+    try
     {
-      outputText.append(text + "\n"); // graphical output goes into text area
-      if (scroll)                 // does caller want us to scroll?
-        outputText.select(999999999, 999999999); // force scroll to end of text
+      in = new FileInputStream(givenFile);
+      length = in.read(magic);    // short reads are fine for tiny files
+      in.close();
     }
-  }
+    catch (IOException ioe) { }   // treat as an ordinary file
+    if ((length >= 2) && (magic[0] == (byte) 0x1F) && (magic[1] == (byte) 0x8B))
+      return (GZIP_TYPE);
+    if ((length >= 4) && (magic[0] == 'P') && (magic[1] == 'K')
+      && (((magic[2] == 3) && (magic[3] == 4)) // local file header
+      || ((magic[2] == 5) && (magic[3] == 6)))) // empty archive
+    {
+      return (ZIP_TYPE);
+    }
+    return (0);
 
+  } // end of compressedType() method
 
-/*
-  saveOutputText() method
 
-  Ask the user for an output file name, create or replace that file, and copy
-  the contents of our output text area to that file.  The output file will be
-  in the default character set for the system, so if there are special Unicode
-  characters in the displayed text (Arabic, Chinese, Eastern European, etc),
-  then you are better off copying and pasting the output text directly into a
-  Unicode-aware application like Microsoft Word.
+/*
+  digestFile() method
+
+  Compute checksums and digests of one file without dumping it, for the
+  "--digest-only" option.  Only the range of bytes given by <rangeStart> and
+  <rangeLength> is read.  We read into two large buffers in turn, so the next
+  buffer is read while the hashing thread works on the previous one, and the
+  speed is that of the disk or of the slowest digest.  A file name of "-"
+  reads standard input.
 */
-  static void saveOutputText()
+  static void digestFile(File givenFile, DumpFile5Job job)
   {
-    FileWriter output;            // output file stream
+    ByteBuffer block;             // buffer that we are reading into
+    ReadableByteChannel channel;  // NIO channel for <in>
+    int count;                    // number of bytes from one read
+    long endOffset;               // file offset after last byte to read
+    long fileSize;                // size of input file, or -1 if unknown
+    InputStream in;               // input file stream, or standard input
+    int k;                        // index of <block> in <job.digestBlocks>
+    DumpFile5Lines lines;         // state and output for this file
+    long readOffset;              // file offset after last byte read
+    long skipped;                 // number of bytes from one skip
+    long startOffset;             // file offset of first byte to read
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    if ((givenFile.isFile() == false) && (givenFile.getPath().equals("-")
+      == false))
+    {
+      putOutput(lines, ("Sorry, " + givenFile.getPath() + " is not a file."));
+      return;
+    }
+    if (job.digestBlocks == null) // first time for this job
+    {
+      job.digestBlocks = new ByteBuffer[2];
+      job.digestBlocks[0] = ByteBuffer.allocateDirect(DIGEST_SIZE);
+      job.digestBlocks[1] = ByteBuffer.allocateDirect(DIGEST_SIZE);
+    }
 
-    /* Ask the user for an output file name. */
+    try
+    {
+      /* Find the range of bytes to read, in the same way as for a dump, and
+      skip to the first byte. */
 
-    fileChooser.resetChoosableFileFilters(); // remove any existing filters
-    fileChooser.setDialogTitle("Save Output As...");
-    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
-    fileChooser.setMultiSelectionEnabled(false); // allow only one file
-    if (fileChooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
-      return;                     // user cancelled file selection dialog box
+      if (givenFile.getPath().equals("-")) // standard input?
+      {
+        fileSize = -1;            // we can't know how much is coming
+        in = System.in;
+        if (rangeStart < 0)
+          throw new IOException("size of standard input is unknown, so start"
+            + " offset can't be negative");
+      }
+      else
+      {
+        in = new FileInputStream(givenFile);
+        fileSize = ((FileInputStream) in).getChannel().size();
+      }
+      startOffset = (rangeStart < 0) ? Math.max(0, (fileSize + rangeStart))
+        : rangeStart;
+      endOffset = ((rangeLength < 0) || (rangeLength > (Long.MAX_VALUE
+        - startOffset))) ? Long.MAX_VALUE : (startOffset + rangeLength);
+      putOutput(lines, ("Reading file: " + ((fileSize < 0)
+        ? "(standard input)" : givenFile.getPath())));
+
+      if (fileSize >= 0)          // seek directly to first byte of a file
+      {
+        channel = ((FileInputStream) in).getChannel();
+        ((FileChannel) channel).position(startOffset);
+      }
+      else
+      {
+        readOffset = 0;
+        while ((readOffset < startOffset) && ((skipped = in.skip(startOffset
+          - readOffset)) > 0))
+        {
+          readOffset += skipped;
+        }
+        channel = Channels.newChannel(in);
+      }
+
+      /* Read and hash until the end of the range, the end of the file, or
+      the user cancels. */
+
+      k = 0;
+      readOffset = startOffset;
+      lines.startPhase(DumpFile5Stats.READ);
+      while ((readOffset < endOffset) && taskCheck())
+      {
+        lines.setPhase(DumpFile5Stats.READ);
+        block = job.digestBlocks[k];
+        block.clear();
+        block.limit((int) Math.min(block.capacity(), (endOffset
+          - readOffset)));
+        if ((count = channel.read(block)) <= 0)
+          break;                  // end of file
+        addProgress(count);       // for the progress bar, if any
+        readOffset += count;
+        lines.bytesRead += count;
+        lines.setPhase(DumpFile5Stats.WAIT); // for the previous buffer
+        job.digest.add(block, count);
+        k = 1 - k;                // read into the other buffer next time
+      }
+      lines.setPhase(DumpFile5Stats.WAIT);
+      job.digest.sync();          // last buffer must be hashed too
+      lines.setPhase(DumpFile5Stats.FORMAT);
+      if (fileSize >= 0)          // don't close standard input
+        in.close();
+
+      if (!cancelFlag)            // don't print if cancelled by user
+      {
+        putOutput(lines, (formatComma(readOffset - startOffset)
+          + " bytes read."));
+        putDigests(lines, job.digest);
+        putOutput(lines, "");     // blank line
+      }
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+    }
+    flushLines(lines);            // stream output is buffered, so flush now
+
+  } // end of digestFile() method
+
+
+/*
+  digestRunner() method
+
+  This method runs in the hashing thread for a DumpFile5Digest object, and
+  hashes each block that the dumping thread hands over.
+*/
+  static void digestRunner(DumpFile5Digest digest)
+  {
+    ByteBuffer block;             // block to be hashed
+
+    while ((block = digest.next()) != null)
+    {
+      digest.update(block);
+      digest.done();              // dumping thread can use the block again
+    }
+  } // end of digestRunner() method
+
+
+/*
+  dumpArchive() method
+
+  Dump what is inside a compressed file, for the "-u" option: the decompressed
+  contents of a gzip file, or each entry in a zip archive, without writing any
+  temporary files.  Zip entries are chosen with the same "-i" and "-x" name
+  patterns as files in folders, and are dumped in the order they appear in the
+  archive.  Offsets are in the decompressed data.
+*/
+  static void dumpArchive(File givenFile, DumpFile5Job job)
+  {
+    int count;                    // number of zip entries dumped
+    ZipEntry entry;               // one entry in zip archive
+    Enumeration<? extends ZipEntry> entries; // all entries in zip archive
+    FileInputStream in;           // input file stream for gzip file
+    DumpFile5Lines lines;         // state and output for formatting lines
+    String name;                  // entry name without folders
+    InputStream stream;           // decompressed input
+    ZipFile zip;                  // zip archive with random access
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    try
+    {
+      if (compressedType(givenFile) == GZIP_TYPE)
+      {
+        /* Print the header first, so that a bad gzip header is reported
+        after the file name, like any other read error. */
+
+        putOutput(lines, ("Dumping file: " + givenFile.getPath()));
+        in = new FileInputStream(givenFile);
+        stream = in;              // closed by itself if gzip header is bad
+        try
+        {
+          stream = new GZIPInputStream(in, BUFFER_SIZE); // reads header
+          dumpStream(null, stream, in.getChannel(), -1, DumpFile5Pipe.FILL,
+            job);                 // with members after the first one
+        }
+        finally { stream.close(); }
+      }
+      else
+      {
+        zip = new ZipFile(givenFile);
+        try
+        {
+          count = 0;              // no entries dumped yet
+          entries = zip.entries();
+          while ((cancelFlag == false) && entries.hasMoreElements())
+          {
+            entry = entries.nextElement();
+            name = entry.getName();
+            name = name.substring(name.lastIndexOf('/') + 1);
+            if (entry.isDirectory() || (includeName(name) == false))
+              continue;           // folder, or not a name we want
+            count ++;             // one more entry dumped
+            stream = zip.getInputStream(entry);
+            try { dumpStream((givenFile.getPath() + "!/" + entry.getName()),
+              stream, null, entry.getSize(), DumpFile5Pipe.FILL, job); }
+            finally { stream.close(); }
+            addProgress(Math.max(0, entry.getCompressedSize()));
+          }
+          if ((count == 0) && (cancelFlag == false))
+            putOutput(lines, ("No entries found in archive: "
+              + givenFile.getPath()));
+        }
+        finally { zip.close(); }
+      }
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: "
+        + ((ioe.getMessage() == null) ? ioe.toString() : ioe.getMessage())));
+    }
+
+    flushLines(lines);            // stream output is buffered, so flush now
+
+  } // end of dumpArchive() method
+
+
+/*
+  dumpBatch() method
+
+  Dump a list of files and folders given together on the command line, or
+  selected together by the user.  Folders are searched for files, including
+  subfolders.  Files are dumped one at a time, or several at a time by a pool
+  of threads if the "-j" option asks for that and the output is a stream.
+  Each thread has its own buffers, which are reused for the next file, and
+  the output of each file waits in memory until the files before it have been
+  printed, so that the output is in the same order as the file names.  With
+  the "-d" option, each file goes into its own output file instead.
+*/
+  static void dumpBatch(File[] list)
+  {
+    int count;                    // number of files to dump
+    long elapsed;                 // milliseconds for dumping all files
+    Vector<File> files;           // files with folders expanded
+    int i;                        // index variable
+    DumpFile5Job job;             // one file with its buffers and output
+    Vector<String> names;         // output names for <files>
+    int slot;                     // index of job in <batchJobs>
+    long start;                   // starting time in milliseconds
+    Thread[] threads;             // our batch dump threads
+    long total;                   // total number of input bytes to dump
+
+    /* Expand folders into the files they contain, in order by name. */
+
+    files = new Vector<File>();
+    names = new Vector<String>();
+    for (i = 0; i < list.length; i ++)
+    {
+      if (list[i].isDirectory())  // search folders and subfolders
+      {
+        count = files.size();
+        listFolder(list[i], "", files, names);
+        if (files.size() == count)
+          putOutput("No files found in folder: " + list[i].getPath());
+      }
+      else                        // file, or something that isn't a folder
+      {
+        files.addElement(list[i]);
+        names.addElement(list[i].getName());
+      }
+    }
+    batchFiles = files.toArray(new File[0]);
+    batchNames = names.toArray(new String[0]);
+    count = batchFiles.length;
+
+    total = 0;                    // add up sizes for the progress bar
+    for (i = 0; i < count; i ++)
+    {
+      total += (rangeLength < 0) ? batchFiles[i].length()
+        : Math.min(rangeLength, batchFiles[i].length());
+    }
+    synchronized (batchLock)
+    {
+      if (task != null)           // don't assume we were called by a job
+        task.progressTotal = total;
+    }
+
+    /* Make the formatter for the current options and where the output goes.
+    All threads share the same formatter, which never changes. */
+
+    makeFormatter(outputStream != null);
+
+    /* Dump the files one at a time if only one thread is wanted, or if the
+    output goes into the text area. */
+
+    start = System.currentTimeMillis();
+    stats.reset();                // statistics are for this batch only
+    if ((jobCount < 2) || (count < 2) || (outputStream == null))
+    {
+      if (fileJob == null)        // first time here?
+        fileJob = new DumpFile5Job(); // buffers are reused for every file
+      for (i = 0; i < count; i ++)
+      {
+        if (cancelFlag) break;    // stop if user hit the panic button
+        fileJob.file = batchFiles[i];
+        fileJob.name = batchNames[i];
+        dumpJob(fileJob);         // dump contents of one input file
+      }
+    }
+    else
+    {
+      /* Start the batch threads, and print each file's output in order as
+      each file is finished. */
+
+      batchJobs = new DumpFile5Job[2 * jobCount]; // allowed ahead
+      batchNext = batchPrinted = 0; // no files dumped or printed yet
+      if (batchSpares == null)    // first batch with threads?
+      {
+        batchSpareCount = 0;      // no jobs to reuse yet
+        batchSpares = new DumpFile5Job[2 * MAX_THREADS];
+      }
+      threads = new Thread[Math.min(jobCount, count)];
+      for (i = 0; i < threads.length; i ++)
+      {
+        threads[i] = new Thread(new DumpFile5Worker(DumpFile5Worker.BATCH),
+          ("dumpBatch" + i));
+        threads[i].start();
+      }
+
+      for (i = 0; i < count; i ++)
+      {
+        slot = i % batchJobs.length;
+        synchronized (batchLock)
+        {
+          while ((cancelFlag == false) && ((batchJobs[slot] == null)
+            || (batchJobs[slot].done == false)))
+          {
+            try { batchLock.wait(); } catch (InterruptedException ie) { }
+          }
+          job = batchJobs[slot];  // may be null if cancelled
+        }
+        if (cancelFlag) break;    // stop if user hit the panic button
+        try { job.buffer.writeTo(outputStream); } // print this file's dump
+        catch (IOException ioe) { } // same as println(), which ignores errors
+        job.buffer.reset();       // keep buffer for the next file
+        synchronized (batchLock)
+        {
+          batchJobs[slot] = null; // free this slot for another job
+          batchPrinted = i + 1;   // allow threads to dump more files
+          batchSpares[batchSpareCount ++] = job; // job can now be reused
+          batchLock.notifyAll();
+        }
+      }
+
+      for (i = 0; i < threads.length; i ++)
+      {
+        try { threads[i].join(); } catch (InterruptedException ie) { }
+      }
+      try { outputStream.flush(); } catch (IOException ioe) { }
+      batchJobs = null;           // release memory for garbage collector
+    }
+    batchFiles = null;
+    batchNames = null;
+
+    /* Report how fast we were, if there was more than one file. */
+
+    elapsed = Math.max(1, (System.currentTimeMillis() - start));
+    if ((count > 1) && (cancelFlag == false))
+    {
+      putError(((searchPattern != null) ? "Searched " : "Dumped ")
+        + formatComma(count) + " files in "
+        + formatComma(elapsed / 1000.0) + " seconds ("
+        + formatComma(Math.round(count * 10000.0 / elapsed) / 10.0)
+        + " files per second).");
+    }
+    if (statsFlag && (searchPattern == null) && (cancelFlag == false))
+      putStats(elapsed);          // statistics for all files in this batch
+  } // end of dumpBatch() method
+
+
+/*
+  dumpBlock() method
+
+  Dump complete lines from one block of input bytes, which may not end on a
+  line boundary.  Complete dump lines are formatted directly from the input
+  block, when we know that more bytes follow, so that the last line of the file
+  is treated specially.  Any other bytes are saved in the job's line buffer
+  until the next block, and a saved line may look ahead into the next block
+  for decoded text.  This is where we check once per block if the user wants
+  to cancel or pause the dump.
+*/
+  static void dumpBlock(
+    DumpFile5Job job,             // line buffer, line state, and output
+    ByteBuffer block,             // block of input bytes, from index zero
+    int inputRead)                // number of input bytes to use in block
+  {
+    int inputIndex;               // index of next input byte in <block>
+    int lineCount;                // number of complete lines to dump now
+    DumpFile5Lines lines;         // state and output for formatting lines
+
+    lines = job.lines;
+    inputIndex = 0;               // start with first byte in block
+    while ((inputIndex < inputRead) && taskCheck())
+    {
+      if (job.lineUsed == dumpWidth) // complete line saved from before?
+      {
+        formatter.setAhead(lines, job.lineBlock, dumpWidth, block,
+          inputIndex, inputRead); // decoded text may continue in this block
+        formatter.dumpLine(lines, job.lineBlock, 0, job.lineOffset);
+        job.lineOffset += dumpWidth; // offset of next dump line
+        job.lineShown = job.lineUsed = 0; // nothing saved in line buffer now
+      }
+      if ((job.lineUsed == 0) && ((inputRead - inputIndex) > dumpWidth))
+      {
+        /* Dump all complete lines in this block, except for the bytes that
+        may be the last line in the file.  Mapped windows are large, so we
+        take no more than one buffer at a time, and check for cancel or pause
+        in between. */
+
+        lineCount = Math.min(((inputRead - inputIndex - 1) / dumpWidth),
+          (BUFFER_SIZE / dumpWidth));
+        formatter.setAhead(lines, block, inputRead, null, 0, 0);
+        formatter.dumpLines(lines, block, inputIndex, job.lineOffset,
+          lineCount);
+        job.lineOffset += (long) lineCount * dumpWidth; // next dump line
+        inputIndex += lineCount * dumpWidth; // where it starts in block
+      }
+      else
+      {
+        /* Save bytes for an incomplete line, or for a complete line that may
+        be the last line in the file. */
+
+        while ((job.lineUsed < dumpWidth) && (inputIndex < inputRead))
+          job.lineBuffer[job.lineUsed ++] = block.get(inputIndex ++);
+      }
+    }
+    formatter.setAhead(lines, null, 0, null, 0, 0); // block may be reused
+  } // end of dumpBlock() method
+
+
+/*
+  dumpChunk() method
+
+  Format one chunk of a file for a parallel dump, and put the output lines in
+  the chunk's buffer.  The caller gives us an input buffer big enough for all
+  the input bytes in the chunk, plus up to three lines before the chunk, and
+  up to three bytes after it for decoded text.  All threads share the same
+  file channel, because positional reads don't change the channel's position.
+
+  Each dump line is handled the same as in the sequential loop of dumpFile().
+  The only trick is to know what the sequential loop would have remembered
+  when it reached the start of this chunk: the previous line (for comparing),
+  and the count of identical lines, which only matters as zero, one, or two or
+  more.  We recreate both by dumping the three lines before the chunk and then
+  throwing away their output.  A run of identical lines that started before
+  this chunk can't be reported here, because we don't know where it started.
+  We give the end of that run to the printing thread, which knows the start
+  from earlier chunks.
+*/
+  static void dumpChunk(
+    DumpFile5Chunk chunk,         // chunk number and output buffer
+    DumpFile5Lines lines,         // our state for formatting lines
+    ByteBuffer inputBlock)        // input buffer allocated by caller
+    throws IOException
+  {
+    int ahead;                    // bytes after chunk, for decoded text
+    int backLines;                // number of lines we look back before chunk
+    long end;                     // offset after this chunk, relative to range
+    long endLine;                 // line number after the end of this chunk
+    long firstLine;               // line number of first line in this chunk
+    int inputIndex;               // index of next input line in <inputBlock>
+    boolean lastFlag;             // true if chunk has the final line of file
+    long line;                    // current line number in file
+    long printed;                 // <linesOut> before lines we look back at
+    long readStart;               // file offset where we start reading
+    long skipped;                 // <linesSkipped> before those lines
+
+    /* Read all input bytes for this chunk, plus the lines just before. */
+
+    firstLine = chunk.number * chunkLines;
+    endLine = Math.min((firstLine + chunkLines), chunkLineCount);
+    lastFlag = (endLine == chunkLineCount);
+    backLines = (int) Math.min(3, firstLine);
+    readStart = (firstLine - backLines) * dumpWidth; // relative to range
+    end = Math.min((endLine * dumpWidth), chunkSize);
+    ahead = (formatter.decoder == null) ? 0 : (int) Math.min(DumpFile5Decoder
+      .AHEAD, (chunkSize - end)); // a character may continue past chunk
+    lines.startPhase(DumpFile5Stats.READ);
+    inputBlock.clear();           // fill buffer from the beginning
+    inputBlock.limit((int) (end - readStart) + ahead); // only for this chunk
+    while (inputBlock.hasRemaining())
+    {
+      if (chunkChannel.read(inputBlock, (chunkStart + readStart
+        + inputBlock.position())) < 0) // file shouldn't get shorter now
+      {
+        throw new EOFException("end of file before " + formatComma(
+          chunkStart + chunkSize) + " bytes");
+      }
+    }
+
+    lines.setPhase(DumpFile5Stats.FORMAT);
+    lines.bytesRead += inputBlock.limit() - ahead - (backLines * dumpWidth);
+    if (chunkDigest)              // keep this chunk's bytes for digests
+    {
+      if (chunk.input == null)    // first time for this chunk buffer
+        chunk.input = new byte[(int) (chunkLines * dumpWidth)];
+      chunk.inputUsed = inputBlock.limit() - ahead - (backLines * dumpWidth);
+      System.arraycopy(inputBlock.array(), (backLines * dumpWidth),
+        chunk.input, 0, chunk.inputUsed);
+    }
+
+    /* Recreate the state of the sequential loop at the start of this chunk.
+    Lines before the chunk aren't counted in the statistics. */
+
+    printed = lines.linesOut;
+    skipped = lines.linesSkipped;
+    lines.digits = chunkDigits;   // same file offsets as the whole file
+    lines.oldValid = false;       // no previous line yet
+    lines.output = chunk.output;  // output goes directly into the chunk
+    lines.outputLimit = chunk.output.length; // which is big enough for all
+    lines.leadRun = false;        // nothing left from the previous chunk
+    lines.sameCount = 0;          // no identical dump lines found yet
+    lines.textOffset = -1;        // no decoded text continues from before
+    formatter.setAhead(lines, inputBlock, inputBlock.limit(), null, 0, 0);
+
+    formatter.dumpLines(lines, inputBlock, 0, (chunkStart + ((firstLine
+      - backLines) * dumpWidth)), backLines); // lines before this chunk
+    lines.leadEnd = -1;           // no end found yet for an earlier run
+    lines.leadRun = (lines.sameCount > 1); // did earlier chunk leave a run?
+    lines.outputUsed = 0;         // those lines belong to an earlier chunk
+    lines.linesOut = printed;
+    lines.linesSkipped = skipped;
+
+    /* Compare and print each complete line in this chunk, except for the very
+    last line in the file, which is always printed. */
+
+    inputIndex = backLines * dumpWidth; // first line of this chunk in buffer
+    line = (lastFlag ? (chunkLineCount - 1) : endLine); // stop before here
+    formatter.dumpLines(lines, inputBlock, inputIndex, (chunkStart + (firstLine
+      * dumpWidth)), (int) (line - firstLine));
+    inputIndex += (int) (line - firstLine) * dumpWidth;
+    if (lastFlag)                 // always print last line, even if empty
+    {
+      formatter.dumpLast(lines, inputBlock, inputIndex, (chunkStart + (line
+        * dumpWidth)), (int) (chunkSize - (line * dumpWidth)));
+    }
+    formatter.setAhead(lines, null, 0, null, 0, 0); // buffer is reused
+    chunk.length = lines.outputUsed; // number of output bytes in chunk
+    chunk.runEnd = lines.leadEnd; // end of a run from an earlier chunk
+    chunk.runStart = ((lines.sameCount > 1) && (lines.leadRun == false))
+      ? lines.oldOffset : -1;     // start of a run that we leave open
+    lines.setPhase(DumpFile5Stats.WAIT); // until we get another chunk
+    stats.addLines(lines);        // statistics for this chunk
+
+  } // end of dumpChunk() method
+
+
+/*
+  dumpFile() method
+
+  Dump the contents of one file in hexadecimal and as 8-bit ASCII bytes.  The
+  caller gives us a File object to tell us which file, and this File object may
+  or may not be valid, plus a job with our buffers and where the output goes.
+  Only the range of bytes given by <rangeStart> and <rangeLength> is dumped,
+  and we seek directly to the first byte.
+
+  Input bytes come in blocks that don't end on a line boundary, which are given
+  to dumpBlock() one at a time.
+*/
+  static void dumpFile(File givenFile, DumpFile5Job job)
+  {
+    ByteBuffer block;             // current block of input bytes
+    FileChannel channel;          // NIO channel for <in>
+    long endOffset;               // file offset after last byte to dump
+    long fileSize;                // size of input file when opened
+    FileInputStream in;           // input file stream
+    int inputRead;                // number of bytes actually read into buffer
+    long lastOffset;              // largest file offset that we may print
+    DumpFile5Lines lines;         // state and output for formatting lines
+    boolean mapFlag;              // true while mapping windows of input file
+    long mapOffset;               // file offset of next mapped window
+    long readOffset;              // file offset after last byte read
+    long startOffset;             // file offset of first byte to dump
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    if (givenFile.isFile())       // only if a file, not a folder or unknown
+    {
+      /* Find the range of bytes to dump.  A negative start offset counts back
+      from the end of the file.  File offsets have more hexadecimal digits if
+      they don't fit in the usual eight. */
+
+      fileSize = givenFile.length(); // may be zero for special files
+      startOffset = (rangeStart < 0) ? Math.max(0, (fileSize + rangeStart))
+        : rangeStart;
+      endOffset = ((rangeLength < 0) || (rangeLength > (Long.MAX_VALUE
+        - startOffset))) ? Long.MAX_VALUE : (startOffset + rangeLength);
+      lastOffset = Math.max(startOffset, Math.min(fileSize, endOffset));
+      lines.digits = OFFSET_DIGITS; // usual number of digits
+      while ((lines.digits < MAX_DIGITS)
+        && ((lastOffset >>> (4 * lines.digits)) != 0))
+      {
+        lines.digits ++;          // need one more digit
+      }
+      lines.oldValid = false;     // no previous line yet
+      lines.sameCount = 0;        // no identical dump lines found yet
+      lines.textOffset = -1;      // no decoded text continues from before
+
+      /* Try to open the user's file and start dumping.  Large files may be
+      split into chunks for parallel threads, unless we are already one of
+      several files being dumped at the same time. */
+
+      putOutput(lines, ("Dumping file: " + givenFile.getPath()));
+      if ((threadCount > 0) && (job.number < 0) && ((Math.min(fileSize,
+        endOffset) - startOffset) > CHUNK_SIZE))
+      {
+        dumpParallel(givenFile, startOffset, endOffset, lines, job.digest);
+      }
+      else try
+      {
+        in = new FileInputStream(givenFile); // open file for reading bytes
+        channel = in.getChannel(); // NIO channel for the same file
+        channel.position(startOffset); // seek directly to first byte
+        fileSize = channel.size(); // only map what exists right now
+        mapFlag = (mapSize > 0) && ((Math.min(fileSize, endOffset)
+          - startOffset) >= MAP_MINIMUM);
+        mapOffset = startOffset;  // where the first window starts
+
+        job.lineOffset = readOffset = startOffset; // at the first byte
+        job.lineShown = job.lineUsed = 0; // nothing saved in line buffer yet
+        lines.startPhase(DumpFile5Stats.READ);
+
+        while ((cancelFlag == false) && (readOffset < endOffset))
+        {
+          /* Get the next block of input bytes, starting at index zero.  Bytes
+          in a mapped window are read while they are formatted. */
+
+          lines.setPhase(DumpFile5Stats.READ);
+
+          if (mapSize == 0)       // old stream reads into a byte array?
+          {
+            if ((inputRead = in.read(job.inputBuffer)) <= 0)
+              break;              // end of file
+            block = job.inputBlock;
+            block.clear();        // wrapped buffer starts at index zero
+            block.limit(inputRead); // and has this many bytes
+          }
+          else if (mapFlag)       // map a window of a large file?
+          {
+            if (mapOffset >= Math.min(fileSize, endOffset)) // done mapping?
+            {
+              mapFlag = false;    // read anything added since we started
+              channel.position(mapOffset);
+              continue;
+            }
+            try
+            {
+              block = channel.map(FileChannel.MapMode.READ_ONLY, mapOffset,
+                Math.min(mapSize, (Math.min(fileSize, endOffset)
+                - mapOffset)));
+            }
+            catch (IOException ioe) // some special files can't be mapped
+            {
+              mapFlag = false;    // switch to channel reads for this file
+              channel.position(mapOffset);
+              continue;
+            }
+            mapOffset += block.limit(); // where the next window starts
+          }
+          else                    // read smaller files into direct buffer
+          {
+            block = job.directBuffer;
+            block.clear();        // fill buffer from the beginning
+            if (channel.read(block) <= 0)
+              break;              // end of file
+            block.flip();         // get ready to use what was read
+          }
+          lines.setPhase(DumpFile5Stats.FORMAT);
+          inputRead = (int) Math.min(block.limit(), (endOffset - readOffset));
+                                  // number of input bytes to use in block
+          addProgress(inputRead); // for the progress bar, if any
+          readOffset += inputRead; // file offset after this block
+          lines.bytesRead += inputRead;
+
+          if (job.digest != null) // hash this block while we format it
+            job.digest.add(block, inputRead);
+          dumpBlock(job, block, inputRead); // dump complete lines
+          if (job.digest != null) // block may be filled again by next read
+          {
+            lines.setPhase(DumpFile5Stats.WAIT);
+            job.digest.sync();
+          }
+        } // end of while read buffer loop
+        lines.setPhase(DumpFile5Stats.FORMAT);
+
+        in.close();               // close input file and channel
+
+        /* If the user hasn't cancelled this operation, finish printing the
+        dump if any output lines are pending, and then print a summary. */
+
+        if (!cancelFlag)          // don't do more work if cancelled by user
+        {
+          /* Always print last line in the dump, even if the file is empty. */
+
+          formatter.dumpLast(lines, job.lineBlock, 0, job.lineOffset,
+            job.lineUsed);
+          putLines(lines);        // print any lines still in output buffer
+
+          /* Append a summary. */
+
+          putOutput(lines, (formatComma(job.lineOffset + job.lineUsed
+            - startOffset) + " bytes dumped."));
+          putDigests(lines, job.digest); // checksums of the same bytes
+          putOutput(lines, "");   // blank line
+        }
+        else
+          putLines(lines);        // print lines that were done before cancel
+      }
+      catch (IOException ioe)
+      {
+        putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      }
+    }
+    else
+    {
+      putOutput(lines, ("Sorry, " + givenFile.getPath() + " is not a file."));
+    }
+
+    if ((lines.stream == null) && (outputStream != null))
+    {
+      try { outputStream.flush(); } // stream output is buffered, so flush now
+      catch (IOException ioe) { }
+    }
+  } // end of dumpFile() method
+
+
+/*
+  dumpFollow() method
+
+  Dump one file for the "-t" option, and keep dumping new bytes as they are
+  added to the end of the file, with offsets that continue from where they
+  left off, until the user cancels or the "-n" length is reached.  A negative
+  start offset counts back from the size of the file when it was opened, so
+  the last few bytes are shown before any new bytes.
+*/
+  static void dumpFollow(File givenFile, DumpFile5Job job)
+  {
+    FileInputStream in;           // input file stream
+    DumpFile5Lines lines;         // state and output for formatting lines
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    if (givenFile.isFile())       // only if a file, not a folder or unknown
+    {
+      try
+      {
+        in = new FileInputStream(givenFile);
+        try { dumpStream(givenFile.getPath(), in, in.getChannel(),
+          in.getChannel().size(), DumpFile5Pipe.FOLLOW, job); }
+        finally { in.close(); }
+      }
+      catch (IOException ioe)
+      {
+        putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      }
+    }
+    else
+    {
+      putOutput(lines, ("Sorry, " + givenFile.getPath() + " is not a file."));
+    }
+    flushLines(lines);            // stream output is buffered, so flush now
+
+  } // end of dumpFollow() method
+
+
+/*
+  dumpInput() method
+
+  Dump standard input, for a file name of "-" on the command line.  Bytes are
+  dumped as they arrive, which may be a few at a time from a pipe, and lines
+  are shown within the "-t" delay even when no more bytes come for a while.
+*/
+  static void dumpInput(DumpFile5Job job)
+  {
+    DumpFile5Lines lines;         // state and output for formatting lines
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    try
+    {
+      dumpStream("(standard input)", System.in, null, -1,
+        DumpFile5Pipe.PARTIAL, job);
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from standard input: "
+        + ioe.getMessage()));
+    }
+    flushLines(lines);            // stream output is buffered, so flush now
+
+  } // end of dumpInput() method
+
+
+/*
+  dumpJob() method
+
+  Dump one file from a batch, using the job's buffers.  The output goes into
+  its own file if there is an output folder, into the job's buffer if other
+  files are being dumped at the same time, or else to the usual output.
+*/
+  static void dumpJob(DumpFile5Job job)
+  {
+    File output;                  // output file for this job, if any
+    OutputStream stream;          // output file stream, if any
+
+    job.lines.batch = job.number; // wait for earlier files, if in batch
+    job.lines.outputUsed = 0;     // nothing in output buffer yet
+    job.lines.stream = (job.number < 0) ? null : job.buffer;
+    stream = null;                // no output file yet
+    if (outputFolder != null)     // one output file per input file?
+    {
+      output = new File(outputFolder, (job.name + ((gzipLevel > 0)
+        ? ".txt.gz" : ".txt")));
+      try
+      {
+        if (output.getParentFile() != null) // create subfolders as needed
+          output.getParentFile().mkdirs();
+        stream = openOutput(new FileOutputStream(output));
+      }
+      catch (IOException ioe)
+      {
+        putOutput(job.lines, ("Can't write to output file: "
+          + ioe.getMessage()));
+        return;
+      }
+      job.lines.batch = -1;       // output file doesn't wait for anything
+      job.lines.stream = stream;
+    }
+
+    job.digest = null;            // no checksums or digests unless asked for
+    if (digestNames != null) try
+    {
+      job.digest = new DumpFile5Digest(digestNames);
+    }
+    catch (NoSuchAlgorithmException nsae) // names were checked in main()
+    {
+      putOutput(job.lines, ("Unknown checksum or digest: "
+        + nsae.getMessage()));
+    }
+
+    if (digestOnly && (job.digest != null)) // checksums instead of dump?
+      digestFile(job.file, job);
+    else if (analyzeSize > 0)     // entropy instead of dump?
+      analyzeFile(job.file, job);
+    else if (searchPattern != null) // search instead of dump?
+      searchFile(job.file, job);
+    else if (job.file.getPath().equals("-")) // standard input?
+      dumpInput(job);
+    else if (unzipFlag && (compressedType(job.file) > 0))
+      dumpArchive(job.file, job); // dump what is inside a compressed file
+    else if (followFlag)          // keep dumping bytes added to the file?
+      dumpFollow(job.file, job);
+    else
+      dumpFile(job.file, job);    // dump contents of one input file
+    if (job.digest != null)       // end the hashing thread, if any
+      job.digest.stop();
+
+    if (stream != null)           // close our output file, if any
+    {
+      job.lines.stream = job.buffer; // any error message goes in order
+      job.lines.batch = job.number;
+      if (job.number < 0)         // not part of a batch with threads?
+        job.lines.stream = null;
+      try { stream.close(); }     // flushes any remaining output
+      catch (IOException ioe)
+      {
+        putOutput(job.lines, ("Can't write to output file: "
+          + ioe.getMessage()));
+      }
+    }
+  } // end of dumpJob() method
+
+
+/*
+  dumpParallel() method
+
+  Dump one large file by splitting it into chunks with a whole number of dump
+  lines, formatting the chunks in separate threads, and printing the chunks in
+  their original order.  The output is exactly the same as from the sequential
+  loop in dumpFile(), including ellipses for identical lines that cross chunk
+  boundaries.  The caller gives us the range of bytes to dump, and the line
+  state with the number of offset digits and where the output goes.
+
+  Checksums and digests need the bytes in order, so each chunk keeps a copy of
+  its input bytes, and we hash them as we print the chunk.  We would otherwise
+  be waiting for the chunk threads, so this is still a separate processor.
+
+  The chunk threads take the next chunk number from a shared counter.  Chunks
+  are all the same size and must be printed in order, so there is nothing for
+  a fork-join pool to split or steal, and a fixed ring of chunk buffers keeps
+  later chunks from running far ahead of the printer and filling memory.
+*/
+  static void dumpParallel(
+    File givenFile,               // input file
+    long startOffset,             // file offset of first byte to dump
+    long endOffset,               // file offset after last byte to dump
+    DumpFile5Lines lines,         // line state and output for this file
+    DumpFile5Digest digest)       // checksums and digests, or null
+  {
+    DumpFile5Chunk chunk;         // one chunk of formatted output
+    long i;                       // index variable
+    FileInputStream in;           // input file stream
+    int slot;                     // index of chunk in <chunkBuffers>
+    long runStart;                // start of identical lines left open
+    Thread[] threads;             // our parallel dump threads
+
+    /* Open the input file.  The parallel threads share the file channel. */
+
+    try
+    {
+      in = new FileInputStream(givenFile); // open file for reading bytes
+      chunkChannel = in.getChannel(); // NIO channel for positional reads
+      chunkStart = startOffset;   // all line offsets are relative to this
+      chunkSize = Math.max(0, (Math.min(chunkChannel.size(), endOffset)
+        - startOffset));          // number of bytes in range
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      return;
+    }
+
+    /* Set up the shared variables for the parallel threads. */
+
+    chunkDigest = (digest != null); // keep input bytes for hashing?
+    chunkDigits = lines.digits;   // same file offsets as sequential dump
+    lineSize = chunkDigits + (7 * dumpWidth) + 5 + formatter.lineEnd.length;
+                                  // longest line if text chars are 4 bytes
+    chunkLineCount = Math.max(1, ((chunkSize + dumpWidth - 1)
+      / dumpWidth));              // even an empty file has one dump line
+    chunkLines = CHUNK_SIZE / dumpWidth; // whole number of lines per chunk
+    chunkCount = (chunkLineCount + chunkLines - 1) / chunkLines;
+    chunkBuffers = new DumpFile5Chunk[2 * threadCount]; // allowed ahead
+    chunkError = null;            // no errors found yet
+    chunkNext = chunkPrinted = 0; // no chunks formatted or printed yet
+    chunkSpareCount = 0;          // no chunks to reuse yet
+    chunkSpares = new DumpFile5Chunk[(3 * threadCount) + 1];
+
+    /* Start the parallel threads.  They run at the same priority as us, which
+    is already low if we are called from the GUI. */
+
+    threads = new Thread[threadCount];
+    for (i = 0; i < threadCount; i ++)
+    {
+      threads[(int) i] = new Thread(new DumpFile5Worker(
+        DumpFile5Worker.CHUNKS), ("dumpChunk" + i));
+      threads[(int) i].start();
+    }
+
+    /* Print the chunks in order, as each one becomes ready.  A run of
+    identical lines that crosses chunks is reported by us, in front of the
+    chunk where the run ends, because only we know where the run started. */
+
+    runStart = -1;                // no run of identical lines pending
+    lines.startPhase(DumpFile5Stats.WAIT);
+    for (i = 0; i < chunkCount; i ++)
+    {
+      lines.setPhase(DumpFile5Stats.WAIT); // for threads to format chunks
+      slot = (int) (i % chunkBuffers.length);
+      synchronized (chunkLock)
+      {
+        while ((chunkError == null) && (cancelFlag == false)
+          && (chunkBuffers[slot] == null))
+        {
+          try { chunkLock.wait(); } catch (InterruptedException ie) { }
+        }
+        chunk = chunkBuffers[slot]; // null if error or cancelled
+        chunkBuffers[slot] = null; // free this slot for another chunk
+        chunkPrinted = i + 1;     // allow threads to format more chunks
+        chunkLock.notifyAll();
+      }
+      if (chunk == null) break;   // stop if error or user hit panic button
+      lines.setPhase(DumpFile5Stats.WRITE);
+      if (chunk.runEnd >= 0)      // does a run from earlier chunks end here?
+      {
+        formatter.formatRun(lines, runStart, chunk.runEnd);
+        putLines(lines);
+        runStart = -1;
+      }
+      if (chunk.runStart >= 0)    // does a new run continue after this chunk?
+        runStart = chunk.runStart;
+      if (chunk.length > 0)       // not all duplicate lines?
+        putOutput(lines, chunk.output, chunk.length); // print chunk's lines
+      if (digest != null)         // checksums of this chunk's input bytes
+        digest.update(ByteBuffer.wrap(chunk.input, 0, chunk.inputUsed));
+      addProgress(chunkLines * dumpWidth); // for the progress bar, if any
+      synchronized (chunkLock)
+      {
+        chunkSpares[chunkSpareCount ++] = chunk; // chunk can now be reused
+      }
+    }
+
+    /* Wait for all threads to finish, then print a summary. */
+
+    for (i = 0; i < threadCount; i ++)
+    {
+      try { threads[(int) i].join(); } catch (InterruptedException ie) { }
+    }
+    lines.setPhase(DumpFile5Stats.FORMAT);
+    stats.addLines(lines);        // counts and times from printing thread
+    try { in.close(); } catch (IOException ioe) { } // close input file
+    if (chunkError != null)
+      putOutput(lines, ("Can't read from input file: " + chunkError));
+    else if (!cancelFlag)         // don't do more work if cancelled by user
+    {
+      putOutput(lines, (formatComma(chunkSize) + " bytes dumped."));
+      putDigests(lines, digest);  // checksums of the same bytes
+      putOutput(lines, "");       // blank line
+    }
+    chunkBuffers = chunkSpares = null; // release memory for garbage collector
+    chunkChannel = null;
+
+  } // end of dumpParallel() method
+
+
+/*
+  dumpPending() method
+
+  No more bytes have come for a while from standard input or a followed file,
+  so show what we have without waiting: a complete line that we were keeping
+  in case it was the last line, or a partial line, which is shown again when
+  it gets more bytes.  A run of identical lines that is still pending is
+  printed up to here, so that repeated bytes show up as soon as other bytes
+  would, and identical lines that come later start a new run.
+*/
+  static void dumpPending(DumpFile5Job job)
+  {
+    int carry;                    // decoded text from the line before
+    long carryOffset;             // file offset where <carry> applies
+    DumpFile5Lines lines;         // state and output for formatting lines
+
+    lines = job.lines;
+    if (job.lineUsed == dumpWidth) // complete line, but maybe not the last?
+    {
+      formatter.dumpLine(lines, job.lineBlock, 0, job.lineOffset);
+      job.lineOffset += dumpWidth; // duplicates still collapse across reads
+      job.lineShown = job.lineUsed = 0;
+    }
+    formatter.endRun(lines, job.lineOffset); // pending duplicate lines
+    if (job.lineUsed > job.lineShown) // partial line with new bytes?
+    {
+      carry = lines.textCarry;    // decoded text starts the same way again
+      carryOffset = lines.textOffset;
+      formatter.formatLine(lines, job.lineBlock, 0, job.lineOffset,
+        job.lineUsed);
+      lines.textCarry = carry;
+      lines.textOffset = carryOffset;
+      job.lineShown = job.lineUsed;
+      lines.oldValid = false;     // print this line again when complete
+    }
+    flushLines(lines);            // show everything now
+
+  } // end of dumpPending() method
+
+
+/*
+  dumpStream() method
+
+  Dump the decompressed bytes from a gzip file or one zip entry, or bytes from
+  standard input or a followed file.  A separate thread reads and decompresses
+  the input into a few large blocks, while we format the blocks that are
+  already full, so decompressing and formatting run on different processors.
+  Lines are the same as from dumpFile(), with the offsets of the decompressed
+  bytes.  The caller gives us the decompressed size if it is known, or -1;
+  without a size, we can't count back from the end, and file offsets get more
+  digits as they grow.
+
+  For standard input and followed files, the reading thread passes on bytes as
+  soon as it has them, and whatever we have formatted is shown at least once
+  every <followDelay> milliseconds.
+*/
+  static void dumpStream(
+    String name,                  // file or entry name, or null if printed
+    InputStream stream,           // decompressed input bytes
+    FileChannel channel,          // compressed file, for progress, or null
+    long size,                    // number of decompressed bytes, or -1
+    int mode,                     // how blocks are read, from DumpFile5Pipe
+    DumpFile5Job job)             // buffers and where the output goes
+    throws IOException
+  {
+    ByteBuffer block;             // full block of decompressed bytes
+    long endOffset;               // stream offset after last byte to dump
+    long flushed;                 // time when output was last shown
+    int inputRead;                // number of bytes in <block>
+    long lastOffset;              // largest stream offset that we know of
+    DumpFile5Lines lines;         // state and output for formatting lines
+    DumpFile5Pipe pipe;           // blocks passed from decompressing thread
+    long startOffset;             // stream offset of first byte to dump
+    Thread thread;                // decompressing thread
+
+    /* Find the range of bytes to dump, in the same way as for files. */
+
+    lines = job.lines;
+    if ((rangeStart < 0) && (size < 0))
+      throw new IOException("size of " + ((mode == DumpFile5Pipe.PARTIAL)
+        ? "standard input" : "compressed data") + " is unknown, so start"
+        + " offset can't be negative");
+    startOffset = (rangeStart < 0) ? Math.max(0, (size + rangeStart))
+      : rangeStart;
+    endOffset = ((rangeLength < 0) || (rangeLength > (Long.MAX_VALUE
+      - startOffset))) ? Long.MAX_VALUE : (startOffset + rangeLength);
+    lastOffset = (size < 0) ? startOffset : Math.max(startOffset,
+      Math.min(size, endOffset));
+    lines.digits = OFFSET_DIGITS; // usual number of digits
+    while ((lines.digits < MAX_DIGITS)
+      && ((lastOffset >>> (4 * lines.digits)) != 0))
+    {
+      lines.digits ++;            // need one more digit
+    }
+    lines.oldValid = false;       // no previous line yet
+    lines.sameCount = 0;          // no identical dump lines found yet
+    lines.textOffset = -1;        // no decoded text continues from before
+
+    /* Start the decompressing thread, and dump each block as it is filled. */
+
+    if (name != null)             // caller may have printed the header
+      putOutput(lines, ("Dumping file: " + name));
+    if (job.digest != null)       // zip entries share the job's digests
+      job.digest.reset();
+    pipe = new DumpFile5Pipe(stream, channel, startOffset, endOffset, mode);
+    thread = new Thread(pipe, "pipeRunner");
+    thread.start();
+
+    job.lineOffset = startOffset; // at the first byte
+    job.lineShown = job.lineUsed = 0; // nothing saved in line buffer yet
+    flushed = System.currentTimeMillis();
+    lines.startPhase(DumpFile5Stats.WAIT);
+    while (cancelFlag == false)
+    {
+      lines.setPhase(DumpFile5Stats.WAIT); // reading is in the other thread
+      if ((mode != DumpFile5Pipe.FILL) && (pipe.ready(followDelay) == false))
+      {
+        dumpPending(job);         // nothing new for a while, so show lines
+        flushed = System.currentTimeMillis();
+        continue;                 // and check for cancel while waiting
+      }
+      if ((block = pipe.next()) == null)
+        break;                    // end of input
+      lines.setPhase(DumpFile5Stats.FORMAT);
+      inputRead = block.limit();  // blocks are full, except for the last
+      lines.bytesRead += inputRead;
+      while ((lines.digits < MAX_DIGITS) && (((job.lineOffset + job.lineUsed
+        + inputRead) >>> (4 * lines.digits)) != 0))
+      {
+        lines.digits ++;          // offsets have grown past the size we knew
+      }
+      if (job.digest != null)     // hash this block while we format it
+        job.digest.add(block, inputRead);
+      dumpBlock(job, block, inputRead); // dump complete lines
+      if (job.digest != null)     // before the block is filled again
+      {
+        lines.setPhase(DumpFile5Stats.WAIT);
+        job.digest.sync();
+      }
+      pipe.release();             // block can be filled again
+      if ((mode != DumpFile5Pipe.FILL)
+        && ((System.currentTimeMillis() - flushed) >= followDelay))
+      {
+        flushLines(lines);        // bytes keep coming, but show lines now
+        flushed = System.currentTimeMillis();
+      }
+    }
+    pipe.stop();                  // in case we stopped early
+    try { thread.join(); } catch (InterruptedException ie) { }
+    lines.setPhase(DumpFile5Stats.FORMAT);
+    if (pipe.error != null)
+    {
+      putLines(lines);            // print lines that were done before error
+      throw new IOException(pipe.error);
+    }
+
+    /* Finish the dump, the same as for a file. */
+
+    if (!cancelFlag)              // don't do more work if cancelled by user
+    {
+      if ((job.lineUsed == 0) && (job.lineOffset > startOffset))
+        formatter.endRun(lines, job.lineOffset); // last line already shown
+      else if ((job.lineUsed == 0) || (job.lineUsed > job.lineShown))
+        formatter.dumpLast(lines, job.lineBlock, 0, job.lineOffset,
+          job.lineUsed);
+      putLines(lines);            // print any lines still in output buffer
+      putOutput(lines, (formatComma(job.lineOffset + job.lineUsed
+        - startOffset) + " bytes dumped."));
+      putDigests(lines, job.digest); // checksums of the same bytes
+      putOutput(lines, "");       // blank line
+    }
+    else
+      putLines(lines);            // print lines that were done before cancel
+
+  } // end of dumpStream() method
+
+
+/*
+  flushLines() method
+
+  Print all formatted lines in an output buffer, and flush the output stream
+  where they went, so that they are seen now.  Output that waits in memory for
+  earlier files in a batch can't be flushed, and the text area doesn't need
+  to be.
+*/
+  static void flushLines(DumpFile5Lines lines)
+  {
+    putLines(lines);              // formatted lines go to their stream
+    try
+    {
+      if ((lines.stream != null) && (lines.batch < 0)) // file's own output?
+        lines.stream.flush();
+      else if ((lines.stream == null) && (outputStream != null))
+        outputStream.flush();     // console output or output file
+    }
+    catch (IOException ioe) { }   // same as println(), which ignores errors
+
+  } // end of flushLines() method
+
+
+/*
+  formatComma() method
+
+  Format a number with commas (digit grouping) in the current locale, for
+  messages and statistics.  The number format is made when first needed,
+  because loading locale data takes longer than dumping a small file, and a
+  plain dump never prints a formatted number.  This is synchronized, since
+  parallel threads may print messages and NumberFormat isn't thread safe.
+*/
+  static synchronized String formatComma(double number)
+  {
+    if (formatComma == null)      // first time here?
+    {
+      formatComma = NumberFormat.getInstance(); // current locale
+      formatComma.setGroupingUsed(true); // use commas or digit groups
+    }
+    return (formatComma.format(number));
+  }
+
+  static synchronized String formatComma(long number)
+  {
+    if (formatComma == null)      // first time here?
+    {
+      formatComma = NumberFormat.getInstance(); // current locale
+      formatComma.setGroupingUsed(true); // use commas or digit groups
+    }
+    return (formatComma.format(number));
+  }
+
+
+/*
+  globPattern() method
+
+  Convert a file name pattern with wildcards into a regular expression.  An
+  asterisk ("*") matches any number of characters, and a question mark ("?")
+  matches one character.  Everything else is taken literally, and case doesn't
+  matter, since file names on Windows are not case sensitive.
+*/
+  static Pattern globPattern(String glob)
+  {
+    char ch;                      // one character from <glob>
+    int i;                        // index variable
+    StringBuffer regex;           // regular expression being built
+
+    regex = new StringBuffer();
+    for (i = 0; i < glob.length(); i ++)
+    {
+      ch = glob.charAt(i);
+      if (ch == '*')
+        regex.append(".*");
+      else if (ch == '?')
+        regex.append('.');
+      else if (Character.isLetterOrDigit(ch))
+        regex.append(ch);
+      else                        // quote everything else
+        regex.append('\\').append(ch);
+    }
+    return (Pattern.compile(regex.toString(), (Pattern.CASE_INSENSITIVE
+      | Pattern.UNICODE_CASE)));
+
+  } // end of globPattern() method
+
+
+/*
+  gzipRunner() method
+
+  This method runs in each compressing thread for a DumpFile5Gzip stream, and
+  compresses full blocks of output in the order they were written.  Each thread
+  has its own Deflater and checksum, which are used again for every block.
+*/
+  static void gzipRunner(DumpFile5Gzip gzip)
+  {
+    CRC32 checksum;               // checksum of uncompressed bytes
+    Deflater deflater;            // raw "deflate" compression without header
+    int index;                    // index of block in ring
+
+    checksum = new CRC32();
+    deflater = new Deflater(gzip.level, true);
+    while ((index = gzip.next()) >= 0)
+    {
+      gzip.compress(index, deflater, checksum);
+      gzip.done(index);           // block can be written now
+    }
+    deflater.end();               // free native memory right away
+
+  } // end of gzipRunner() method
+
+
+/*
+  includeName() method
+
+  Return <true> if a file name found in a folder or archive should be dumped.
+  The name must match one of the include patterns, if there are any, and must
+  not match any of the exclude patterns.
+*/
+  static boolean includeName(String name)
+  {
+    boolean include;              // true if file name is included
+    int i;                        // index variable
+
+    include = includeList.isEmpty(); // no includes means all files
+    for (i = 0; (include == false) && (i < includeList.size()); i ++)
+      include = includeList.get(i).matcher(name).matches();
+    for (i = 0; include && (i < excludeList.size()); i ++)
+      include = !excludeList.get(i).matcher(name).matches();
+    return (include);
+
+  } // end of includeName() method
+
+
+/*
+  listFolder() method
+
+  Add the files in a folder and its subfolders to a list, sorted by name, with
+  their output names relative to the folder given by the user.  File names
+  must match one of the include patterns, if there are any, and must not match
+  any of the exclude patterns.  Folders that are symbolic links are skipped,
+  so that we don't loop forever.
+*/
+  static void listFolder(
+    File folder,                  // folder to search
+    String prefix,                // output name of folder with separator
+    Vector<File> files,           // list of files found
+    Vector<String> names)         // output names for <files>
+  {
+    int i;                        // index variable
+    File[] list;                  // files and subfolders in <folder>
+    String name;                  // name of one file or subfolder
+
+    list = folder.listFiles();    // null if we can't read the folder
+    if (list == null)
+    {
+      putOutput("Can't read folder: " + folder.getPath());
+      return;
+    }
+    Arrays.sort(list);            // dump files in order by name
+    for (i = 0; i < list.length; i ++)
+    {
+      name = list[i].getName();
+      if (list[i].isDirectory())  // search subfolders, but not links
+      {
+        try
+        {
+          if (list[i].getCanonicalFile().equals(list[i].getAbsoluteFile()))
+            listFolder(list[i], (prefix + name + File.separator), files,
+              names);
+        }
+        catch (IOException ioe) { } // skip folders we can't resolve
+      }
+      else
+      {
+        if (includeName(name))
+        {
+          files.addElement(list[i]);
+          names.addElement(prefix + name);
+        }
+      }
+    }
+  } // end of listFolder() method
+
+
+/*
+  makeFormatter() method
+
+  Make the formatter for dump lines with the current options.  Console output
+  and output files are encoded in the default character set, the same as
+  System.out.println() would do, so an 8-bit character may need more than one
+  byte.  The graphical output uses ISO-8859-1 bytes, which putOutput() converts
+  back to characters, or UTF-8 bytes when the text column is decoded.
+*/
+  static void makeFormatter(boolean stream)
+  {
+    formatter = new DumpFile5Formatter(new DumpFile5Options(dumpWidth,
+      eightBitFlag, OFFSET_DIGITS, (stream ? System.getProperty(
+      "line.separator") : "\n"), (stream ? Charset.defaultCharset()
+      : Charset.forName((textDecoder != null) ? "UTF-8" : "ISO-8859-1")),
+      textDecoder));
+
+  } // end of makeFormatter() method
+
+
+/*
+  openFiles() method
+
+  Ask the user for a list of file names.  We accept all files without any
+  filtering for file types.  If the caller wants the dump in a file, then also
+  ask for an output file name.
+*/
+  public static void openFiles(boolean toFile)
+  {
+    /* Get options as chosen by the user. */
+
+    dumpWidth = Integer.parseInt((String) dumpWidthDialog.getSelectedItem());
+                                  // safe to parse since we supply the choices
+    eightBitFlag = eightBitCheckbox.isSelected();
+    try                           // blank means the whole file
+    {
+      rangeStart = parseOffset(rangeStartText.getText(), 0);
+      rangeLength = parseOffset(rangeLengthText.getText(), -1);
+      if (rangeLength < 0)
+        rangeLength = -1;         // any negative length means the whole file
+    }
+    catch (NumberFormatException nfe)
+    {
+      putOutput("Invalid start offset or length: " + nfe.getMessage());
+      return;
+    }
+
+    /* Ask the user for one or more file names. */
+
+    fileChooser.resetChoosableFileFilters(); // remove any existing filters
+    fileChooser.setDialogTitle("Open Files...");
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
+    fileChooser.setMultiSelectionEnabled(true); // allow more than one file
+    if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+      return;                     // user cancelled file selection dialog box
+    openFileList = fileChooser.getSelectedFiles();
+                                  // get list of files selected by user
+
+    /* Ask for an output file name, if wanted, and open that file now. */
+
+    if (toFile)
+    {
+      fileChooser.setDialogTitle("Dump to File...");
+      fileChooser.setMultiSelectionEnabled(false); // allow only one file
+      if (fileChooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+        return;                   // user cancelled file selection dialog box
+      try
+      {
+        outputName = fileChooser.getSelectedFile().getPath();
+        outputStream = openOutput(new FileOutputStream(outputName));
+      }
+      catch (IOException ioe)
+      {
+        outputName = null;        // no output file after all
+        putOutput("Can't write to output file: " + ioe.getMessage());
+        return;
+      }
+    }
+
+    /* We have a list of files.  Disable the "Open Files" button until we are
+    done, and enable a "Cancel" button in case our secondary thread runs for a
+    long time and the user panics. */
+
+    cancelButton.setEnabled(true); // enable button to cancel this processing
+    dumpButton.setEnabled(false); // suspend "Dump to File" until we are done
+    openButton.setEnabled(false); // suspend "Open Files" until we are done
+    pauseButton.setEnabled(true); // and to pause it
+    pauseButton.setText("Pause");
+    outputTabs.setSelectedIndex(0); // show dump output, not file view
+    publishOutput();              // finish any text from the previous dump
+    outputText.setText("");       // clear output text area
+    if (toFile)                   // tell user where the dump is going
+      outputText.append("Dumping to file: " + outputName + "\n");
+
+    openTask = new DumpFile5Task(openFileList); // dump thread adds up sizes
+    progressBar.setValue(0);
+    progressBar.setString(null);  // show percentage
+    progressTimer.start();
+
+    openFilesThread = new Thread(new DumpFile5User(), "openFilesRunner");
+    openFilesThread.setPriority(Thread.MIN_PRIORITY);
+                                  // use low priority for heavy-duty workers
+    openFilesThread.start();      // run separate thread to open files, report
+
+  } // end of openFiles() method
+
+
+/*
+  openFilesRunner() method
+
+  This method is called inside a separate thread by the runnable interface of
+  our "user" class to process the user's selected files in the context of the
+  "main" class.  By doing all the heavy-duty work in a separate thread, we
+  won't stall the thread that runs the graphical interface, and we allow the
+  user to cancel the work if it takes too long.
+*/
+  static void openFilesRunner()
+  {
+    String name;                  // output file name, if any
+    OutputStream stream;          // output file stream, if any
+
+    /* Dump the files and folders selected by the user.  Don't assume that
+    these names are all valid. */
+
+    openTask.run();               // same dump job as from the command line
+
+    /* Close the output file, if the dump went into a file.  Then graphical
+    output goes into the text area again. */
+
+    if (outputStream != null)     // were we dumping to a file?
+    {
+      name = outputName;          // remember name before closing
+      stream = outputStream;
+      outputStream = null;        // stop writing to the file
+      outputName = null;
+      try
+      {
+        stream.close();           // flushes any remaining output
+        putOutput((openTask.isCancelled() ? "Partial dump" : "Dump")
+          + " saved in: "
+          + name);
+      }
+      catch (IOException ioe)
+      {
+        putOutput("Can't write to output file: " + ioe.getMessage());
+      }
+    }
+
+    /* We are done.  The progress timer notices when this thread ends, and
+    enables the buttons again on the GUI thread. */
+
+  } // end of openFilesRunner() method
+
+
+/*
+  openOutput() method
+
+  Return a stream for dump output to a file or to standard output.  Plain text
+  is buffered and written in large blocks.  For the "-z" option, the text is
+  compressed with gzip in blocks, by one thread per processor.
+*/
+  static OutputStream openOutput(OutputStream stream)
+  {
+    if (gzipLevel > 0)            // compressed output?
+    {
+      return (new DumpFile5Gzip(stream, gzipLevel, gzipBlock, Math.min(
+        Runtime.getRuntime().availableProcessors(), MAX_THREADS)));
+    }
+    return (new BufferedOutputStream(stream, OUTPUT_SIZE));
+
+  } // end of openOutput() method
+
+
+/*
+  parseOffset() method
+
+  Parse a file offset or length given by the user.  We accept decimal numbers,
+  hexadecimal with a "0x" prefix, and a suffix of "k", "m", or "g" for
+  kilobytes, megabytes, or gigabytes (powers of 1024).  A minus sign is allowed
+  for offsets from the end of a file.  Blank text returns the caller's default
+  value.  Errors throw NumberFormatException with a short message.
+*/
+  static long parseOffset(String input, long blank)
+  {
+    boolean negative;             // true if there is a minus sign
+    long result;                  // converted number
+    int shift;                    // binary shift for size suffix
+    String text;                  // input text without prefix or suffix
+
+    text = input.trim().toLowerCase(); // easier if consistent case
+    if (text.length() == 0)       // nothing given?
+      return (blank);
+
+    negative = text.startsWith("-");
+    if (negative)
+      text = text.substring(1);
+
+    shift = 0;                    // assume no suffix
+    if (text.endsWith("k")) shift = 10;
+    else if (text.endsWith("m")) shift = 20;
+    else if (text.endsWith("g")) shift = 30;
+    if (shift > 0)
+      text = text.substring(0, (text.length() - 1));
+
+    if (text.startsWith("0x"))    // hexadecimal?
+      result = Long.parseLong(text.substring(2), 16);
+    else
+      result = Long.parseLong(text); // decimal
+    if ((result < 0) || (result > (Long.MAX_VALUE >> shift)))
+      throw new NumberFormatException("number too big: " + input);
+    result = result << shift;     // apply size suffix, if any
+    return (negative ? (- result) : result);
+
+  } // end of parseOffset() method
+
+
+/*
+  pipeRunner() method
+
+  This method runs in the thread that decompresses input for dumpStream().  We
+  skip to the start offset, then fill each free block completely before giving
+  it to the dumping thread, so that the dump sees large blocks even though
+  decompressing streams return a few bytes at a time.  Progress is counted in
+  compressed bytes, the same as the file sizes for the progress bar.
+
+  Standard input and followed files give each block after one read instead,
+  so that new bytes are dumped without waiting for more.  At the end of a
+  followed file, we wait for the file to grow, checking more and more slowly
+  while nothing changes, up to <followDelay> between checks.
+*/
+  static void pipeRunner(DumpFile5Pipe pipe)
+  {
+    ByteBuffer block;             // block that we are filling
+    int count;                    // number of bytes from one read
+    byte[] discard;               // skipped bytes, if input can't skip
+    long done;                    // compressed bytes counted for progress
+    long offset;                  // stream offset of next byte to read
+    long poll;                    // milliseconds to wait for file to grow
+    long started;                 // time in nanoseconds before one read
+    long position;                // compressed bytes read so far
+    long skipped;                 // number of bytes from one skip
+
+    done = 0;
+    poll = POLL_FIRST;            // check soon after the file stops growing
+    try
+    {
+      discard = null;             // try to skip without reading first
+      offset = 0;                 // skip to the first byte to dump
+      while (offset < pipe.startOffset)
+      {
+        if (discard == null)
+        {
+          try { skipped = pipe.input.skip(pipe.startOffset - offset); }
+          catch (IOException ioe) { skipped = 0; } // "Illegal seek" on pipe
+          if (skipped <= 0)       // can't skip, so read and throw away
+          {
+            discard = new byte[BUFFER_SIZE];
+            continue;
+          }
+        }
+        else if ((skipped = pipe.input.read(discard, 0, (int) Math.min(
+          discard.length, (pipe.startOffset - offset)))) <= 0)
+        {
+          break;                  // end of stream before start offset
+        }
+        offset += skipped;
+      }
+      while ((block = pipe.take()) != null) // wait for a free block
+      {
+        block.clear();            // fill block from the beginning
+        block.limit((int) Math.min(block.capacity(), (pipe.endOffset
+          - offset)));            // but not past the end of the range
+        while (block.hasRemaining())
+        {
+          started = System.nanoTime(); // reading includes decompressing
+          count = pipe.input.read(block.array(), block.position(),
+            block.remaining());
+          stats.addNanos(DumpFile5Stats.READ, (System.nanoTime() - started));
+          if (count > 0)          // got some bytes?
+          {
+            block.position(block.position() + count);
+            poll = POLL_FIRST;    // file is growing, so check often
+            if (pipe.mode != DumpFile5Pipe.FILL)
+              break;              // don't wait for a full block
+          }
+          else if ((pipe.mode != DumpFile5Pipe.FOLLOW) || pipe.stopped
+            || (block.position() > 0))
+          {
+            break;                // end of input, or give what we have
+          }
+          else                    // wait for a followed file to grow
+          {
+            if (pipe.channel.position() > pipe.channel.size())
+              throw new IOException("file got shorter while following");
+            pipe.pause(poll);
+            poll = Math.min((2 * poll), Math.max(POLL_FIRST, followDelay));
+          }
+        }
+        block.flip();             // get ready to dump what was read
+        offset += block.limit();
+        if (pipe.channel != null) // count compressed bytes for progress
+        {
+          position = pipe.channel.position();
+          addProgress(position - done);
+          done = position;
+        }
+        if (block.limit() == 0)   // end of stream or end of range?
+          break;
+        pipe.give();              // dumping thread can have this block
+      }
+    }
+    catch (IOException ioe)
+    {
+      pipe.error = ioe.getMessage();
+      if (pipe.error == null)     // some zip exceptions have no message
+        pipe.error = ioe.toString();
+    }
+    pipe.finish();                // no more blocks are coming
+
+  } // end of pipeRunner() method
+
+
+/*
+  publishOutput() method
+
+  Move all text waiting in the publish buffer into the output text area, and
+  scroll once if any of that text asked for scrolling.  This is only called on
+  the GUI thread, usually by <progressTimer> while a dump is running, so the
+  text area is never changed by another thread, and the dump thread never
+  waits for each line to be shown.  A dump thread waiting for room in the
+  buffer is woken up.
+*/
+  static void publishOutput()
+  {
+    boolean scroll;               // true if we scroll after appending text
+    String text;                  // text taken from the buffer
+
+    synchronized (publishLock)
+    {
+      if (publishBuffer.length() == 0) // nothing to do?
+        return;
+      text = publishBuffer.toString();
+      publishBuffer.setLength(0); // buffer is now empty
+      scroll = publishScroll;
+      publishScroll = false;
+      publishLock.notifyAll();    // wake up dump thread if it's waiting
+    }
+    outputText.append(text);      // one document update for the whole batch
+    if (scroll)                   // does any caller want us to scroll?
+      outputText.select(999999999, 999999999); // force scroll to end of text
+
+  } // end of publishOutput() method
+
+
+/*
+  publishText() method
+
+  Add text for the output text area.  On the GUI thread, the text is appended
+  immediately, after anything already waiting.  Other threads put the text in
+  the publish buffer, which <progressTimer> moves into the text area at most
+  ten times per second, so many lines are shown with one document update.  If
+  the GUI falls behind and the buffer gets too big, then the calling thread
+  waits until the buffer has been emptied.
+*/
+  static void publishText(
+    String text,                  // text to add, including newlines
+    boolean scroll)               // true if we scroll after adding text
+  {
+    if (SwingUtilities.isEventDispatchThread()) // are we the GUI thread?
+    {
+      publishOutput();            // earlier text from other threads goes first
+      outputText.append(text);
+      if (scroll)                 // does caller want us to scroll?
+        outputText.select(999999999, 999999999); // force scroll to end of text
+      return;
+    }
+
+    synchronized (publishLock)
+    {
+      while (publishBuffer.length() > PUBLISH_LIMIT) // GUI is behind?
+      {
+        try { publishLock.wait(); } catch (InterruptedException ie) { }
+      }
+      publishBuffer.append(text);
+      publishScroll = publishScroll || scroll;
+    }
+  } // end of publishText() method
+
+
+/*
+  putDigests() method
+
+  Print the checksums and digests of a file after its summary, one per line,
+  if there are any.
+*/
+  static void putDigests(DumpFile5Lines lines, DumpFile5Digest digest)
+  {
+    int i;                        // index variable
+    String[] results;             // one line for each algorithm
+
+    if (digest == null)           // nothing asked for
+      return;
+    results = digest.results();
+    for (i = 0; i < results.length; i ++)
+      putOutput(lines, results[i]);
+
+  } // end of putDigests() method
+
+
+/*
+  putError() method
+
+  Report something that isn't part of the dump output: on standard error for
+  the console application, or in the output text area for the GUI.
+*/
+  static void putError(String text)
+  {
+    if (consoleFlag)              // console application?
+      System.err.println(text);
+    else
+      putOutput(text);            // graphical output goes into text area
+  }
+
+
+/*
+  putLines() method
+
+  Print all formatted lines in an output buffer, and empty the buffer.  The
+  time spent writing, and the counts for the statistics, are taken here.
+*/
+  static void putLines(DumpFile5Lines lines)
+  {
+    int phase;                    // what we were doing before writing
+
+    if (lines.outputUsed > 0)     // don't bother if there is nothing
+    {
+      phase = lines.setPhase(DumpFile5Stats.WRITE);
+      putOutput(lines, lines.output, lines.outputUsed);
+      lines.setPhase(phase);
+    }
+    lines.outputUsed = 0;         // output buffer is now empty
+    stats.addLines(lines);        // often enough for live statistics
+
+  } // end of putLines() method
+
+
+/*
+  putOutput() method
+
+  Append a complete line of text to the end of the output text area.  We add a
+  newline character at the end of the line, not the caller.  By forcing all
+  output to go through this same method, one complete line at a time, the
+  generated output is cleaner and can be redirected.  Console output, and
+  output files, go into a large buffer that is flushed at the end of each file.
+
+  Formatted dump lines come here as blocks of bytes that already have newlines
+  at the end of each line.  Console bytes are already encoded for standard
+  output, and graphical bytes are ISO-8859-1 characters, or UTF-8 for decoded
+  multi-byte text.
+
+  The output text area is forced to scroll to the end, after the text line is
+  written, by selecting character positions that are much too large (and which
+  are allowed by the definition of the JTextComponent.select() method).  This
+  is easier and faster than manipulating the scroll bars directly.
+*/
+  static void putOutput(String text)
+  {
+    putOutput(text, true);        // default action is to scroll output lines
+  }
+
+  static void putOutput(String text, boolean scroll)
+  {
+    if (outputStream != null)     // console output or output file
+    {
+      try { outputStream.write((text + System.getProperty("line.separator"))
+        .getBytes()); }
+      catch (IOException ioe) { } // same as println(), which ignores errors
+    }
+    else
+      publishText((text + "\n"), scroll); // graphical output goes to text area
+  }
+
+  static void putOutput(byte[] buffer, int length)
+  {
+    char[] chars;                 // graphical output as characters
+    int i;                        // index variable
+
+    if (outputStream != null)     // console output or output file
+    {
+      try { outputStream.write(buffer, 0, length); }
+      catch (IOException ioe) { } // same as println(), which ignores errors
+    }
+    else if (formatter.decoder != null) // decoded text is in UTF-8
+      publishText(new String(buffer, 0, length, formatter.options.charset),
+        false);
+    else                          // graphical output goes into text area
+    {
+      chars = new char[length];   // convert ISO-8859-1 bytes to characters
+      for (i = 0; i < length; i ++)
+        chars[i] = (char) (((int) buffer[i]) & 0x000000FF);
+      publishText(new String(chars), false); // no scrolling for dump lines
+    }
+  }
+
+  static void putOutput(DumpFile5Lines lines, String text)
+  {
+    byte[] bytes;                 // text in default character set
+
+    putLines(lines);              // formatted dump lines go first
+    if (lines.stream == null)     // usual output?
+      putOutput(text);
+    else
+    {
+      bytes = (text + System.getProperty("line.separator")).getBytes();
+      putOutput(lines, bytes, bytes.length);
+    }
+  }
+
+  static void putOutput(DumpFile5Lines lines, byte[] buffer, int length)
+  {
+    if (lines.stream == null)     // usual output?
+    {
+      putOutput(buffer, length);  // console, output file, or text area
+      return;
+    }
+    try { lines.stream.write(buffer, 0, length); } // file's own output
+    catch (IOException ioe) { }   // same as println(), which ignores errors
+    if ((lines.batch >= 0)        // waiting in memory for earlier files?
+      && (((ByteArrayOutputStream) lines.stream).size() > BATCH_LIMIT))
+    {
+      batchDirect(lines);         // too big, so print when it's our turn
+    }
+  }
+
+
+/*
+  putStats() method
+
+  Print statistics for the files that were just dumped, for the "--stats"
+  option: how many bytes, lines, and duplicate lines, the speed, the time that
+  all threads spent reading, formatting, writing, and waiting, and how much
+  memory is in direct and mapped buffers.  Reading that takes more time than
+  formatting means that the dump is limited by the disk, not the processor.
+*/
+  static void putStats(long elapsed)
+  {
+    int i;                        // index variable
+    BufferPoolMXBean pool;        // one kind of buffer, direct or mapped
+    java.util.List<BufferPoolMXBean> pools; // all kinds of buffers
+    String text;                  // one line of statistics
+
+    putError("Statistics: " + formatComma(stats.bytesRead)
+      + " bytes read, " + formatComma(stats.linesOut)
+      + " lines printed, " + formatComma(stats.linesSkipped)
+      + " identical lines skipped.");
+    putError("  " + formatComma(elapsed / 1000.0) + " seconds, "
+      + formatComma(Math.round(stats.bytesRead * 10000.0 / elapsed
+      / 0x100000) / 10.0) + " MB per second, "
+      + formatComma(Math.round(stats.linesOut * 1000.0 / elapsed))
+      + " lines per second.");
+    text = "  Thread time in seconds:";
+    for (i = 0; i < DumpFile5Stats.PHASES.length; i ++)
+    {
+      text += ((i > 0) ? ", " : " ") + DumpFile5Stats.PHASES[i] + " "
+        + formatComma(stats.nanos[i] / 1000000 / 1000.0);
+    }
+    putError(text + ".");
+
+    pools = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class);
+    text = "  Buffer pools:";
+    for (i = 0; i < pools.size(); i ++)
+    {
+      pool = pools.get(i);
+      text += ((i > 0) ? ", " : " ") + pool.getName() + " "
+        + formatComma(pool.getCount()) + " buffers with "
+        + formatComma(pool.getMemoryUsed()) + " bytes";
+    }
+    putError(text + ".");
+
+  } // end of putStats() method
+
+
+/*
+  reverseFile() method
+
+  Rebuild a binary file from dump output, for the "-r" option, which is the
+  reverse of dumping.  Dump lines may have any number of bytes per line, and
+  each line's bytes are written at the line's file offset, so a dump of only
+  part of a file rebuilds that part, and hexadecimal digits edited by hand are
+  written as edited.  The text column is ignored.  Ellipses for identical
+  lines are expanded by repeating the line before them, up to the end offset
+  that they give, or for the plain "   ..." of older versions of this program,
+  up to the offset of the next dump line.  Ellipses that can't be expanded are
+  an error, so that the rebuilt file never has a silent hole.  Other lines,
+  such as headers and summaries, are skipped.  Only the first file in the dump
+  output is rebuilt.
+
+  The dump is read in large blocks, and lines are parsed directly from the
+  bytes with a lookup table for hexadecimal digits, without creating strings
+  or other objects for each line.  Rebuilt bytes are collected in a large
+  buffer, and written with positional channel writes.
+*/
+  static void reverseFile(File dumpFile, File binaryFile)
+  {
+    byte[] data;                  // same as <inputBlock>, for faster access
+    long elapsed;                 // milliseconds for rebuilding file
+    int end;                      // index of end of line in <data>
+    boolean eof;                  // true at the end of the dump output
+    FileInputStream in;           // dump output to read
+    ByteBuffer inputBlock;        // block of dump output
+    int line;                     // index of start of line in <data>
+    FileOutputStream out;         // binary file to write
+    long start;                   // starting time in milliseconds
+    byte[] values;                // value of each hex digit, or -1
+
+    values = new byte[256];       // lookup table for hexadecimal digits
+    Arrays.fill(values, (byte) -1);
+    for (end = 0; end < 16; end ++)
+    {
+      values[HEX_DIGITS[end]] = (byte) end;
+      values[Character.toLowerCase((char) HEX_DIGITS[end])] = (byte) end;
+    }
+
+    putOutput("Rebuilding file: " + binaryFile.getPath());
+    start = System.currentTimeMillis();
+    inputBlock = ByteBuffer.allocate(REVERSE_SIZE);
+    data = inputBlock.array();
+    reverseBlock = ByteBuffer.allocate(REVERSE_SIZE);
+    reverseFiles = 0;             // no dumped files seen yet
+    reverseCount = reverseStart = 0; // nothing rebuilt yet
+    reverseLast = new byte[MAX_WIDTH];
+    reverseLength = 0;            // no previous dump line
+    reverseNext = 0;
+    reverseOpen = false;          // no ellipses waiting for next line
+    try
+    {
+      in = new FileInputStream(dumpFile);
+      out = new FileOutputStream(binaryFile); // replaces any existing file
+      reverseChannel = out.getChannel();
+      try
+      {
+        /* Read blocks of dump output, and parse each complete line.  A line
+        that doesn't end in this block is moved to the front for the next
+        block, and the last line may not have a newline at all. */
+
+        eof = false;
+        while ((eof == false) && (reverseFiles < 2))
+        {
+          eof = (in.getChannel().read(inputBlock) < 0);
+          inputBlock.flip();      // get ready to parse what was read
+          line = 0;
+          while (reverseFiles < 2)
+          {
+            end = line;           // find the end of the line
+            while ((end < inputBlock.limit()) && (data[end] != '\n'))
+              end ++;
+            if (end >= inputBlock.limit()) // no newline in this block?
+            {
+              if ((eof == false) && ((line > 0) || (inputBlock.limit()
+                < inputBlock.capacity())))
+              {
+                break;            // read more, maybe after moving the line
+              }
+              if (line < end)     // last line, or much too long for a dump
+                reverseLine(data, line, end, values);
+              line = end;
+              break;
+            }
+            reverseLine(data, line, end, values);
+            line = end + 1;       // next line starts after the newline
+          }
+          inputBlock.position(line); // move any partial line to the front
+          inputBlock.compact();
+        }
+        if (reverseOpen)          // plain ellipses at the end of the dump?
+          throw new IOException("can't expand identical lines, no line"
+            + " after them");
+        reverseFlush();           // write any rebuilt bytes still waiting
+      }
+      finally
+      {
+        in.close();
+        out.close();
+      }
+    }
+    catch (IOException ioe)
+    {
+      putOutput("Can't rebuild file: " + ioe.getMessage());
+      reverseBlock = null;        // release memory for garbage collector
+      reverseChannel = null;
+      return;
+    }
+    reverseBlock = null;          // release memory for garbage collector
+    reverseChannel = null;
+
+    elapsed = Math.max(1, (System.currentTimeMillis() - start));
+    putOutput("Rebuilt " + formatComma(reverseCount) + " bytes in "
+      + formatComma(elapsed / 1000.0) + " seconds ("
+      + formatComma(Math.round(reverseCount * 10000.0 / elapsed
+      / 0x100000) / 10.0) + " MB per second).");
+    if (reverseFiles > 1)
+      putOutput("Only the first file in the dump output was rebuilt.");
+    try { outputStream.flush(); } catch (IOException ioe) { }
+
+  } // end of reverseFile() method
+
+
+/*
+  reverseFlush() method
+
+  Write the rebuilt bytes waiting in <reverseBlock> at their file offset, and
+  empty the buffer.
+*/
+  static void reverseFlush() throws IOException
+  {
+    long offset;                  // where the next bytes are written
+
+    reverseBlock.flip();          // write what we have collected
+    offset = reverseStart;
+    while (reverseBlock.hasRemaining())
+      offset += reverseChannel.write(reverseBlock, offset);
+    reverseBlock.clear();         // buffer is empty again
+    reverseStart = offset;        // usual place for the next bytes
+
+  } // end of reverseFlush() method
+
+
+/*
+  reverseLine() method
+
+  Parse one line of dump output between two indexes in a buffer, and rebuild
+  the bytes that it describes.  Dump lines have a hexadecimal file offset, two
+  spaces, and pairs of hexadecimal digits followed by spaces.  Lines for
+  identical bytes have ellipses, a decimal byte count, and the hexadecimal
+  offset of the last identical byte.  Older versions of this program printed
+  only the ellipses, and those identical bytes end where the next dump line
+  starts.  A carriage return before the newline is ignored, and so is anything
+  else that doesn't look like one of these.
+*/
+  static void reverseLine(
+    byte[] data,                  // buffer with dump output
+    int start,                    // index of first byte in line
+    int end,                      // index after last byte in line
+    byte[] values)                // value of each hex digit, or -1
+    throws IOException
+  {
+    long count;                   // number of identical bytes
+    int digits;                   // number of hex digits in file offset
+    int i;                        // index variable
+    int length;                   // number of bytes in dump line
+    long next;                    // file offset of repeated line
+    long offset;                  // file offset from dump line
+
+    if ((end > start) && (data[end - 1] == '\r'))
+      end --;                     // Windows line separator
+    i = start;
+    offset = 0;
+    for (digits = 0; (i < end) && (values[data[i] & 0xFF] >= 0)
+      && (digits <= MAX_DIGITS); digits ++)
+    {
+      offset = (offset << 4) | values[data[i ++] & 0xFF];
+    }
+
+    if ((digits >= OFFSET_DIGITS) && (digits <= MAX_DIGITS) && ((i + 1)
+      < end) && (data[i] == ' ') && (data[i + 1] == ' '))
+    {
+      /* Dump line: take pairs of hex digits until something else, which is
+      padding for a short line or the space before the text column. */
+
+      if (reverseOpen)            // plain ellipses before this line?
+      {
+        if (offset <= reverseNext)
+          throw new IOException("can't expand identical lines, next line"
+            + " doesn't come after them");
+        for (next = reverseNext; next < offset; next += reverseLength)
+          reversePut(next, reverseLast, (int) Math.min(reverseLength,
+            (offset - next)));    // before this line replaces <reverseLast>
+        reverseOpen = false;
+      }
+
+      i += 2;                     // skip two spaces after file offset
+      length = 0;
+      while ((length < MAX_WIDTH) && ((i + 1) < end)
+        && (values[data[i] & 0xFF] >= 0) && (values[data[i + 1] & 0xFF] >= 0)
+        && (((i + 2) == end) || (data[i + 2] == ' ')))
+      {
+        reverseLast[length ++] = (byte) ((values[data[i] & 0xFF] << 4)
+          | values[data[i + 1] & 0xFF]);
+        i += 3;                   // two digits and a space
+      }
+      if (length > 0)             // last line of empty file has no bytes
+      {
+        reversePut(offset, reverseLast, length);
+        reverseLength = length;
+        reverseNext = offset + length;
+      }
+    }
+    else if (((end - start) >= 6) && (data[start] == ' ')
+      && (data[start + 1] == ' ') && (data[start + 2] == ' ')
+      && (data[start + 3] == '.') && (data[start + 4] == '.')
+      && (data[start + 5] == '.'))
+    {
+      /* Identical lines: get the byte count and the last offset, and repeat
+      the previous line from the first identical byte.  Plain ellipses are
+      expanded when we get the offset of the next dump line. */
+
+      if ((reverseLength == 0) || reverseOpen)
+        throw new IOException("can't expand identical lines, no line"
+          + " before them");
+      i = start + 6;              // after the ellipses
+      while ((i < end) && (data[i] == ' '))
+        i ++;
+      if (i == end)               // plain ellipses, from older versions
+      {
+        reverseOpen = true;
+        return;
+      }
+      count = 0;
+      while ((i < end) && (data[i] >= '0') && (data[i] <= '9'))
+        count = (count * 10) + (data[i ++] - '0');
+      i += DumpFile5Formatter.RUN_MIDDLE.length; // skip text before offset
+      offset = 0;
+      for (digits = 0; (i < end) && (values[data[i] & 0xFF] >= 0)
+        && (digits < MAX_DIGITS); digits ++)
+      {
+        offset = (offset << 4) | values[data[i ++] & 0xFF];
+      }
+      if ((count <= 0) || (digits < OFFSET_DIGITS))
+        throw new IOException("can't expand identical lines, no byte"
+          + " count or end offset");
+      for (offset = offset - count + 1; count > 0; count -= reverseLength)
+      {
+        reversePut(offset, reverseLast, (int) Math.min(reverseLength,
+          count));
+        offset += reverseLength;
+      }
+    }
+    else if (((end - start) > 14) && (data[start] == 'D')
+      && (data[start + 7] == ' ') && (data[start + 12] == ':'))
+    {
+      if (reverseOpen)            // plain ellipses at the end of a file?
+        throw new IOException("can't expand identical lines, no line"
+          + " after them");
+      reverseFiles ++;            // "Dumping file:" starts another file
+    }
+  } // end of reverseLine() method
+
+
+/*
+  reversePut() method
+
+  Put rebuilt bytes at a file offset.  Bytes that continue from the previous
+  bytes are collected in <reverseBlock>; anything else writes the buffer and
+  starts collecting again at the new offset, which may leave a gap.
+*/
+  static void reversePut(
+    long offset,                  // file offset for first byte
+    byte[] bytes,                 // rebuilt bytes
+    int length)                   // number of bytes
+    throws IOException
+  {
+    if ((offset != (reverseStart + reverseBlock.position()))
+      || (reverseBlock.remaining() < length))
+    {
+      reverseFlush();             // write what we have, if anything
+      reverseStart = offset;      // and start again here
+    }
+    reverseBlock.put(bytes, 0, length);
+    reverseCount += length;
+
+  } // end of reversePut() method
+
+
+/*
+  saveOutputText() method
+
+  Ask the user for an output file name, create or replace that file, and copy
+  the contents of our output text area to that file.  The output file will be
+  in the default character set for the system, so if there are special Unicode
+  characters in the displayed text (Arabic, Chinese, Eastern European, etc),
+  then you are better off copying and pasting the output text directly into a
+  Unicode-aware application like Microsoft Word.
+*/
+  static void saveOutputText()
+  {
+    Writer output;                // output file stream
+
+    /* Ask the user for an output file name. */
+
+    fileChooser.resetChoosableFileFilters(); // remove any existing filters
+    fileChooser.setDialogTitle("Save Output As...");
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+    fileChooser.setMultiSelectionEnabled(false); // allow only one file
+    if (fileChooser.showSaveDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+      return;                     // user cancelled file selection dialog box
+
+    /* Write lines to output file. */
+
+    publishOutput();              // include text still waiting to be shown
+    try                           // catch file I/O errors
+    {
+      output = new BufferedWriter(new FileWriter(fileChooser
+        .getSelectedFile()), OUTPUT_SIZE); // try to open output file
+      outputText.write(output);   // couldn't be much easier for writing!
+      output.close();             // try to close output file
+    }
+    catch (IOException ioe)
+    {
+      putOutput("Can't write to output file: " + ioe.getMessage());
+    }
+  } // end of saveOutputText() method
+
+
+/*
+  searchFile() method
+
+  Search one file for the pattern from the "-f" option, instead of dumping the
+  file, and print the offset of each match.  The file is searched in regions,
+  each with enough extra bytes at the end for a match that starts in the
+  region.  Large files are searched by parallel threads, and the matches are
+  printed in order as each region is finished.
+*/
+  static void searchFile(File givenFile, DumpFile5Job job)
+  {
+    ByteBuffer block;             // input bytes for one region, if not mapped
+    FileChannel channel;          // NIO channel for <in>
+    long count;                   // number of regions in file
+    long endOffset;               // file offset after last byte to search
+    long fileSize;                // size of input file when opened
+    DumpFile5Found found;         // matches found in one region
+    long i;                       // index variable
+    FileInputStream in;           // input file stream
+    int j;                        // index variable
+    DumpFile5Lines lines;         // state and output for formatting lines
+    long matches;                 // number of matches printed
+    long printed;                 // file offset after last context line
+    int slot;                     // index of region in <searchFound>
+    long startOffset;             // file offset of first byte to search
+    boolean stopped;              // true if we found enough matches
+    Thread[] threads;             // our parallel search threads, or null
+
+    lines = job.lines;
+    putOutput(lines, "");         // blank line
+    if (givenFile.isFile() == false) // only if a file, not a folder or unknown
+    {
+      putOutput(lines, ("Sorry, " + givenFile.getPath() + " is not a file."));
+      return;
+    }
+
+    /* Find the range of bytes to search, in the same way as for dumping. */
+
+    fileSize = givenFile.length(); // may be zero for special files
+    startOffset = (rangeStart < 0) ? Math.max(0, (fileSize + rangeStart))
+      : Math.min(rangeStart, fileSize);
+    endOffset = ((rangeLength < 0) || (rangeLength > (fileSize
+      - startOffset))) ? fileSize : (startOffset + rangeLength);
+    lines.digits = OFFSET_DIGITS; // usual number of digits
+    while ((lines.digits < MAX_DIGITS)
+      && ((endOffset >>> (4 * lines.digits)) != 0))
+    {
+      lines.digits ++;            // need one more digit
+    }
+    count = (endOffset - startOffset + SEARCH_SIZE - 1) / SEARCH_SIZE;
+
+    makeFormatter(outputStream != null); // for context lines, if any
+
+    putOutput(lines, ("Searching file: " + givenFile.getPath()));
+    matches = 0;                  // no matches yet
+    printed = startOffset;        // no context lines printed yet
+    stopped = false;
+    threads = null;               // no parallel threads yet
+    try
+    {
+      in = new FileInputStream(givenFile); // open file for reading bytes
+      channel = in.getChannel();  // NIO channel for positional reads
+      block = null;               // no input buffer yet
+
+      /* Start parallel threads for a large file, unless we are already one
+      of several files being searched at the same time. */
+
+      if ((threadCount > 0) && (job.number < 0) && (count > 1))
+      {
+        searchChannel = channel;  // the threads share the file channel
+        searchCount = count;
+        searchEnd = endOffset;
+        searchError = null;       // no errors found yet
+        searchFound = new DumpFile5Found[2 * threadCount]; // allowed ahead
+        searchNext = searchPrinted = 0; // no regions searched or printed yet
+        searchStart = startOffset;
+        searchStop = false;
+        threads = new Thread[threadCount];
+        for (i = 0; i < threadCount; i ++)
+        {
+          threads[(int) i] = new Thread(new DumpFile5Worker(
+            DumpFile5Worker.SEARCH), ("searchRegion" + i));
+          threads[(int) i].start();
+        }
+      }
+      else                        // we search each region ourselves
+      {
+        block = ByteBuffer.allocate((int) Math.min((SEARCH_SIZE
+          + searchPattern.length - 1), (endOffset - startOffset)));
+      }
+
+      /* Print the matches from each region in order. */
+
+      for (i = 0; (stopped == false) && taskCheck() && (i < count); i ++)
+      {
+        if (threads == null)      // search this region now?
+          found = searchRegion(channel, i, startOffset, endOffset, block);
+        else                      // wait for a thread to search the region
+        {
+          slot = (int) (i % searchFound.length);
+          synchronized (searchLock)
+          {
+            while ((searchError == null) && (cancelFlag == false)
+              && (searchFound[slot] == null))
+            {
+              try { searchLock.wait(); } catch (InterruptedException ie) { }
+            }
+            found = searchFound[slot]; // null if error or cancelled
+            searchFound[slot] = null; // free this slot for another region
+            searchPrinted = i + 1; // allow threads to search more regions
+            searchLock.notifyAll();
+          }
+          if (found == null) break; // stop if error or user hit panic button
+        }
+        for (j = 0; j < found.count; j ++)
+        {
+          if ((limitCount > 0) && (matches >= limitCount))
+          {
+            stopped = true;       // we have printed enough matches
+            break;
+          }
+          matches ++;
+          printed = searchMatch(lines, channel, (startOffset + (i
+            * SEARCH_SIZE) + found.offsets[j]), startOffset, endOffset,
+            printed, job.lineBlock);
+        }
+      }
+      if (threads != null)        // wait for all threads to finish
+      {
+        synchronized (searchLock)
+        {
+          searchStop = true;      // in case we stopped early
+          searchLock.notifyAll();
+        }
+        for (i = 0; i < threads.length; i ++)
+        {
+          try { threads[(int) i].join(); } catch (InterruptedException ie) { }
+        }
+        if (searchError != null)
+          throw new IOException(searchError);
+      }
+      in.close();                 // try to close input file
+    }
+    catch (IOException ioe)
+    {
+      putOutput(lines, ("Can't read from input file: " + ioe.getMessage()));
+      stopped = true;             // don't print a summary for the whole file
+    }
+    searchChannel = null;         // release memory for garbage collector
+    searchFound = null;
+
+    if (stopped && (limitCount > 0) && (matches >= limitCount))
+      putOutput(lines, ("Stopped after " + formatComma(matches)
+        + " matches."));
+    else if ((stopped == false) && (cancelFlag == false))
+      putOutput(lines, ("Found " + formatComma(matches)
+        + " matches in " + formatComma(endOffset - startOffset)
+        + " bytes."));
+    putLines(lines);              // print anything left in output buffer
+
+    if ((lines.stream == null) && (outputStream != null))
+    {
+      try { outputStream.flush(); } // stream output is buffered, so flush now
+      catch (IOException ioe) { }
+    }
+  } // end of searchFile() method
+
+
+/*
+  searchMatch() method
+
+  Print one match from searching a file: the file offset, and dump lines around
+  the match if the "-k" option asks for them.  Lines start at the same offsets
+  as when dumping the file, and lines already printed for an earlier match are
+  not printed again.  Return the file offset after the last line printed.
+*/
+  static long searchMatch(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    FileChannel channel,          // input file
+    long offset,                  // file offset of match
+    long startOffset,             // file offset of first byte searched
+    long endOffset,               // file offset after last byte searched
+    long printed,                 // file offset after last line printed
+    ByteBuffer block)             // buffer for one line of input bytes
+    throws IOException
+  {
+    long first;                   // file offset of next line to print
+    long last;                    // file offset after last line to print
+    int length;                   // number of bytes in line
+    String text;                  // hexadecimal file offset
+
+    text = Long.toHexString(offset).toUpperCase();
+    while (text.length() < lines.digits) // same digits as dump lines
+      text = "0" + text;
+    putOutput(lines, ("Match at " + text));
+    if (searchContext < 0)        // only the offset was wanted?
+      return (printed);
+
+    first = offset - ((offset - startOffset) % dumpWidth) - (searchContext
+      * dumpWidth);               // start of line with match, then back up
+    first = Math.max(first, Math.max(startOffset, printed));
+    last = offset + searchPattern.length - 1; // last byte in match
+    last = Math.min(endOffset, (last - ((last - startOffset) % dumpWidth)
+      + ((searchContext + 1) * dumpWidth)));
+    for (; first < last; first += dumpWidth)
+    {
+      length = (int) Math.min(dumpWidth, (last - first));
+      block.clear();              // start at index zero
+      block.limit(length);
+      while (block.hasRemaining())
+      {
+        if (channel.read(block, (first + block.position())) < 0)
+          throw new EOFException("file is shorter than when opened");
+      }
+      formatter.formatLine(lines, block, 0, first, length);
+      if (lines.outputUsed > lines.outputLimit) // output buffer nearly full?
+        putLines(lines);          // print what we have so far
+    }
+    return (Math.max(printed, last));
+
+  } // end of searchMatch() method
+
+
+/*
+  searchRegion() method
+
+  Search one region of a file for the pattern from the "-f" option, and return
+  the matches.  A region has up to <SEARCH_SIZE> bytes where a match may start,
+  plus enough bytes after that for the match to end.  Large regions are mapped
+  if mapping is allowed, and smaller regions are read into the caller's buffer.
+*/
+  static DumpFile5Found searchRegion(
+    FileChannel channel,          // input file
+    long number,                  // region number, starting from zero
+    long startOffset,             // file offset of first byte to search
+    long endOffset,               // file offset after last byte to search
+    ByteBuffer buffer)            // buffer for reading, if not mapped
+    throws IOException
+  {
+    ByteBuffer block;             // input bytes for region
+    DumpFile5Found found;         // matches found in region
+    int i;                        // index variable
+    int length;                   // number of bytes where matches may start
+    long offset;                  // file offset of region
+    int size;                     // number of bytes in region, with extra
+
+    found = new DumpFile5Found(number);
+    offset = startOffset + (number * SEARCH_SIZE);
+    length = (int) Math.min(SEARCH_SIZE, (endOffset - offset));
+    size = (int) Math.min((length + searchPattern.length - 1), (endOffset
+      - offset));
+    if ((mapSize > 0) && (size >= MAP_MINIMUM))
+      block = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+    else
+    {
+      block = buffer;
+      block.clear();              // start at index zero
+      block.limit(size);
+      while (block.hasRemaining())
+      {
+        if (channel.read(block, (offset + block.position())) < 0)
+          throw new EOFException("file is shorter than when opened");
+      }
+    }
+
+    i = 0;                        // start searching at beginning of region
+    while (((i = searchPattern.find(block, i, size)) >= 0) && (i < length))
+    {
+      found.add(i);
+      if ((limitCount > 0) && (found.count >= limitCount))
+        break;                    // no need for more than will be printed
+      i ++;                       // matches may overlap
+    }
+    return (found);
+
+  } // end of searchRegion() method
+
+
+/*
+  searchRunner() method
+
+  This method runs in each of the threads that search one large file.  We take
+  the next region number, search that region, and give the matches to the
+  printing thread.  Threads don't get too far ahead of the printing.
+*/
+  static void searchRunner()
+  {
+    ByteBuffer buffer;            // input buffer for this thread
+    DumpFile5Found found;         // matches found in one region
+    long number;                  // region number that we are searching
+
+    buffer = ByteBuffer.allocate(SEARCH_SIZE + DumpFile5Pattern.MAX_LENGTH);
+    try
+    {
+      while (true)
+      {
+        taskCheck();              // wait here if the dump job is paused
+        synchronized (searchLock)
+        {
+          while ((searchError == null) && (cancelFlag == false)
+            && (searchStop == false) && (searchNext < searchCount)
+            && (searchNext >= (searchPrinted + searchFound.length)))
+          {
+            searchLock.wait();    // too far ahead of printing, so wait
+          }
+          if ((searchError != null) || cancelFlag || searchStop
+            || (searchNext >= searchCount))
+          {
+            break;                // nothing more for this thread to do
+          }
+          number = searchNext ++; // take the next region number
+        }
+
+        found = searchRegion(searchChannel, number, searchStart, searchEnd,
+          buffer);
+
+        synchronized (searchLock)
+        {
+          searchFound[(int) (number % searchFound.length)] = found;
+          searchLock.notifyAll(); // tell printing thread that region is ready
+        }
+      }
+    }
+    catch (InterruptedException ie)
+    {
+      /* Not expected: nobody interrupts our parallel threads. */
+    }
+    catch (IOException ioe)
+    {
+      synchronized (searchLock)
+      {
+        if (searchError == null)  // only the first error gets reported
+          searchError = ioe.getMessage();
+        searchLock.notifyAll();   // wake up everybody so they stop early
+      }
+    }
+  } // end of searchRunner() method
+
+
+/*
+  serveFiles() method
+
+  Start serving hex views of files in a folder over HTTP, for the "--serve"
+  option.  The server runs in its own threads, and keeps this program running
+  after the command line has been processed.
+*/
+  static void serveFiles(int port, File folder)
+  {
+    DumpFile5Server server;       // web server for files in <folder>
+    int threads;                  // number of threads for requests
+
+    threads = (threadCount > 0) ? threadCount : Runtime.getRuntime()
+      .availableProcessors();     // one thread per processor by default
+    try
+    {
+      server = new DumpFile5Server(folder);
+      server.start(port, threads);
+      System.err.println("Serving hex views of " + server.rootPath
+        + " at http://localhost:" + server.server.getAddress().getPort()
+        + "/dump/");
+    }
+    catch (IOException ioe)
+    {
+      System.err.println("Can't start web server: " + ioe.getMessage());
+      System.exit(-1);            // exit from application with error
+    }
+  } // end of serveFiles() method
+
+
+/*
+  showHelp() method
+
+  Show the help summary.  This is a UNIX standard and is expected for all
+  console applications, even very simple ones.
+*/
+  static void showHelp()
+  {
+    System.err.println();
+    System.err.println(PROGRAM_TITLE);
+    System.err.println();
+    System.err.println("  java  DumpFile5  [options]  [file names]");
+    System.err.println();
+    System.err.println("Options:");
+    System.err.println("  -? = print this help summary");
+    System.err.println("  -a = analyze byte histograms and entropy of 64 KB blocks; -a# = # KB blocks");
+    System.err.println("  -c file1 file2 = compare two files, print differing lines interleaved");
+    System.err.println("  -cs file1 file2 = compare two files, print differing lines side by side");
+    System.err.println("  -d folder = write dump of each following file into its own file in a folder");
+    System.err.println("  -e or -e1 = display input bytes as 8-bit ASCII text");
+    System.err.println("  -e0 = display input bytes as 7-bit plain text (default)");
+    System.err.println("  -f hex = search following files for hex bytes, ?? for any byte; -f - = dump");
+    System.err.println("  -fi text = search for text, any case; -ft text = search for exact text");
+    System.err.println("  -i pattern = dump only matching file names from folders (* and ? wildcards)");
+    System.err.println("  -j = dump several files at once, one per processor; -j# = # files at once");
+    System.err.println("  -k # = print # dump lines before and after each match (default none)");
+    System.err.println("  -l # = stop after # differing regions or matches (default 0 = all)");
+    System.err.println("  -m# = map large files in windows of # MB (default 64); -m0 = stream reads");
+    System.err.println("  -n # = dump only # bytes from each file (default is rest of file)");
+    System.err.println("  -o file = write dump of following files into an output file");
+    System.err.println("  -p = dump large files in parallel, one thread per processor");
+    System.err.println("  -p0 = dump files sequentially (default); -p# = use # threads");
+    System.err.println("  -r dump file = rebuild a binary file from dump output, at the dumped offsets");
+    System.err.println("  -s # = start at offset #; negative counts back from end of file");
+    System.err.println("  -t = follow files as they grow, like \"tail -f\"; -t# = show new bytes in # ms");
+    System.err.println("  -u or -u1 = dump contents of gzip files and entries in zip or jar files");
+    System.err.println("  -u0 = dump compressed files as raw bytes (default)");
+    System.err.println("  -w8 = show 8 input bytes per dump line");
+    System.err.println("  -w16 = show 16 input bytes per dump line (default)");
+    System.err.println("  -w24 = show 24 input bytes per dump line");
+    System.err.println("  -x pattern = don't dump matching file names from folders");
+    System.err.println("  -z = compress following output with gzip, one block per thread; -z# = level #");
+    System.err.println("  -z0 = write plain text output (default)");
+    System.err.println("  --digest list = also print crc32, md5, sha256, etc of dumped bytes; - = none");
+    System.err.println("  --digest-only list = print only the checksums or digests, without dumping");
+    System.err.println("  --gzip-block # = compress # bytes of output in each gzip block (default 1m)");
+    System.err.println("  --serve # folder = serve hex views of files in folder on local HTTP port #");
+    System.err.println("  --stats = print speed and time spent reading, formatting, and writing");
+    System.err.println("  --text name = decode text column as utf8, utf16le, or utf16be; ascii = bytes");
+    System.err.println();
+    System.err.println("Output may be redirected with the \">\" operator.  Folders are searched for files,");
+    System.err.println("including subfolders.  A file name of \"-\" reads standard input.  If no file");
+    System.err.println("names are given on the command line, then a graphical interface will open.");
+    System.err.println();
+    System.err.println(COPYRIGHT_NOTICE);
+//  System.err.println();
+
+  } // end of showHelp() method
+
+
+/*
+  taskCheck() method
+
+  Return <true> if the current dump job should keep going, or <false> if it
+  has been cancelled.  If the job is paused, we wait here until it is resumed
+  or cancelled.  This is called once per block of input, not for each byte or
+  line, so that a running dump pays almost nothing for it.  A thread that is
+  interrupted while waiting also gets <false>, with its interrupt flag set.
+*/
+  static boolean taskCheck()
+  {
+    if ((task != null) && task.paused) // check without a lock first
+    {
+      synchronized (batchLock)
+      {
+        while ((cancelFlag == false) && (task != null) && task.paused)
+        {
+          try { batchLock.wait(); }
+          catch (InterruptedException ie)
+          {
+            Thread.currentThread().interrupt(); // caller may check again
+            return (false);       // interrupted thread stops its work
+          }
+        }
+      }
+    }
+    return (cancelFlag == false);
+
+  } // end of taskCheck() method
+
+
+/*
+  taskRunner() method
+
+  Run one dump job, from the run() method of the job.  Most options are in
+  static variables shared by all jobs, so jobs run one at a time, in the order
+  they were started.  A job that was cancelled before its turn isn't run.
+*/
+  static void taskRunner(DumpFile5Task given)
+  {
+    synchronized (taskLock)       // wait for any earlier jobs to finish
+    {
+      synchronized (batchLock)
+      {
+        if (given.cancelled == false)
+        {
+          cancelFlag = false;     // don't cancel unless user complains
+          given.startTime = System.currentTimeMillis();
+          task = given;           // our job is now the current job
+        }
+      }
+      if (task == given)          // not cancelled while waiting?
+        dumpBatch(given.files);
+      synchronized (batchLock)
+      {
+        given.done = true;        // tell anybody waiting for the result
+        task = null;              // no dump job is running now
+        batchLock.notifyAll();
+      }
+    }
+  } // end of taskRunner() method
+
+
+/*
+  userButton() method
+
+  This method is called by our action listener actionPerformed() to process
+  buttons, in the context of the main DumpFile5 class.
+*/
+  static void userButton(ActionEvent event)
+  {
+    long done;                    // input bytes dumped so far
+    long left;                    // estimated milliseconds left, or -1
+    long total;                   // total input bytes to dump
+
+    Object source = event.getSource(); // where the event came from
+    if (source == cancelButton)   // "Cancel" button
+    {
+      openTask.cancel(true);      // stop opening files
+    }
+    else if (source == dumpButton) // "Dump to File" button
+    {
+      openFiles(true);            // select files and dump them to a file
+    }
+    else if ((source == dumpWidthDialog) || (source == eightBitCheckbox))
+    {
+      /* Redraw the file view with new options.  Dumps that are running keep
+      the options they started with. */
+
+      viewFile.setOptions(Integer.parseInt((String) dumpWidthDialog
+        .getSelectedItem()), eightBitCheckbox.isSelected());
+    }
+    else if (source == exitButton) // "Exit" button
+    {
+      System.exit(0);             // exit from this application
+    }
+    else if (source == fontNameDialog) // font name for output text area
+    {
+      /* We can safely assume that the font name is valid, because we obtained
+      the names from getAvailableFontFamilyNames(), and the user can't edit
+      this dialog field. */
+
+      fontName = (String) fontNameDialog.getSelectedItem();
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+      viewFile.setFont(outputText.getFont());
+    }
+    else if (source == fontSizeDialog) // point size for output text area
+    {
+      /* We can safely parse the point size as an integer, because we supply
+      the only choices allowed, and the user can't edit this dialog field. */
+
+      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
+      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+      viewFile.setFont(outputText.getFont());
+    }
+    else if (source == openButton) // "Open Files" button
+    {
+      openFiles(false);           // select and open files
+    }
+    else if (source == pauseButton) // "Pause" or "Resume" button
+    {
+      if (openTask.isPaused())
+      {
+        openTask.resume();
+        pauseButton.setText("Pause");
+      }
+      else
+      {
+        openTask.pause();
+        pauseButton.setText("Resume");
+      }
+    }
+    else if (source == progressTimer) // update progress bar for dump
+    {
+      publishOutput();            // show text collected since last time
+      done = openTask.getDone();
+      left = openTask.getEta();
+      total = openTask.getTotal();
+      progressBar.setValue((total > 0) ? ((int) Math.min(1000,
+        ((1000 * done) / total))) : 0);
+      if (openTask.isPaused())
+        progressBar.setString("Paused at " + (progressBar.getValue() / 10)
+          + "%");
+      else if (left >= 0)         // show the time left, once we know it
+        progressBar.setString((progressBar.getValue() / 10) + "%, "
+          + formatComma((left + 999) / 1000) + " seconds left");
+      else
+        progressBar.setString(null); // percentage only
+      if (openFilesThread.isAlive() == false) // is the dump finished?
+      {
+        progressTimer.stop();     // no more updates until next dump
+        if (openTask.isCancelled() == false) // show complete, unless cancelled
+          progressBar.setValue(1000);
+        progressBar.setString(null);
+        publishOutput();          // show text added before thread ended
+
+        /* Turn off the "Cancel" and "Pause" buttons and allow the user to
+        click the "Open Files" button again. */
+
+        cancelButton.setEnabled(false);
+        dumpButton.setEnabled(true);
+        openButton.setEnabled(true);
+        pauseButton.setEnabled(false);
+        pauseButton.setText("Pause");
+      }
+    }
+    else if (source == saveButton) // "Save Output As" button
+    {
+      saveOutputText();           // save output text in a file
+    }
+    else if (source == viewButton) // "View File" button
+    {
+      viewFile();                 // select one file for the file view
+    }
+    else if ((source == viewFindText) || (source == viewNextButton))
+    {
+      viewSearch(true);           // search forward for next match
+    }
+    else if (source == viewOffsetText) // user pressed Enter on offset
+    {
+      viewOffset();               // jump to that offset in the file view
+    }
+    else if (source == viewPrevButton) // "Previous" button
+    {
+      viewSearch(false);          // search backward for previous match
+    }
+    else if (source == viewTimer) // check if file view search is done
+    {
+      if (viewSearchThread.isAlive() == false)
+      {
+        viewTimer.stop();         // no more checks until next search
+        viewNextButton.setEnabled(true);
+        viewPrevButton.setEnabled(true);
+        if (viewError != null)
+          viewFindLabel.setText("Can't read from file: " + viewError);
+        else if (viewSearchFile != viewFile.file) // user opened another file?
+          viewFindLabel.setText("");
+        else if (viewFound < 0)   // no match in that direction
+        {
+          viewFindLabel.setText("No more matches.");
+          Toolkit.getDefaultToolkit().beep();
+        }
+        else
+        {
+          viewFindLabel.setText("Match at offset 0x"
+            + Long.toHexString(viewFound).toUpperCase());
+          viewFile.setMark(viewFound, viewPattern.length);
+          viewFile.gotoOffset(viewFound);
+          viewFile.requestFocus(); // so that keyboard scrolling works
+        }
+      }
+    }
+    else
+    {
+      putOutput("Error in userButton(): ActionEvent not recognized: " + event);
+    }
+  } // end of userButton() method
+
+
+/*
+  viewFile() method
+
+  Ask the user for one file name, and show that file in the virtual file view.
+  Nothing is read until the view needs to draw some lines.  The heat map
+  beside the view is filled in by a low-priority analysis of the whole file.
+*/
+  static void viewFile()
+  {
+    DumpFile5Analysis analysis;   // background analysis for heat map
+
+    fileChooser.resetChoosableFileFilters(); // remove any existing filters
+    fileChooser.setDialogTitle("View File...");
+    fileChooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+    fileChooser.setMultiSelectionEnabled(false); // allow only one file
+    if (fileChooser.showOpenDialog(mainFrame) != JFileChooser.APPROVE_OPTION)
+      return;                     // user cancelled file selection dialog box
+
+    outputTabs.setSelectedIndex(1); // show file view, not dump output
+    try
+    {
+      viewFile.openFile(fileChooser.getSelectedFile());
+      viewFile.requestFocus();    // so that keyboard scrolling works
+    }
+    catch (IOException ioe)
+    {
+      heatmap.setAnalysis(null);  // nothing to map
+      outputTabs.setSelectedIndex(0); // error message goes in dump output
+      putOutput("Can't read from input file: " + ioe.getMessage());
+      return;
+    }
+
+    /* Analyze the file for the heat map, in the background and at a low
+    priority, so that the file view stays quick while the map fills in. */
+
+    try
+    {
+      analysis = new DumpFile5Analysis(viewFile.file, ANALYZE_SIZE, false);
+      analysis.start(Runtime.getRuntime().availableProcessors(),
+        Thread.MIN_PRIORITY);
+      heatmap.setAnalysis(analysis);
+    }
+    catch (IOException ioe)
+    {
+      heatmap.setAnalysis(null);  // file view shows the same error
+    }
+  } // end of viewFile() method
+
+
+/*
+  viewHeatmap() method
+
+  The user clicked on the heat map beside the file view.  Show the block that
+  was clicked, at the top of the file view.  We go through the file view and
+  not the dump output, because dump output doesn't have a line for each
+  offset when identical lines are collapsed.
+*/
+  static void viewHeatmap(File file, long offset)
+  {
+    outputTabs.setSelectedIndex(1); // show file view, not dump output
+    if (file.equals(viewFile.file) == false) // user opened another file?
+      return;
+    viewFile.gotoOffset(offset);
+    viewFile.requestFocus();      // so that keyboard scrolling works
+
+  } // end of viewHeatmap() method
+
+
+/*
+  viewOffset() method
+
+  Jump to the hexadecimal offset typed by the user in the file view.  We allow
+  a "0x" prefix, since people copy offsets from other programs.
+*/
+  static void viewOffset()
+  {
+    String text;                  // offset typed by the user
+
+    text = viewOffsetText.getText().trim().toLowerCase();
+    if (text.startsWith("0x"))    // ignore C-style prefix for hexadecimal
+      text = text.substring(2);
+    try
+    {
+      viewFile.gotoOffset(Long.parseLong(text, 16));
+      viewFile.requestFocus();    // so that keyboard scrolling works
+    }
+    catch (NumberFormatException nfe)
+    {
+      Toolkit.getDefaultToolkit().beep(); // not a valid hexadecimal number
+    }
+  } // end of viewOffset() method
+
+
+/*
+  viewRunner() method
+
+  Search the file in the file view for the next or previous match, starting
+  from a given offset.  This runs in a separate thread, so that the graphical
+  interface doesn't freeze on huge files, and the result is picked up later by
+  <viewTimer>.  We read a region at a time, with enough extra bytes for a match
+  that crosses into the next region.
+*/
+  static void viewRunner()
+  {
+    ByteBuffer block;             // input bytes for one region
+    FileChannel channel;          // NIO channel for <in>
+    long from;                    // file offset where search continues
+    int i;                        // index variable
+    FileInputStream in;           // input file stream
+    int index;                    // index of match in <block>, or -1
+    long size;                    // size of file being searched
+    long start;                   // file offset of first byte in <block>
+
+    viewError = null;             // no errors yet
+    viewFound = -1;               // and no match found yet
+    try
+    {
+      in = new FileInputStream(viewSearchFile); // separate from file view
+      channel = in.getChannel();
+      size = channel.size();
+      block = ByteBuffer.allocate(SEARCH_SIZE + viewPattern.length - 1);
+      from = viewSearchForward ? viewSearchFrom : Math.min(viewSearchFrom,
+        (size - 1));              // backward search can't start after end
+      while ((viewFound < 0) && (from >= 0) && (from < size))
+      {
+        /* Read the region that starts (forward) or ends (backward) where we
+        are searching from. */
+
+        start = viewSearchForward ? from : Math.max(0, (from - SEARCH_SIZE
+          + 1));
+        block.clear();            // start at index zero
+        block.limit((int) Math.min(block.capacity(), (size - start)));
+        while (block.hasRemaining())
+        {
+          if (channel.read(block, (start + block.position())) < 0)
+            throw new EOFException("file is shorter than when opened");
+        }
+
+        if (viewSearchForward)    // first match in region
+        {
+          index = viewPattern.find(block, 0, block.limit());
+          if ((index >= 0) && (index < SEARCH_SIZE))
+            viewFound = start + index;
+          from = start + SEARCH_SIZE;
+        }
+        else                      // last match in region, up to <from>
+        {
+          i = index = -1;
+          while (((i = viewPattern.find(block, (i + 1), block.limit())) >= 0)
+            && ((start + i) <= from))
+          {
+            index = i;            // best match so far
+          }
+          if (index >= 0)
+            viewFound = start + index;
+          from = start - 1;
+        }
+      }
+      in.close();
+    }
+    catch (IOException ioe)
+    {
+      viewError = ioe.getMessage();
+    }
+  } // end of viewRunner() method
+
+
+/*
+  viewSearch() method
+
+  Start searching the file view for the next or previous match to the pattern
+  typed by the user.  The search starts next to the last match, or at the top
+  of the window if there is no match showing.
+*/
+  static void viewSearch(boolean forward)
+  {
+    if ((viewFile.file == null) || ((viewSearchThread != null)
+      && viewSearchThread.isAlive()))
+    {
+      Toolkit.getDefaultToolkit().beep(); // no file, or already searching
+      return;
+    }
+    try
+    {
+      viewPattern = new DumpFile5Pattern(viewFindText.getText(),
+        viewFindType.getSelectedIndex()); // same order as pattern kinds
+    }
+    catch (NumberFormatException nfe)
+    {
+      viewFindLabel.setText("Invalid pattern: " + nfe.getMessage());
+      Toolkit.getDefaultToolkit().beep();
+      return;
+    }
+
+    viewSearchFile = viewFile.file;
+    viewSearchForward = forward;
+    if (viewFile.markOffset >= 0) // continue from last match
+      viewSearchFrom = viewFile.markOffset + (forward ? 1 : -1);
+    else                          // start from top of window
+      viewSearchFrom = (viewFile.topLine * viewFile.width) - (forward ? 0
+        : 1);
+    viewFindLabel.setText("Searching...");
+    viewNextButton.setEnabled(false);
+    viewPrevButton.setEnabled(false);
+    viewSearchThread = new Thread(new DumpFile5Worker(DumpFile5Worker.VIEW),
+      "viewRunner");
+    viewSearchThread.setPriority(Thread.MIN_PRIORITY);
+    viewSearchThread.start();
+    viewTimer.start();            // check when the search is done
+
+  } // end of viewSearch() method
+
+} // end of DumpFile5 class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5User class
+
+  This class listens to input from the user and passes back event parameters to
+  static methods in the main class.
+*/
+
+class DumpFile5User implements ActionListener, Runnable
+{
+  /* empty constructor */
+
+  public DumpFile5User() { }
+
+  /* button listener, dialog boxes, etc */
+
+  public void actionPerformed(ActionEvent event)
+  {
+    DumpFile5.userButton(event);
+  }
+
+  /* Call a separate heavy-duty processing thread in the main class. */
+
+  public void run()
+  {
+    DumpFile5.openFilesRunner();
+  }
+
+} // end of DumpFile5User class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Analysis class
+
+  This class holds the byte histogram and Shannon entropy of each block of one
+  file, for the "-a" option and for the heat map beside the dump output.  The
+  file is split into units of several blocks, and parallel threads take units
+  in order, read them with positional reads on a shared file channel, and fill
+  in the results for their blocks.  Each thread adds up its own counts for the
+  whole file in a primitive array, and those are added together here only
+  once per thread when it finishes.  Blocks get bigger for very large files,
+  so that the arrays stay small.
+*/
+
+class DumpFile5Analysis implements Runnable
+{
+  static final int BINARY = 3;    // anything else
+  static final int FILL = 1;      // one byte value repeated, but not zero
+  static final String[] KINDS = {"zeros", "fill", "text", "binary",
+    "compressed or encrypted"};   // names for output, in order of kinds
+  static final int RANDOM = 4;    // high entropy: compressed or encrypted
+  static final int TEXT = 2;      // mostly printable ASCII characters
+  static final int ZERO = 0;      // all bytes are zero
+
+  int blockCount;                 // number of blocks in file
+  int blockSize;                  // bytes per block, except maybe the last
+  FileChannel channel;            // file being analyzed, shared by threads
+  float[] entropy;                // entropy of each block, in bits per byte
+  String error;                   // first error message from a thread, or null
+  File file;                      // file being analyzed
+  long fileSize;                  // size of file when opened
+  FileInputStream input;          // input file stream for <channel>
+  boolean inTask;                 // true if the dump job can pause or cancel
+  byte[] kinds;                   // kind of each block, or -1 if not done yet
+  int nextUnit;                   // next unit for a thread to take
+  int running;                    // number of threads still running
+  volatile boolean stopped;       // true if threads should stop early
+  Thread[] threads;               // our parallel threads
+  long[] totals;                  // count of each byte value in whole file
+  int unitBlocks;                 // number of blocks read at once by a thread
+  int unitCount;                  // number of units in file
+
+  public DumpFile5Analysis(File file, int blockSize, boolean inTask)
+    throws IOException
+  {
+    this.input = new FileInputStream(file); // throws exception if not readable
+    this.channel = this.input.getChannel();
+    this.file = file;
+    this.fileSize = this.channel.size();
+    this.blockSize = blockSize;
+    while ((this.fileSize / this.blockSize) >= DumpFile5.ANALYZE_BLOCKS)
+      this.blockSize *= 2;        // fewer, bigger blocks for huge files
+    this.blockCount = (int) ((this.fileSize + this.blockSize - 1)
+      / this.blockSize);
+    this.entropy = new float[this.blockCount];
+    this.error = null;
+    this.inTask = inTask;
+    this.kinds = new byte[this.blockCount];
+    java.util.Arrays.fill(this.kinds, (byte) -1); // nothing done yet
+    this.nextUnit = 0;
+    this.running = 0;
+    this.stopped = false;
+    this.totals = new long[256];
+    this.unitBlocks = Math.max(1, (DumpFile5.ANALYZE_UNIT / this.blockSize));
+    this.unitCount = (this.blockCount + this.unitBlocks - 1) / this.unitBlocks;
+  }
+
+  /* Call the thread method in the main class. */
+
+  public void run()
+  {
+    DumpFile5.analyzeRunner(this);
+  }
+
+/*
+  Start a number of threads at a given priority, and wait for them to finish
+  with join().  The file is closed when the last thread finishes.
+*/
+  void start(int count, int priority)
+  {
+    int i;                        // index variable
+
+    threads = new Thread[count];
+    running = count;
+    for (i = 0; i < count; i ++)
+    {
+      threads[i] = new Thread(this, ("analyzeRunner" + i));
+      threads[i].setDaemon(true); // don't keep program running for GUI
+      threads[i].setPriority(priority);
+      threads[i].start();
+    }
+  }
+
+  void join()
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < threads.length; i ++)
+    {
+      try { threads[i].join(); } catch (InterruptedException ie) { }
+    }
+  }
+
+/*
+  Analyzing threads: take the next unit number, or -1 when there are no more
+  or we have been stopped.
+*/
+  synchronized int next()
+  {
+    if (stopped || (nextUnit >= unitCount))
+      return (-1);
+    return (nextUnit ++);
+  }
+
+  synchronized void fail(String message)
+  {
+    if (error == null)            // only the first error gets reported
+      error = message;
+    stopped = true;               // other threads stop early
+  }
+
+/*
+  Analyzing threads: add one thread's counts for the whole file, which is the
+  only time that threads share anything but the unit number.
+*/
+  synchronized void finish(long[] counts)
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < 256; i ++)
+      totals[i] += counts[i];
+    if (-- running == 0)          // last thread closes the file
+    {
+      try { input.close(); } catch (IOException ioe) { }
+    }
+  }
+
+  synchronized boolean isRunning()
+  {
+    return (running > 0);
+  }
+
+  void stop()
+  {
+    stopped = true;               // threads stop after their current unit
+  }
+
+} // end of DumpFile5Analysis class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Callback class
+
+  This class is an Appendable that passes formatted dump lines one at a time,
+  without the line separator, to a callback given to the format() methods of
+  DumpFile5Formatter.  Text after the last separator waits for the rest of
+  its line.
+*/
+
+class DumpFile5Callback implements Appendable
+{
+  final Consumer<? super String> consumer; // caller's line callback
+  final StringBuilder pending;    // text that isn't a whole line yet
+  final String separator;         // text at the end of each dump line
+
+  public DumpFile5Callback(Consumer<? super String> consumer,
+    String separator)
+  {
+    this.consumer = consumer;
+    this.pending = new StringBuilder();
+    this.separator = separator;
+  }
+
+  public Appendable append(char c)
+  {
+    return (append(String.valueOf(c)));
+  }
+
+  public Appendable append(CharSequence text)
+  {
+    int end;                      // index of line separator in <pending>
+    int start;                    // index of next line in <pending>
+
+    pending.append(text);
+    start = 0;
+    while ((end = pending.indexOf(separator, start)) >= 0)
+    {
+      consumer.accept(pending.substring(start, end));
+      start = end + separator.length();
+    }
+    pending.delete(0, start);     // keep only a partial line, if any
+    return (this);
+  }
+
+  public Appendable append(CharSequence text, int start, int end)
+  {
+    return (append(text.subSequence(start, end)));
+  }
+
+} // end of DumpFile5Callback class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Chunk class
+
+  This class holds one chunk of formatted output from a parallel dump.
+*/
+
+class DumpFile5Chunk
+{
+  byte[] input;                   // input bytes for digests, or null
+  int inputUsed;                  // number of bytes used in <input>
+  int length;                     // number of bytes used in <output>
+  long number;                    // chunk number, starting from zero
+  byte[] output;                  // formatted output lines for this chunk
+  long runEnd;                    // end of run from earlier chunk, or -1
+  long runStart;                  // start of run left open at end, or -1
+
+  public DumpFile5Chunk(int size)
+  {
+    input = null;                 // only allocated for digests
+    inputUsed = 0;
+    length = 0;                   // no output lines yet
+    number = -1;                  // no chunk number assigned yet
+    output = new byte[size];      // big enough for all lines in one chunk
+    runEnd = runStart = -1;       // no runs of identical lines yet
+  }
+
+} // end of DumpFile5Chunk class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Decoder class
+
+  This class decodes multi-byte characters for the text column of dump lines,
+  in UTF-8 or in UTF-16 with either byte order.  UTF-8 is decoded by a finite
+  state machine: each byte value has a class, and a table gives the next state
+  for each state and class, which also rejects overlong forms and surrogates.
+  UTF-16 looks up the high byte of each code unit to find surrogates.  Nothing
+  is allocated while decoding, and a decoder never changes after it is made,
+  so one decoder is shared by all threads.  What carries over from one dump
+  line to the next is kept in DumpFile5Lines by the formatter.
+*/
+
+class DumpFile5Decoder
+{
+  static final int ACCEPT = 0;    // UTF-8 state: character is complete
+  static final int AHEAD = 3;     // most bytes a character continues past line
+  static final int CLASSES = 12;  // number of byte classes for UTF-8
+  static final String[] NAMES = {"utf8", "utf16le", "utf16be"};
+  static final int REJECT = 1;    // UTF-8 state: bytes aren't a character
+  static final int UTF16BE = 2;   // kinds of decoder, same order as <NAMES>
+  static final int UTF16LE = 1;
+  static final int UTF8 = 0;
+
+  final byte[] classes;           // class of each byte value
+  final int kind;                 // UTF8, UTF16LE, or UTF16BE
+  final String name;              // name from <NAMES>
+  final byte[] states;            // next UTF-8 state for each state and class
+  final int unit;                 // bytes per code unit: one or two
+
+/*
+  Make a decoder from a name such as "utf8", "UTF-8", or "utf-16le", where
+  "utf16" alone is little-endian, as in Windows.  Throw IllegalArgumentException
+  if we don't know the name.
+*/
+  public DumpFile5Decoder(String givenName)
+  {
+    int c;                        // byte value
+    String word;                  // name without case, dashes, or underlines
+
+    word = givenName.toLowerCase().replaceAll("[-_]", "");
+    if (word.equals("utf16"))     // byte order of Windows strings
+      word = NAMES[UTF16LE];
+    this.kind = Arrays.asList(NAMES).indexOf(word);
+    if (this.kind < 0)
+      throw new IllegalArgumentException("Unknown text decoder: " + givenName
+        + " (use utf8, utf16le, or utf16be)");
+    this.name = NAMES[this.kind];
+    this.unit = (this.kind == UTF8) ? 1 : 2;
+    this.classes = new byte[256];
+    this.states = new byte[9 * CLASSES];
+
+    if (this.kind != UTF8)        // surrogates in the high byte of each unit
+    {
+      for (c = 0xD8; c <= 0xDB; c ++)
+        this.classes[c] = 1;      // high surrogate, comes first
+      for (c = 0xDC; c <= 0xDF; c ++)
+        this.classes[c] = 2;      // low surrogate, comes second
+      return;
+    }
+
+    /* Byte classes for UTF-8.  The class number is also how many high bits to
+    clear in a first byte, to get its part of the character. */
+
+    for (c = 0x80; c < 0x90; c ++) this.classes[c] = 1; // continuation bytes
+    for (c = 0x90; c < 0xA0; c ++) this.classes[c] = 9;
+    for (c = 0xA0; c < 0xC0; c ++) this.classes[c] = 7;
+    for (c = 0xC0; c < 0xC2; c ++) this.classes[c] = 8; // never valid
+    for (c = 0xC2; c < 0xE0; c ++) this.classes[c] = 2; // two bytes
+    for (c = 0xE1; c < 0xF0; c ++) this.classes[c] = 3; // three bytes
+    for (c = 0xF1; c < 0xF4; c ++) this.classes[c] = 6; // four bytes
+    for (c = 0xF5; c < 0x100; c ++) this.classes[c] = 8; // never valid
+    this.classes[0xE0] = 10;      // next byte must be 0xA0 or more
+    this.classes[0xED] = 4;       // next byte below 0xA0, not a surrogate
+    this.classes[0xF0] = 11;      // next byte must be 0x90 or more
+    this.classes[0xF4] = 5;       // next byte below 0x90, not past 0x10FFFF
+
+    /* States: ACCEPT, REJECT, then 2 to 8 for what may come next.  Anything
+    not set here goes to REJECT. */
+
+    Arrays.fill(this.states, (byte) REJECT);
+    this.setStates(ACCEPT, new int[] {0}, ACCEPT);
+    this.setStates(ACCEPT, new int[] {2}, 2);
+    this.setStates(ACCEPT, new int[] {3}, 3);
+    this.setStates(ACCEPT, new int[] {10}, 4);
+    this.setStates(ACCEPT, new int[] {4}, 5);
+    this.setStates(ACCEPT, new int[] {6}, 6);
+    this.setStates(ACCEPT, new int[] {11}, 7);
+    this.setStates(ACCEPT, new int[] {5}, 8);
+    this.setStates(2, new int[] {1, 7, 9}, ACCEPT); // one more of any
+    this.setStates(3, new int[] {1, 7, 9}, 2); // two more of any
+    this.setStates(4, new int[] {7}, 2); // after 0xE0
+    this.setStates(5, new int[] {1, 9}, 2); // after 0xED
+    this.setStates(6, new int[] {1, 7, 9}, 3); // three more of any
+    this.setStates(7, new int[] {7, 9}, 3); // after 0xF0
+    this.setStates(8, new int[] {1}, 3); // after 0xF4
+  }
+
+  void setStates(int state, int[] types, int next)
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < types.length; i ++)
+      this.states[(state * CLASSES) + types[i]] = (byte) next;
+  }
+
+/*
+  Decode one character from up to four bytes, with the first byte in the low
+  bits.  Return the number of bytes in the character shifted left by 24 bits,
+  plus the character's code point, or zero if the bytes aren't a complete and
+  valid character.
+*/
+  int decode(int bytes, int count)
+  {
+    int b;                        // one input byte
+    int code;                     // code point so far
+    int i;                        // index variable
+    int next;                     // second UTF-16 code unit
+    int state;                    // UTF-8 state after each byte
+    int type;                     // class of byte
+
+    if (this.kind == UTF8)
+    {
+      code = 0;
+      state = ACCEPT;
+      for (i = 0; i < count; i ++)
+      {
+        b = (bytes >>> (8 * i)) & 0xFF;
+        type = this.classes[b];
+        code = (state == ACCEPT) ? (b & (0xFF >>> type)) : ((code << 6)
+          | (b & 0x3F));
+        state = this.states[(state * CLASSES) + type];
+        if (state == ACCEPT)
+          return (((i + 1) << 24) | code);
+        if (state == REJECT)
+          return (0);
+      }
+      return (0);                 // not enough bytes
+    }
+
+    if (count < 2)                // UTF-16 needs a whole code unit
+      return (0);
+    if (this.kind == UTF16BE)     // put first byte of each unit in high bits
+      bytes = ((bytes & 0x00FF00FF) << 8) | ((bytes >>> 8) & 0x00FF00FF);
+    code = bytes & 0xFFFF;
+    type = this.classes[code >>> 8];
+    if (type == 0)                // one code unit
+      return ((2 << 24) | code);
+    if ((type == 2) || (count < 4)) // low surrogate first, or no room
+      return (0);
+    next = bytes >>> 16;
+    if (this.classes[next >>> 8] != 2) // high surrogate must have a low one
+      return (0);
+    return ((4 << 24) | (0x10000 + ((code - 0xD800) << 10) + (next
+      - 0xDC00)));
+  }
+
+} // end of DumpFile5Decoder class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Digest class
+
+  This class computes checksums (CRC32) and message digests (MD5, SHA-256) of
+  the bytes being dumped, for the "--digest" option, so that a file doesn't
+  have to be read a second time.  Hashing runs in its own thread.  The dumping
+  thread hands over each block with add() while it formats the same block,
+  then calls sync() before the block is filled again.  Only one block is ever
+  waiting, so no bytes are copied, and formatting is slower than hashing, so
+  sync() rarely waits.
+*/
+
+class DumpFile5Digest implements Runnable
+{
+  Checksum[] checksums;           // CRC32 and the like, or null for each name
+  byte[] copy;                    // bytes from direct blocks, when needed
+  MessageDigest[] digests;        // MD5 and the like, or null for each name
+  String[] names;                 // algorithm names for output, in order
+  ByteBuffer pending;             // block being hashed, or null
+  boolean stopped;                // true when our thread should end
+  Thread thread;                  // hashing thread, started when first needed
+
+  public DumpFile5Digest(String list) throws NoSuchAlgorithmException
+  {
+    int i;                        // index variable
+    String word;                  // one algorithm name from <list>
+    String[] words;               // algorithm names given by the user
+
+    words = list.split(",");
+    checksums = new Checksum[words.length];
+    copy = null;                  // no direct blocks seen yet
+    digests = new MessageDigest[words.length];
+    names = new String[words.length];
+    for (i = 0; i < words.length; i ++)
+    {
+      word = words[i].trim().toUpperCase();
+      if (word.equals("CRC32"))
+        checksums[i] = new CRC32();
+      else if (word.equals("CRC32C")) try // only in Java 9 and later
+      {
+        checksums[i] = (Checksum) Class.forName("java.util.zip.CRC32C")
+          .getConstructor().newInstance();
+      }
+      catch (ReflectiveOperationException roe)
+      {
+        throw new NoSuchAlgorithmException("CRC32C needs Java 9 or later");
+      }
+      else if (word.equals("ADLER32"))
+        checksums[i] = new Adler32();
+      else                        // "SHA256" is the same as "SHA-256"
+      {
+        digests[i] = MessageDigest.getInstance(word.matches("SHA[0-9]+")
+          ? ("SHA-" + word.substring(3)) : word);
+        word = digests[i].getAlgorithm();
+      }
+      names[i] = word;
+    }
+    pending = null;               // nothing to hash yet
+    stopped = false;
+    thread = null;
+  }
+
+  /* Call the thread method in the main class. */
+
+  public void run()
+  {
+    DumpFile5.digestRunner(this);
+  }
+
+/*
+  Dumping thread: hand over the first bytes of a block to be hashed in the
+  other thread.  The bytes must not change until sync() returns.
+*/
+  synchronized void add(ByteBuffer block, int length)
+  {
+    while (pending != null)       // wait for the previous block
+    {
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+    pending = block.duplicate();  // caller's position doesn't matter
+    pending.clear();
+    pending.limit(length);
+    if (thread == null)           // first block for this file?
+    {
+      thread = new Thread(this, "digestRunner");
+      thread.setDaemon(true);     // never keeps the program running
+      thread.start();
+    }
+    this.notifyAll();
+  }
+
+  synchronized void sync()
+  {
+    while (pending != null)       // wait until the block has been hashed
+    {
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+  }
+
+/*
+  Hashing thread: wait for the next block, or return null when stopped.  The
+  block is finished with done().
+*/
+  synchronized ByteBuffer next()
+  {
+    while ((stopped == false) && (pending == null))
+    {
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+    return (pending);
+  }
+
+  synchronized void done()
+  {
+    pending = null;               // dumping thread can use the block again
+    this.notifyAll();
+  }
+
+  synchronized void stop()
+  {
+    stopped = true;               // tell hashing thread that we are done
+    this.notifyAll();
+  }
+
+/*
+  Start over for another file, after any block that is still being hashed.
+*/
+  void reset()
+  {
+    int i;                        // index variable
+
+    sync();
+    for (i = 0; i < names.length; i ++)
+    {
+      if (checksums[i] != null)
+        checksums[i].reset();
+      else
+        digests[i].reset();
+    }
+  }
+
+/*
+  Add the bytes from index zero to the limit of a block to every checksum and
+  digest, without changing the block's position.  Java 8 checksums only take
+  byte arrays, so bytes in a direct block are copied a piece at a time.
+*/
+  void update(ByteBuffer block)
+  {
+    ByteBuffer bytes;             // our own position in <block>
+    int i;                        // index variable
+    int length;                   // number of bytes in one piece
+
+    for (i = 0; i < names.length; i ++)
+    {
+      bytes = block.duplicate();
+      bytes.position(0);
+      if (checksums[i] == null)
+        digests[i].update(bytes);
+      else if (bytes.hasArray())
+        checksums[i].update(bytes.array(), bytes.arrayOffset(),
+          bytes.limit());
+      else
+      {
+        if (copy == null)
+          copy = new byte[DumpFile5.BUFFER_SIZE];
+        while (bytes.hasRemaining())
+        {
+          length = Math.min(copy.length, bytes.remaining());
+          bytes.get(copy, 0, length);
+          checksums[i].update(copy, 0, length);
+        }
+      }
+    }
+  }
+
+/*
+  Return one line of text for each algorithm, such as "MD5: 0123...", and
+  start over for another file.
+*/
+  String[] results()
+  {
+    byte[] bytes;                 // digest value
+    int i;                        // index variable
+    int k;                        // index of byte in <bytes>
+    String[] result;              // lines of text
+    StringBuffer value;           // checksum or digest in hexadecimal
+
+    sync();                       // last block must be finished
+    result = new String[names.length];
+    for (i = 0; i < names.length; i ++)
+    {
+      value = new StringBuffer(names[i] + ": ");
+      if (checksums[i] != null)
+      {
+        value.append(Long.toHexString(checksums[i].getValue()
+          | 0x100000000L).substring(1)); // always eight digits
+      }
+      else
+      {
+        bytes = digests[i].digest();
+        for (k = 0; k < bytes.length; k ++)
+        {
+          value.append(Character.forDigit(((bytes[k] >> 4) & 0x0F), 16));
+          value.append(Character.forDigit((bytes[k] & 0x0F), 16));
+        }
+      }
+      result[i] = value.toString();
+    }
+    reset();
+    return (result);
+  }
+
+} // end of DumpFile5Digest class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Formatter class
+
+  This class formats dump lines from input bytes: the hexadecimal file offset,
+  the bytes in hexadecimal, and the bytes as text, with ellipses for identical
+  lines.  A formatter is made from one set of options and never changes after
+  that, so one formatter can be shared by any number of threads.  Everything
+  that changes while dumping is in the DumpFile5Lines object for each dump.
+
+  The main class uses a formatter for its own dumps.  Other classes compiled
+  with this file can use the format() methods, which take input bytes from a
+  ByteBuffer, a channel, or an input stream, and send the dump lines to an
+  Appendable (such as a StringBuilder or a Writer), a byte channel, or a
+  callback that gets one line at a time without the line separator:
+
+      formatter = new DumpFile5Formatter(new DumpFile5Options(16, false));
+      formatter.format(payload, 0, System.out::println);
+
+  Each call formats one complete dump, starting from no previous line, and
+  throws IOException if the input or output fails.  A thread that is
+  interrupted stops reading a channel or stream at the end of the next block.
+
+  This class and DumpFile5Options are in the default package, like the rest
+  of this program.  Java doesn't allow a class in a named package to refer to
+  the default package, so only classes that are also in the default package
+  can call format() directly.  Programs in named packages have to run this
+  program, or find these classes by name with reflection.
+*/
+
+class DumpFile5Formatter
+{
+  /* constants */
+
+  static final long BYTE_DOTS = 0x2E2E2E2E2E2E2E2EL; // eight periods
+  static final long BYTE_HIGHS = 0x8080808080808080L; // high bit of each byte
+  static final long BYTE_ONES = 0x0101010101010101L; // low bit of each byte
+  static final byte[] HEX_DIGITS = DumpFile5.HEX_DIGITS;
+  static final int[] HEX_GROUPS = makeGroups(); // two hex digits and a space
+  static final byte[] HEX_PAIRS = makePairs(); // two hex digits per byte
+  static final byte[] RUN_MIDDLE = " identical bytes through ".getBytes();
+                                  // text between byte count and end offset
+  static final byte[] RUN_PREFIX = "   ... ".getBytes(); // before byte count
+
+  /* instance variables */
+
+  final DumpFile5Decoder decoder; // multi-byte text decoder, or null
+  final boolean eightBit;         // true if we display bytes as 8-bit text
+  final byte[] lineEnd;           // line separator in output character set
+  final DumpFile5Options options; // options that we were made with
+  final byte[] textBytes;         // text characters for each byte value
+  final boolean textFast;         // true if textLong() matches <textBytes>
+  final byte[] textLengths;       // number of bytes in each of <textBytes>
+  final boolean textUtf8;         // true if output character set is UTF-8
+  final byte[] wideBytes;         // decoded characters up to 0xFFFF, or null
+  final byte[] wideLengths;       // number of bytes in each of <wideBytes>
+  final int width;                // number of input bytes per dump line
+
+  /* constructor */
+
+  public DumpFile5Formatter(DumpFile5Options options)
+  {
+    int c;                        // character value
+    byte[] encoded;               // one character in output character set
+    CharsetEncoder encoder;       // to check which characters can be shown
+    byte[] lengths;               // new table for <textLengths>
+    byte[] text;                  // new table for <textBytes>
+
+    lengths = new byte[256];      // four bytes for each character, at most
+    text = new byte[1024];
+    for (c = 0; c < 256; c ++)
+    {
+      if ((c < 0x20) || (c == 0x7F) // check for unprintable characters
+        || ((options.eightBit == false) && (c > 0x7F)))
+      {
+        encoded = null;           // substitute a period (".")
+      }
+      else if (c < 0x7F)          // same as byte value in any ASCII charset
+        encoded = new byte[] {(byte) c};
+      else
+        encoded = String.valueOf((char) c).getBytes(options.charset);
+
+      if ((encoded == null) || (encoded.length < 1) || (encoded.length > 4))
+        encoded = new byte[] {(byte) '.'};
+      lengths[c] = (byte) encoded.length;
+      System.arraycopy(encoded, 0, text, (c << 2), encoded.length);
+    }
+    this.decoder = options.decoder;
+    this.eightBit = options.eightBit;
+    this.lineEnd = options.lineSeparator.getBytes(options.charset);
+    this.options = options;
+    this.textBytes = text;
+    this.textLengths = lengths;
+    this.width = options.width;
+    this.textFast = textFast();   // after the tables and <eightBit> are set
+
+    /* Decoded characters are encoded directly for UTF-8 output.  Any other
+    output character set gets a table for the characters that it has, made
+    once here, since the formatter can't allocate while it works. */
+
+    this.textUtf8 = options.charset.name().equals("UTF-8");
+    if ((this.decoder == null) || this.textUtf8)
+    {
+      this.wideBytes = this.wideLengths = null;
+      return;
+    }
+    encoder = options.charset.newEncoder();
+    this.wideBytes = new byte[0x40000]; // four bytes for each character
+    this.wideLengths = new byte[0x10000];
+    for (c = 0xA0; c < 0x10000; c ++)
+    {
+      if ((textShown(c) == false) || (encoder.canEncode((char) c) == false))
+        continue;                 // zero length means a period (".")
+      encoded = String.valueOf((char) c).getBytes(options.charset);
+      if (encoded.length > 4)     // not likely in any real character set
+        continue;
+      this.wideLengths[c] = (byte) encoded.length;
+      System.arraycopy(encoded, 0, this.wideBytes, (c << 2), encoded.length);
+    }
+  }
+
+/*
+  Format a complete dump of the bytes from the buffer's position to its limit,
+  where the first byte has the given offset.  The buffer isn't changed.
+*/
+  public void format(ByteBuffer data, long offset, Appendable sink)
+    throws IOException
+  {
+    formatBuffer(data, offset, sink);
+  }
+
+  public void format(ByteBuffer data, long offset,
+    Consumer<? super String> sink) throws IOException
+  {
+    formatBuffer(data, offset, new DumpFile5Callback(sink,
+      options.lineSeparator));
+  }
+
+  public void format(ByteBuffer data, long offset, WritableByteChannel sink)
+    throws IOException
+  {
+    formatBuffer(data, offset, sink);
+  }
+
+/*
+  Format a complete dump of everything that can be read from a channel or an
+  input stream, with offsets starting from zero.  The input isn't closed.
+*/
+  public void format(InputStream input, Appendable sink) throws IOException
+  {
+    formatChannel(Channels.newChannel(input), sink);
+  }
+
+  public void format(InputStream input, Consumer<? super String> sink)
+    throws IOException
+  {
+    formatChannel(Channels.newChannel(input), new DumpFile5Callback(sink,
+      options.lineSeparator));
+  }
+
+  public void format(InputStream input, WritableByteChannel sink)
+    throws IOException
+  {
+    formatChannel(Channels.newChannel(input), sink);
+  }
+
+  public void format(ReadableByteChannel input, Appendable sink)
+    throws IOException
+  {
+    formatChannel(input, sink);
+  }
+
+  public void format(ReadableByteChannel input,
+    Consumer<? super String> sink) throws IOException
+  {
+    formatChannel(input, new DumpFile5Callback(sink, options.lineSeparator));
+  }
+
+  public void format(ReadableByteChannel input, WritableByteChannel sink)
+    throws IOException
+  {
+    formatChannel(input, sink);
+  }
+
+/*
+  Format a buffer or a channel for the format() methods.  Each call has its own
+  line state and output buffer, which is sent to the caller's sink whenever it
+  is nearly full, so only the formatter's tables are shared between threads.
+*/
+  void formatBuffer(ByteBuffer data, long offset, Object sink)
+    throws IOException
+  {
+    int count;                    // number of complete lines before last
+    int index;                    // index of first input byte in <data>
+    int length;                   // number of input bytes in <data>
+    DumpFile5Lines lines;         // state and output for this dump
+
+    index = data.position();
+    length = data.remaining();
+    lines = makeLines(sink, (offset + length));
+    count = (length - 1) / width; // last line may be incomplete, or empty
+    setAhead(lines, data, (index + length), null, 0, 0);
+    dumpLines(lines, data, index, offset, count);
+    dumpLast(lines, data, (index + (count * width)), (offset + ((long) count
+      * width)), (length - (count * width)));
+    flush(lines);
+    if (lines.error != null)
+      throw lines.error;
+  }
+
+  void formatChannel(ReadableByteChannel input, Object sink)
+    throws IOException
+  {
+    ByteBuffer block;             // input bytes, starting at a dump line
+    int count;                    // number of complete lines to dump now
+    boolean eof;                  // true when there is no more input
+    DumpFile5Lines lines;         // state and output for this dump
+    long offset;                  // offset of first byte in <block>
+
+    block = ByteBuffer.allocate(DumpFile5.BUFFER_SIZE);
+    eof = false;
+    lines = makeLines(sink, 0);
+    offset = 0;
+    while (eof == false)
+    {
+      while ((eof == false) && block.hasRemaining()) // fill the whole block
+        eof = (input.read(block) < 0);
+      if (Thread.interrupted())   // caller wants us to stop early
+        throw new InterruptedIOException("Dump was interrupted.");
+      block.flip();
+
+      /* Dump complete lines, except for the bytes that may be the last line,
+      which are kept for the next block.  Until the end of the input, we also
+      keep a few bytes that decoded text may need to look ahead at. */
+
+      while ((lines.digits < DumpFile5.MAX_DIGITS) && (((offset
+        + block.limit()) >>> (4 * lines.digits)) != 0))
+      {
+        lines.digits ++;          // offsets have grown past what we had
+      }
+      count = (block.limit() - (eof ? 1 : DumpFile5Decoder.AHEAD)) / width;
+      setAhead(lines, block, block.limit(), null, 0, 0);
+      dumpLines(lines, block, 0, offset, count);
+      offset += (long) count * width;
+      block.position(count * width);
+      block.compact();            // move what is left to the beginning
+      if (lines.error != null)
+        throw lines.error;
+    }
+    block.flip();
+    setAhead(lines, null, 0, null, 0, 0); // nothing after the last line
+    dumpLast(lines, block, 0, offset, block.limit());
+    flush(lines);
+    if (lines.error != null)
+      throw lines.error;
+  }
+
+/*
+  Print the formatted lines in an output buffer, and empty the buffer.  Lines
+  for the main class go to DumpFile5.putLines().  Lines for the format()
+  methods go to the caller's sink, which is an Appendable or a byte channel;
+  a line callback is wrapped in a DumpFile5Callback.  The first error is
+  remembered, and nothing more is sent after that, because we are called from
+  places that can't throw exceptions.
+*/
+  void flush(DumpFile5Lines lines)
+  {
+    ByteBuffer block;             // output bytes for a byte channel
+
+    if (lines.sink == null)       // dump from the main class?
+    {
+      DumpFile5.putLines(lines);
+      return;
+    }
+    if (lines.error == null) try  // don't write more after an error
+    {
+      if (lines.sink instanceof WritableByteChannel)
+      {
+        block = ByteBuffer.wrap(lines.output, 0, lines.outputUsed);
+        while (block.hasRemaining())
+          ((WritableByteChannel) lines.sink).write(block);
+      }
+      else                        // line callbacks are also Appendable
+        ((Appendable) lines.sink).append(new String(lines.output, 0,
+          lines.outputUsed, options.charset));
+    }
+    catch (IOException ioe)
+    {
+      lines.error = ioe;          // caller throws this when it can
+    }
+    lines.outputUsed = 0;         // output buffer is now empty
+  }
+
+/*
+  Make the line state and output buffer for one call to a format() method,
+  with enough hexadecimal digits for the last file offset.
+*/
+  DumpFile5Lines makeLines(Object sink, long lastOffset)
+  {
+    DumpFile5Lines lines;         // new line state
+
+    lines = new DumpFile5Lines(width, (DumpFile5.OUTPUT_SIZE + (2
+      * (DumpFile5.MAX_DIGITS + (7 * DumpFile5.MAX_WIDTH) + 7
+      + lineEnd.length))), DumpFile5.OUTPUT_SIZE); // room beyond the limit
+    lines.digits = options.digits;
+    while ((lines.digits < DumpFile5.MAX_DIGITS)
+      && ((lastOffset >>> (4 * lines.digits)) != 0))
+    {
+      lines.digits ++;            // need one more digit
+    }
+    lines.sink = sink;
+    return (lines);
+  }
+
+/*
+  Return eight hexadecimal digits for the low 32 bits of a number, with the
+  first digit in the low byte.  Each nibble is spread into its own byte, and
+  all eight are converted to ASCII digits together: adding six carries into
+  bit 4 only for nibbles of 10 or more, which then skip ahead to "A".
+*/
+  static long hexLong(long number)
+  {
+    long value;                   // one nibble per byte, then one digit
+
+    value = number & 0xFFFFFFFFL;
+    value = (value | (value << 16)) & 0x0000FFFF0000FFFFL;
+    value = (value | (value << 8)) & 0x00FF00FF00FF00FFL;
+    value = (value | (value << 4)) & 0x0F0F0F0F0F0F0F0FL; // last nibble low
+    value = Long.reverseBytes(value); // first digit goes in the low byte
+    return (value + ('0' * BYTE_ONES) + ((((value + (6 * BYTE_ONES)) >>> 4)
+      & BYTE_ONES) * ('A' - '9' - 1)));
+  }
+
+/*
+  Make the table of two hexadecimal digits and a space for each byte value,
+  packed into the low three bytes of an int in output order, so that groups
+  for eight bytes can be shifted together into three longs.
+*/
+  static int[] makeGroups()
+  {
+    int c;                        // byte value
+    int[] result;                 // digits and space per byte value
+
+    result = new int[256];
+    for (c = 0; c < 256; c ++)
+    {
+      result[c] = HEX_DIGITS[c >> 4] | (HEX_DIGITS[c & 0x0F] << 8)
+        | (' ' << 16);
+    }
+    return (result);
+  }
+
+/*
+  Make the table of two hexadecimal digits for each byte value, which is the
+  same for all formatters.
+*/
+  static byte[] makePairs()
+  {
+    int c;                        // byte value
+    byte[] result;                // two digits per byte value
+
+    result = new byte[512];
+    for (c = 0; c < 256; c ++)
+    {
+      result[c << 1] = HEX_DIGITS[c >> 4];
+      result[(c << 1) + 1] = HEX_DIGITS[c & 0x0F];
+    }
+    return (result);
+  }
+
+/*
+  Return one input byte after the end of a dump line, for a character that
+  continues into the next line, or -1 if we can't know it.  Bytes come from the
+  same buffer up to <aheadEnd>, then from <aheadBytes>, as set by setAhead().
+*/
+  int aheadByte(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int end,                      // index after the line in <data>
+    int count)                    // number of bytes after the line, from 0
+  {
+    int inside;                   // bytes after the line in same buffer
+
+    if (data != lines.aheadData)  // nothing is known after this buffer
+      return (-1);
+    inside = Math.max(0, (lines.aheadEnd - end));
+    if (count < inside)
+      return (((int) data.get(end + count)) & 0xFF);
+    count -= inside;              // now relative to <aheadBytes>
+    if (count < lines.aheadCount)
+      return ((lines.aheadBytes >>> (8 * count)) & 0xFF);
+    return (-1);
+  }
+
+/*
+  Print the last line in the dump, after any single duplicate line or run of
+  identical lines that is still pending.  The last line may be incomplete, or
+  even empty if the file is empty, and is never replaced by ellipses.
+*/
+  void dumpLast(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first input byte in <data>
+    long offset,                  // file offset of first input byte
+    int length)                   // number of input bytes, up to <width>
+  {
+    endRun(lines, offset, data, index, length); // pending duplicate lines
+    formatLine(lines, data, index, offset, length); // then the last line
+  }
+
+/*
+  Dump one complete line that is not the last line in the file.  If it differs
+  from the previous line, then print it.  Otherwise, leave it pending: the
+  first duplicate is printed as a line if only one is found, and two or more
+  duplicates are printed as ellipses (dots) with a byte count when the run of
+  identical lines ends.  Lines are compared as input bytes, which is the same
+  as comparing their formatted hexadecimal digits without the file offset.
+*/
+  void dumpLine(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first input byte in <data>
+    long offset)                  // file offset of first input byte
+  {
+    int i;                        // index variable
+    ByteBuffer old;               // <oldLine> for comparing eight bytes
+    boolean same;                 // true if same as previous line
+
+    old = lines.oldBlock;
+    if (old.order() != data.order()) // longs must have bytes in same order
+      old.order(data.order());
+    same = lines.oldValid;        // can't be the same if there is no previous
+    for (i = 0; same && ((i + 8) <= width); i += 8)
+      same = (data.getLong(index + i) == old.getLong(i));
+    for (; same && (i < width); i ++)
+      same = (data.get(index + i) == lines.oldLine[i]);
+
+    if (same)
+    {
+      /* This dump line has the same contents as the previous dump line (except
+      for the file offset, of course). */
+
+      if (lines.sameCount == 0)   // remember offset where the run starts
+        lines.oldOffset = offset;
+      if (lines.sameCount < 2)    // only zero, one, or more matter
+        lines.sameCount ++;       // increment number of identical dump lines
+      lines.linesSkipped ++;      // for the statistics
+    }
+    else
+    {
+      /* This dump line differs from the previous line.  There may be a single
+      line that hasn't been printed yet. */
+
+      endRun(lines, offset, data, index, width); // pending duplicates
+      formatLine(lines, data, index, offset, width); // print new line
+
+      for (i = 0; (i + 8) <= width; i += 8) // remember line for comparing
+        old.putLong(i, data.getLong(index + i));
+      for (; i < width; i ++)
+        lines.oldLine[i] = data.get(index + i);
+      lines.oldOffset = offset;
+      lines.oldValid = true;
+    }
+
+    if (lines.outputUsed > lines.outputLimit) // output buffer nearly full?
+      flush(lines);               // print what we have so far
+  }
+
+/*
+  Dump a number of complete lines that are all in the same input buffer, none
+  of which is the last line in the file.  After each line, we look for a run
+  of following lines that are identical to it, by comparing each byte with the
+  byte one line earlier in the buffer.  Those lines are counted without being
+  formatted, so long runs of identical lines go as fast as memory can be read.
+*/
+  void dumpLines(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first input byte in <data>
+    long offset,                  // file offset of first input byte
+    int count)                    // number of complete lines to dump
+  {
+    int skip;                     // number of identical lines skipped
+
+    while (count > 0)             // caller checks <cancelFlag> once per block
+    {
+      dumpLine(lines, data, index, offset); // compare and maybe print line
+      index += width;         // where the next line starts in buffer
+      offset += width;        // and its file offset
+      count --;                   // one less line to do
+
+      skip = sameLines(data, index, count); // identical lines following?
+      if (skip > 0)
+      {
+        if (lines.sameCount == 0) // remember offset where the run starts
+          lines.oldOffset = offset;
+        lines.sameCount = Math.min(2, (lines.sameCount + skip));
+        lines.linesSkipped += skip;
+        index += skip * width; // skip over the identical lines
+        offset += (long) skip * width;
+        count -= skip;
+      }
+    }
+  }
+
+/*
+  A dump line differs from the previous line, or is the last line in the file,
+  so print any duplicate lines that were pending before it: a single duplicate
+  as a line, or a run of two or more as ellipses with a byte count.  In the
+  parallel dump, a run that started in an earlier chunk is left for the
+  printing thread, and we only remember where the run ends.
+*/
+  void endRun(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    long offset)                  // file offset of the line after the run
+  {
+    if (lines.sameCount == 1)     // was exactly one duplicate line found?
+    {
+      formatLine(lines, lines.oldBlock, 0, lines.oldOffset, width);
+      lines.linesSkipped --;      // which is printed after all
+    }
+    else if (lines.sameCount > 1) // a run of identical lines
+    {
+      if (lines.leadRun)          // did this run start in an earlier chunk?
+        lines.leadEnd = offset - 1;
+      else
+        formatRun(lines, lines.oldOffset, (offset - 1));
+    }
+    lines.leadRun = false;        // any run from an earlier chunk is done
+    lines.sameCount = 0;          // now ignore previous dump lines
+  }
+
+/*
+  End a run the same way, when the line after the run is in a buffer that we
+  have.  A single duplicate line is formatted from <oldLine>, so for decoded
+  text, it looks ahead into the next line instead of the buffer being dumped.
+*/
+  void endRun(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    long offset,                  // file offset of the line after the run
+    ByteBuffer data,              // buffer with the line after the run
+    int index,                    // index of that line in <data>
+    int length)                   // number of input bytes in that line
+  {
+    int bytes;                    // saved <aheadBytes>
+    int count;                    // saved <aheadCount>
+    ByteBuffer saved;             // saved <aheadData>
+    int end;                      // saved <aheadEnd>
+
+    if ((lines.sameCount != 1) || (decoder == null)) // usual case
+    {
+      endRun(lines, offset);
+      return;
+    }
+    bytes = lines.aheadBytes;     // lookahead for the buffer being dumped
+    count = lines.aheadCount;
+    end = lines.aheadEnd;
+    saved = lines.aheadData;
+    setAhead(lines, lines.oldBlock, width, data, index, (index + length));
+    endRun(lines, offset);
+    lines.aheadBytes = bytes;     // put back what the caller set
+    lines.aheadCount = count;
+    lines.aheadData = saved;
+    lines.aheadEnd = end;
+  }
+
+/*
+  Format one complete or partial dump line from input bytes, and append the
+  line to the output buffer.  This is where most of the time goes.  Input bytes
+  are taken eight at a time in a 64-bit register.  Each byte's two hexadecimal
+  digits and space come from one lookup in <HEX_GROUPS>, and are written to
+  the output buffer as three longs instead of 24 separate bytes.  The text
+  column is found for all eight bytes at once with bit masks, when the output
+  character set allows that (see textFast()), or else from the lookup tables.
+  Bytes after the last group of eight are done one at a time.  With a decoder
+  for multi-byte text, the whole text column is done by formatText() after the
+  hexadecimal digits.  The output buffer must have room for <lineSize> bytes.
+*/
+  void formatLine(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first input byte in <data>
+    long offset,                  // file offset of first input byte
+    int length)                   // number of input bytes, up to <width>
+  {
+    ByteBuffer block;             // <output> for writing eight bytes at once
+    int c;                        // input character
+    int g0, g1, g2, g3, g4, g5, g6, g7; // output for eight input bytes
+    int hex;                      // where next hexadecimal digits go
+    int i;                        // index variable
+    int k;                        // index variable
+    byte[] output;                // output buffer, for faster access
+    long rem;                     // remaining file offset to convert
+    boolean swap;                 // true if <data> reads longs big-endian
+    int text;                     // where next text character goes
+    long value;                   // eight input bytes, first in low bits
+
+    output = lines.output;
+    if ((lines.outputBlock == null) || (lines.outputBlock.array() != output))
+    {
+      lines.outputBlock = ByteBuffer.wrap(output); // first time, or new array
+      lines.outputBlock.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    block = lines.outputBlock;
+    swap = (data.order() == ByteOrder.BIG_ENDIAN);
+    hex = lines.outputUsed;       // line starts at end of previous output
+    rem = offset;                 // start with the whole file offset
+    i = hex + lines.digits - 1;   // where the last digit goes
+    if (lines.digits >= 8)        // last eight digits all at once
+    {
+      block.putLong((i - 7), hexLong(rem));
+      rem = rem >>> 32;
+      i -= 8;
+    }
+    for (; i >= hex; i --)        // any more digits, one at a time
+    {
+      output[i] = HEX_DIGITS[(int) (rem & 0x0F)]; // one hexadecimal digit
+      rem = rem >> 4;             // next piece to do
+    }
+    hex += lines.digits;
+    output[hex ++] = ' ';         // two spaces before hexadecimal bytes
+    output[hex ++] = ' ';
+    text = hex + (3 * width) + 2; // after hex digits, space, and marker
+
+    for (i = 0; (i + 8) <= length; i += 8)
+    {
+      value = data.getLong(index + i);
+      if (swap)                   // first input byte must be in low bits
+        value = Long.reverseBytes(value);
+      g0 = HEX_GROUPS[(int) value & 0xFF];
+      g1 = HEX_GROUPS[(int) (value >>> 8) & 0xFF];
+      g2 = HEX_GROUPS[(int) (value >>> 16) & 0xFF];
+      g3 = HEX_GROUPS[(int) (value >>> 24) & 0xFF];
+      g4 = HEX_GROUPS[(int) (value >>> 32) & 0xFF];
+      g5 = HEX_GROUPS[(int) (value >>> 40) & 0xFF];
+      g6 = HEX_GROUPS[(int) (value >>> 48) & 0xFF];
+      g7 = HEX_GROUPS[(int) (value >>> 56)];
+      block.putLong(hex, (g0 | ((long) g1 << 24) | ((long) g2 << 48)));
+      block.putLong((hex + 8), ((g2 >>> 16) | ((long) g3 << 8)
+        | ((long) g4 << 32) | ((long) g5 << 56)));
+      block.putLong((hex + 16), ((g5 >>> 8) | ((long) g6 << 16)
+        | ((long) g7 << 40)));
+      hex += 24;
+
+      if (textFast)               // all eight text characters at once
+      {
+        block.putLong(text, textLong(value));
+        text += 8;
+      }
+      else if (decoder == null) for (k = 0; k < 64; k += 8)
+      {
+        c = (int) (value >>> k) & 0xFF;
+        System.arraycopy(textBytes, (c << 2), output, text, textLengths[c]);
+        text += textLengths[c];   // no branch: widths vary from byte to byte
+      }
+    }
+    for (; i < length; i ++)      // any bytes after the last group of eight
+    {
+      c = ((int) data.get(index + i)) & 0x000000FF; // unsigned byte
+      output[hex ++] = HEX_PAIRS[c << 1]; // two hexadecimal digits
+      output[hex ++] = HEX_PAIRS[(c << 1) + 1];
+      output[hex ++] = ' ';
+      if (decoder != null)        // text column is decoded below
+        continue;
+      else if (textLengths[c] == 1) // most characters are a single byte
+        output[text ++] = textBytes[c << 2];
+      else
+      {
+        System.arraycopy(textBytes, (c << 2), output, text, textLengths[c]);
+        text += textLengths[c];
+      }
+    }
+    if (decoder != null)          // multi-byte characters for whole line
+      text = formatText(lines, data, index, offset, length, text);
+    for (; i < width; i ++)       // fill any missing bytes with spaces
+    {
+      output[hex ++] = ' ';
+      output[hex ++] = ' ';
+      output[hex ++] = ' ';
+      output[text ++] = ' ';
+    }
+    output[hex ++] = ' ';         // extra space before text
+    output[hex] = '|';            // left side marker for text
+    output[text ++] = '|';        // right side marker for text
+
+    System.arraycopy(lineEnd, 0, output, text, lineEnd.length);
+    lines.outputUsed = text + lineEnd.length; // end of this line in buffer
+    lines.linesOut ++;            // for the statistics
+  }
+
+/*
+  Format one line for a run of identical dump lines: ellipses, the number of
+  identical bytes, and the file offset of the last identical byte.  This is
+  called by the parallel threads, so we don't use a shared NumberFormat.
+*/
+  void formatRun(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    long start,                   // file offset of first identical byte
+    long end)                     // file offset of last identical byte
+  {
+    long count;                   // number of identical bytes
+    int i;                        // index variable
+    int index;                    // where we are in <output>
+    byte[] output;                // output buffer, for convenience
+    long rem;                     // remaining part of number to format
+
+    output = lines.output;
+    index = lines.outputUsed;
+    System.arraycopy(RUN_PREFIX, 0, output, index, RUN_PREFIX.length);
+    index += RUN_PREFIX.length;
+
+    count = end - start + 1;      // decimal digits for byte count
+    i = index;                    // find number of digits first
+    rem = count;
+    do { i ++; rem = rem / 10; } while (rem > 0);
+    index = i;                    // where the number ends
+    rem = count;
+    do { output[-- i] = (byte) ('0' + (rem % 10)); rem = rem / 10; }
+      while (rem > 0);
+
+    System.arraycopy(RUN_MIDDLE, 0, output, index, RUN_MIDDLE.length);
+    index += RUN_MIDDLE.length;
+
+    rem = end;                    // hexadecimal digits for end offset
+    for (i = (index + lines.digits - 1); i >= index; i --)
+    {
+      output[i] = HEX_DIGITS[(int) (rem & 0x0F)]; // one hexadecimal digit
+      rem = rem >> 4;             // next piece to do
+    }
+    index += lines.digits;
+
+    System.arraycopy(lineEnd, 0, output, index, lineEnd.length);
+    lines.outputUsed = index + lineEnd.length;
+    lines.linesOut ++;            // for the statistics
+  }
+
+
+/*
+  Format the text column of one dump line with a decoder for multi-byte text,
+  and return the index after the last text character.  Each character goes
+  where its first byte is, and the other bytes of the character are spaces.
+  The first bytes of this line may belong to a character that was shown at
+  the end of the previous line, if we just formatted the line before this one
+  in the file; otherwise they are periods like any byte that isn't part of a
+  valid character.  A character that starts near the end of this line is
+  decoded with up to three bytes after the line (see setAhead()), and the
+  next line is told how many of its bytes were shown here.  UTF-8 bytes below
+  0x80 are done eight at a time with textLong() when they can be, or else
+  with the 7-bit lookup table, and nothing is allocated.
+*/
+  int formatText(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first input byte in <data>
+    long offset,                  // file offset of first input byte
+    int length,                   // number of input bytes, up to <width>
+    int text)                     // where the first text character goes
+  {
+    int bytes;                    // up to four input bytes, first in low bits
+    int c;                        // input character
+    int code;                     // decoded length and character, or zero
+    int count;                    // number of input bytes in <bytes>
+    int i;                        // index variable
+    byte[] output;                // output buffer, for faster access
+    long value;                   // eight input bytes, first in low bits
+
+    output = lines.output;
+    i = (offset == lines.textOffset) ? Math.min(lines.textCarry, length) : 0;
+    for (c = 0; c < i; c ++)      // bytes of a character on previous line
+      output[text ++] = ' ';
+    while (i < length)
+    {
+      if ((decoder.unit == 1) && ((i + 8) <= length)) // UTF-8 eight at once
+      {
+        value = data.getLong(index + i);
+        if ((value & BYTE_HIGHS) == 0) // all ASCII, in either byte order
+        {
+          if (data.order() == ByteOrder.BIG_ENDIAN)
+            value = Long.reverseBytes(value); // first input byte in low bits
+          lines.outputBlock.putLong(text, textLong(value));
+          text += 8;
+          i += 8;
+          continue;
+        }
+      }
+      c = ((int) data.get(index + i)) & 0x000000FF; // unsigned byte
+      if ((c < 0x80) && (decoder.unit == 1)) // ASCII in UTF-8
+      {
+        output[text ++] = textBytes[c << 2];
+        i ++;
+        continue;
+      }
+      if (((offset + i) % decoder.unit) != 0) // half of a UTF-16 code unit
+      {
+        output[text ++] = '.';
+        i ++;
+        continue;
+      }
+
+      bytes = count = 0;          // collect the bytes for one character
+      while (count < 4)
+      {
+        c = ((i + count) < length) ? (((int) data.get(index + i + count))
+          & 0xFF) : aheadByte(lines, data, (index + length), (i + count
+          - length));
+        if (c < 0)                // nothing more is known
+          break;
+        bytes |= c << (8 * count ++);
+      }
+      code = decoder.decode(bytes, count);
+      if (code == 0)              // not a valid character
+      {
+        output[text ++] = '.';
+        i ++;
+        continue;
+      }
+      text = textChar(output, text, (code & 0xFFFFFF));
+      for (c = 1; (c < (code >>> 24)) && ((i + c) < length); c ++)
+        output[text ++] = ' ';    // other bytes of the same character
+      i += code >>> 24;
+    }
+    lines.textCarry = i - length; // bytes of the next line shown here
+    lines.textOffset = offset + length;
+    return (text);
+  }
+/*
+  Return the number of complete lines at the given index that are identical to
+  the line before them in the same buffer.  Each byte is compared with the byte
+  one line earlier, eight bytes at a time while they match, which finds a run
+  of identical lines for any line width without formatting anything.
+*/
+  int sameLines(
+    ByteBuffer data,              // buffer with input bytes
+    int index,                    // index of first line after previous line
+    int count)                    // most lines that we may compare
+  {
+    int end;                      // index after last byte we may compare
+    int i;                        // index variable
+
+    end = index + (count * width);
+    i = index;
+    while (((i + 8) <= end) && (data.getLong(i) == data.getLong(i
+      - width)))
+    {
+      i += 8;                     // eight more bytes are the same
+    }
+    while ((i < end) && (data.get(i) == data.get(i - width)))
+      i ++;                       // finish with single bytes
+    return ((i - index) / width); // only count complete lines
+  }
+
+/*
+  Tell formatLine() where it may look past the end of a dump line, for a
+  multi-byte character that continues into the next line: up to index <end>
+  in the buffer being dumped, then up to three bytes from another buffer, such
+  as the next block of input.  A null buffer means that nothing after a line
+  is known.  Callers set this once for each block, not for each line.
+*/
+  void setAhead(
+    DumpFile5Lines lines,         // state and output for formatting lines
+    ByteBuffer data,              // buffer being dumped, or null
+    int end,                      // index after the last input byte in <data>
+    ByteBuffer next,              // buffer with the bytes after <end>, or null
+    int nextIndex,                // index of first byte in <next>
+    int nextEnd)                  // index after last input byte in <next>
+  {
+    int i;                        // index variable
+
+    lines.aheadBytes = lines.aheadCount = 0;
+    lines.aheadData = data;
+    lines.aheadEnd = end;
+    for (i = nextIndex; (next != null) && (i < nextEnd)
+      && (lines.aheadCount < DumpFile5Decoder.AHEAD); i ++)
+    {
+      lines.aheadBytes |= (((int) next.get(i)) & 0xFF) << (8
+        * lines.aheadCount ++);
+    }
+  }
+
+/*
+  Put one decoded character in the text column, in the output character set,
+  and return the index after it.  A character that can't be shown, or that
+  the output character set doesn't have, is a period (".").
+*/
+  int textChar(byte[] output, int text, int code)
+  {
+    if (code < 0x80)              // same as 7-bit text
+      output[text ++] = textBytes[code << 2];
+    else if (textShown(code) == false)
+      output[text ++] = '.';
+    else if (textUtf8)            // encode UTF-8 without any tables
+    {
+      if (code < 0x800)
+        output[text ++] = (byte) (0xC0 | (code >> 6));
+      else
+      {
+        if (code < 0x10000)
+          output[text ++] = (byte) (0xE0 | (code >> 12));
+        else
+        {
+          output[text ++] = (byte) (0xF0 | (code >> 18));
+          output[text ++] = (byte) (0x80 | ((code >> 12) & 0x3F));
+        }
+        output[text ++] = (byte) (0x80 | ((code >> 6) & 0x3F));
+      }
+      output[text ++] = (byte) (0x80 | (code & 0x3F));
+    }
+    else if ((code < 0x10000) && (wideLengths[code] > 0))
+    {
+      System.arraycopy(wideBytes, (code << 2), output, text,
+        wideLengths[code]);
+      text += wideLengths[code];
+    }
+    else                          // not in the output character set
+      output[text ++] = '.';
+    return (text);
+  }
+
+/*
+  Return <true> if textLong() gives the same text characters as the lookup
+  tables for every byte value.  That is true for 7-bit text in any character
+  set that is compatible with ASCII, and for 8-bit text in ISO-8859-1, such as
+  the graphical interface, but not when 8-bit characters take more than one
+  byte in the output character set.  Decoded text never takes this path.
+*/
+  boolean textFast()
+  {
+    int c;                        // byte value
+    long value;                   // text character from textLong()
+
+    if (this.decoder != null)     // text column is done by formatText()
+      return (false);
+    for (c = 0; c < 256; c ++)
+    {
+      value = textLong(c) & 0xFF; // eight copies would be the same
+      if ((textLengths[c] != 1) || ((textBytes[c << 2] & 0xFF) != value))
+        return (false);
+    }
+    return (true);
+  }
+
+/*
+  Return the text characters for eight input bytes, in the same order, using
+  bit masks on the whole register instead of a lookup for each byte.  A byte
+  is replaced by a period if it is below 0x20 or is 0x7F, or for 7-bit text,
+  if it is 0x80 or more.  Adding to the low seven bits of each byte can't
+  carry into the next byte, so each byte is tested separately.
+*/
+  long textLong(long value)
+  {
+    long high;                    // high bit of each byte
+    long low;                     // low seven bits of each byte
+    long mask;                    // 0xFF for printable bytes, zero for others
+    long print;                   // high bit set for printable bytes
+
+    high = value & BYTE_HIGHS;
+    low = value & ~BYTE_HIGHS;
+    print = ((low + (0x60 * BYTE_ONES)) & ~(low + BYTE_ONES)) & BYTE_HIGHS;
+                                  // 0x20 or more, and not 0x7F
+    print = this.eightBit ? (print | high) : (print & ~high);
+    mask = (print >>> 7) * 0xFF;  // whole byte for each high bit
+    return ((value & mask) | (BYTE_DOTS & ~mask));
+  }
+
+/*
+  Return <true> if a decoded character from 0xA0 up can be shown in the text
+  column.  Controls, format characters, separators, and marks that combine
+  with the character before them would move the rest of the column, and
+  unassigned or private characters have nothing to show.
+*/
+  boolean textShown(int code)
+  {
+    if (code < 0xA0)              // 0x80 to 0x9F are controls
+      return (false);
+    switch (Character.getType(code))
+    {
+      case Character.COMBINING_SPACING_MARK:
+      case Character.CONTROL:
+      case Character.ENCLOSING_MARK:
+      case Character.FORMAT:
+      case Character.LINE_SEPARATOR:
+      case Character.NON_SPACING_MARK:
+      case Character.PARAGRAPH_SEPARATOR:
+      case Character.PRIVATE_USE:
+      case Character.SURROGATE:
+      case Character.UNASSIGNED:
+        return (false);
+      default:
+        return (true);
+    }
+  }
+
+} // end of DumpFile5Formatter class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Found class
+
+  This class holds the matches found in one region of a file being searched,
+  as offsets from the start of the region.
+*/
+
+class DumpFile5Found
+{
+  int count;                      // number of matches in <offsets>
+  long number;                    // region number, starting from zero
+  int[] offsets;                  // where each match starts in region
+
+  public DumpFile5Found(long number)
+  {
+    count = 0;                    // no matches yet
+    this.number = number;
+    offsets = new int[16];        // grows as needed
+  }
+
+  void add(int offset)
+  {
+    int[] larger;                 // bigger array for more matches
+
+    if (count >= offsets.length)  // no room for another match?
+    {
+      larger = new int[2 * offsets.length];
+      System.arraycopy(offsets, 0, larger, 0, count);
+      offsets = larger;
+    }
+    offsets[count ++] = offset;
+  }
+
+} // end of DumpFile5Found class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Gzip class
+
+  This class is an output stream that compresses everything written to it in
+  gzip format, for the "-z" option, with several threads at the same time.
+  Output is cut into blocks of the same size, and each block is compressed by
+  itself as a complete gzip member, with its own header, checksum, and length.
+  A file with many members is still one gzip file, which "gunzip" and "zcat"
+  expand as if it were one member.  Blocks are used in a ring: the writing
+  thread fills the next free block, compressing threads take full blocks in
+  order, and the writing thread writes finished blocks in order, when it
+  needs their space again or when the stream is flushed.  A flush compresses
+  a partial block, so that everything written so far is complete gzip data.
+*/
+
+class DumpFile5Gzip extends OutputStream implements Runnable
+{
+  static final int BUSY = 1;      // block is being compressed
+  static final int DONE = 2;      // block is compressed, waiting to be written
+  static final int FULL = 0;      // block is waiting to be compressed
+  static final byte[] HEADER = {0x1F, (byte) 0x8B, 8, 0, 0, 0, 0, 0, 0,
+    (byte) 0xFF};                 // deflate, no name or time, unknown system
+
+  int blockSize;                  // bytes of input in each full block
+  int count;                      // number of blocks not written yet
+  int first;                      // index of oldest block not written yet
+  byte[][] input;                 // uncompressed bytes for each block
+  int[] inputLengths;             // number of bytes in each <input>
+  int level;                      // compression level from 1 to 9
+  OutputStream out;               // where compressed bytes go
+  byte[][] output;                // compressed gzip member for each block
+  int[] outputLengths;            // number of bytes in each <output>
+  int[] states;                   // FULL, BUSY, or DONE for each block
+  boolean stopped;                // true when our threads should end
+  int threadCount;                // number of compressing threads
+  Thread[] threads;               // compressing threads, or null if none
+  int used;                       // bytes in block being filled
+
+  public DumpFile5Gzip(OutputStream out, int level, int blockSize,
+    int threadCount)
+  {
+    this.blockSize = blockSize;
+    count = first = used = 0;     // nothing written yet
+    input = new byte[threadCount + 2][]; // one block filling, one writing
+    inputLengths = new int[input.length];
+    this.level = level;
+    this.out = out;
+    output = new byte[input.length][]; // allocated when first needed
+    outputLengths = new int[input.length];
+    states = new int[input.length];
+    stopped = false;
+    this.threadCount = threadCount;
+    threads = null;               // started with the first full block
+  }
+
+  /* Call the thread method in the main class. */
+
+  public void run()
+  {
+    DumpFile5.gzipRunner(this);
+  }
+
+/*
+  Writing thread: copy bytes into the block being filled, and give each block
+  to the compressing threads when it's full.
+*/
+  public void write(byte[] buffer, int offset, int length) throws IOException
+  {
+    int index;                    // index of block being filled
+    int size;                     // bytes copied into this block
+
+    while (length > 0)
+    {
+      if (used == blockSize)      // block being filled is full?
+        give();
+      index = (first + count) % input.length;
+      if (input[index] == null)   // first time for this block?
+        input[index] = new byte[blockSize];
+      size = Math.min(length, (blockSize - used));
+      System.arraycopy(buffer, offset, input[index], used, size);
+      length -= size;
+      offset += size;
+      used += size;
+    }
+  }
+
+  public void write(int value) throws IOException
+  {
+    write(new byte[] {(byte) value}, 0, 1);
+  }
+
+/*
+  Writing thread: compress and write everything so far, even a partial block,
+  and flush the stream underneath.  Closing also ends the threads.
+*/
+  public void flush() throws IOException
+  {
+    if (used > 0)                 // partial block waiting?
+      give();
+    putBlocks(0);                 // wait for all blocks, in order
+    out.flush();
+  }
+
+  public void close() throws IOException
+  {
+    stop();
+    out.close();
+  }
+
+  void stop() throws IOException
+  {
+    int i;                        // index variable
+
+    flush();
+    synchronized (this)
+    {
+      stopped = true;             // tell compressing threads that we are done
+      this.notifyAll();
+    }
+    for (i = 0; (threads != null) && (i < threads.length); i ++)
+    {
+      try { threads[i].join(); } catch (InterruptedException ie) { }
+    }
+    threads = null;               // started again if there is more output
+  }
+
+/*
+  Writing thread: hand over the block being filled, and start the threads if
+  they aren't running.  Finished blocks are written now, and we wait for the
+  oldest block only if every block in the ring is full.
+*/
+  void give() throws IOException
+  {
+    int i;                        // index variable
+    int index;                    // index of block being filled
+
+    synchronized (this)
+    {
+      index = (first + count) % input.length;
+      inputLengths[index] = used;
+      states[index] = FULL;
+      count ++;                   // one more block not written yet
+      used = 0;
+      if (threads == null)        // first block, or first after stop()?
+      {
+        stopped = false;
+        threads = new Thread[threadCount];
+        for (i = 0; i < threadCount; i ++)
+        {
+          threads[i] = new Thread(this, ("gzipRunner" + i));
+          threads[i].setDaemon(true); // never keeps the program running
+          threads[i].start();
+        }
+      }
+      this.notifyAll();
+    }
+    putBlocks(input.length - 1);  // leave room for the next block
+  }
+
+/*
+  Writing thread: write compressed blocks in order, waiting for each one until
+  no more than <most> blocks are left, and then write any more that are done
+  without waiting.
+*/
+  void putBlocks(int most) throws IOException
+  {
+    while (count > 0)
+    {
+      synchronized (this)
+      {
+        while ((count > most) && (states[first] != DONE))
+        {
+          try { this.wait(); } catch (InterruptedException ie) { }
+        }
+        if (states[first] != DONE) // no need to wait any longer?
+          return;
+      }
+      out.write(output[first], 0, outputLengths[first]);
+      synchronized (this)
+      {
+        first = (first + 1) % input.length; // block can be filled again
+        count --;
+      }
+    }
+  }
+
+/*
+  Compressing thread: wait for the oldest full block, or return -1 when the
+  stream is stopped.  The block is finished with done().
+*/
+  synchronized int next()
+  {
+    int i;                        // index variable
+    int index;                    // index of block in ring
+
+    while (true)
+    {
+      for (i = 0; i < count; i ++)
+      {
+        index = (first + i) % input.length;
+        if (states[index] == FULL)
+        {
+          states[index] = BUSY;
+          return (index);
+        }
+      }
+      if (stopped)                // no more blocks coming
+        return (-1);
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+  }
+
+  synchronized void done(int index)
+  {
+    states[index] = DONE;         // writing thread can write this block
+    this.notifyAll();
+  }
+
+/*
+  Compressing thread: make one complete gzip member from one block: a header,
+  the raw compressed bytes, and the CRC-32 and length of the block, with the
+  low byte first.  The output array grows if the bytes don't compress.
+*/
+  void compress(int index, Deflater deflater, CRC32 checksum)
+  {
+    int length;                   // number of bytes in the block
+    int size;                     // number of bytes in <result>
+    byte[] result;                // gzip member for the block
+
+    length = inputLengths[index];
+    result = output[index];
+    if (result == null)           // first time for this block?
+      result = new byte[blockSize + (blockSize >> 3) + 64];
+    System.arraycopy(HEADER, 0, result, 0, HEADER.length);
+    size = HEADER.length;
+
+    deflater.reset();
+    deflater.setInput(input[index], 0, length);
+    deflater.finish();
+    while (deflater.finished() == false)
+    {
+      if (size == result.length)  // no room left?
+        result = Arrays.copyOf(result, (result.length * 2));
+      size += deflater.deflate(result, size, (result.length - size));
+    }
+    checksum.reset();
+    checksum.update(input[index], 0, length);
+
+    if ((size + 8) > result.length) // no room for the trailer?
+      result = Arrays.copyOf(result, (size + 8));
+    putInt(result, size, (int) checksum.getValue());
+    putInt(result, (size + 4), length);
+    output[index] = result;
+    outputLengths[index] = size + 8;
+  }
+
+  static void putInt(byte[] buffer, int offset, int value)
+  {
+    buffer[offset] = (byte) value;
+    buffer[offset + 1] = (byte) (value >> 8);
+    buffer[offset + 2] = (byte) (value >> 16);
+    buffer[offset + 3] = (byte) (value >> 24);
+  }
+
+} // end of DumpFile5Gzip class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Heatmap class
+
+  This class draws a narrow strip beside the dump output, with one color for
+  each part of the file in the file view: dark gray for zeros, gray for other
+  repeated bytes, green for text, and from blue to red for low to high entropy,
+  where red is usually compressed or encrypted.  Each row of pixels shows the
+  block with the highest entropy in that part of the file, so that small
+  encrypted regions aren't hidden.  Clicking the strip jumps the file view to
+  that offset.  The strip is redrawn while the analysis is still running.
+*/
+
+class DumpFile5Heatmap extends JComponent
+  implements ActionListener, MouseListener
+{
+  private static final long serialVersionUID = 1L; // for Serializable
+  static final int WIDTH = 20;    // preferred width in pixels
+
+  DumpFile5Analysis analysis;     // results being shown, or null
+  Timer timer;                    // redraws while analysis is running
+
+  public DumpFile5Heatmap()
+  {
+    super();                      // initialize our superclass first
+    this.analysis = null;         // nothing to show yet
+    this.timer = new Timer(DumpFile5.PUBLISH_DELAY, this);
+    this.addMouseListener(this);
+    this.setOpaque(true);         // we paint our whole background
+    this.setPreferredSize(new Dimension(WIDTH, 100));
+    this.setToolTipText("");      // tool tips come from getToolTipText()
+  }
+
+/*
+  Show the results of a new analysis, and stop any previous analysis that is
+  still running.
+*/
+  void setAnalysis(DumpFile5Analysis newAnalysis)
+  {
+    if (this.analysis != null)
+      this.analysis.stop();
+    this.analysis = newAnalysis;
+    if (newAnalysis != null)
+      this.timer.start();         // redraw as results come in
+    this.repaint();
+  }
+
+  public void actionPerformed(ActionEvent event)
+  {
+    this.repaint();
+    if ((this.analysis == null) || (this.analysis.isRunning() == false))
+      this.timer.stop();          // one last time after the end
+  }
+
+/*
+  Return the block with the highest entropy for a row of pixels, or -1 if
+  there isn't one yet.
+*/
+  int blockAt(int y)
+  {
+    int best;                     // block with highest entropy so far
+    int first;                    // first block for this row
+    int i;                        // index variable
+    int last;                     // block after the last one for this row
+
+    if ((this.analysis == null) || (this.analysis.blockCount == 0))
+      return (-1);
+    first = (int) ((long) Math.max(0, y) * this.analysis.blockCount
+      / Math.max(1, this.getHeight()));
+    first = Math.min(first, (this.analysis.blockCount - 1));
+    last = Math.max((first + 1), (int) ((long) (y + 1)
+      * this.analysis.blockCount / Math.max(1, this.getHeight())));
+    last = Math.min(last, this.analysis.blockCount);
+    best = -1;
+    for (i = first; i < last; i ++)
+    {
+      if ((this.analysis.kinds[i] >= 0) && ((best < 0)
+        || (this.analysis.entropy[i] > this.analysis.entropy[best])))
+      {
+        best = i;
+      }
+    }
+    return (best);
+  }
+
+  protected void paintComponent(Graphics gr)
+  {
+    int block;                    // block shown in a row of pixels
+    float entropy;                // entropy of <block>
+    int y;                        // vertical pixel position
+
+    gr.setColor(this.getBackground());
+    gr.fillRect(0, 0, this.getWidth(), this.getHeight());
+    for (y = 0; y < this.getHeight(); y ++)
+    {
+      if ((block = this.blockAt(y)) < 0)
+        continue;                 // not analyzed yet, or empty file
+      entropy = this.analysis.entropy[block];
+      switch (this.analysis.kinds[block])
+      {
+        case DumpFile5Analysis.ZERO: gr.setColor(Color.darkGray); break;
+        case DumpFile5Analysis.FILL: gr.setColor(Color.gray); break;
+        case DumpFile5Analysis.TEXT: gr.setColor(Color.green); break;
+        default:
+          gr.setColor(Color.getHSBColor(((8 - entropy) / 8 * 0.66f), 0.9f,
+            1.0f));               // blue for low entropy, red for high
+          break;
+      }
+      gr.drawLine(0, y, this.getWidth(), y);
+    }
+  }
+
+  public String getToolTipText(MouseEvent event)
+  {
+    int block;                    // block under the mouse
+
+    if ((block = this.blockAt(event.getY())) < 0)
+      return ("Entropy map of the file in the file view.");
+    return ("0x" + Long.toHexString((long) block * this.analysis.blockSize)
+      .toUpperCase() + ": " + DumpFile5Analysis.KINDS[this.analysis
+      .kinds[block]] + ", entropy " + (Math.round(this.analysis.entropy[block]
+      * 100) / 100.0));
+  }
+
+  public void mouseClicked(MouseEvent event) { }
+  public void mouseEntered(MouseEvent event) { }
+  public void mouseExited(MouseEvent event) { }
+  public void mousePressed(MouseEvent event)
+  {
+    int block;                    // block under the mouse
+
+    if ((block = this.blockAt(event.getY())) >= 0)
+      DumpFile5.viewHeatmap(this.analysis.file, ((long) block
+        * this.analysis.blockSize));
+  }
+  public void mouseReleased(MouseEvent event) { }
+
+} // end of DumpFile5Heatmap class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Job class
+
+  This class holds the buffers for dumping one file at a time, and the output
+  of one file from a batch while it waits to be printed.  Jobs are reused for
+  the next file, so buffers are allocated only once per thread.
+*/
+
+class DumpFile5Job
+{
+  ByteArrayOutputStream buffer;   // output waiting for earlier files
+  DumpFile5Digest digest;         // checksums and digests, or null
+  ByteBuffer[] digestBlocks;      // read buffers for digest-only, or null
+  ByteBuffer directBuffer;        // direct buffer for reading smaller files
+  boolean done;                   // true when the file has been dumped
+  File file;                      // input file for this job
+  ByteBuffer inputBlock;          // <inputBuffer> wrapped as a byte buffer
+  byte[] inputBuffer;             // input buffer for the old stream reads
+  ByteBuffer lineBlock;           // <lineBuffer> wrapped as a byte buffer
+  byte[] lineBuffer;              // input bytes for an incomplete dump line
+  long lineOffset;                // file offset of next complete dump line
+  int lineShown;                  // bytes of <lineBuffer> printed early
+  int lineUsed;                   // number of input bytes in <lineBuffer>
+  DumpFile5Lines lines;           // state and output for formatting lines
+  String name;                    // output name, relative to output folder
+  int number;                     // file number in batch, or -1 if alone
+
+  public DumpFile5Job()
+  {
+    buffer = new ByteArrayOutputStream(DumpFile5.OUTPUT_SIZE);
+    digest = null;                // made for each file, if needed
+    digestBlocks = null;          // allocated when first needed
+    directBuffer = ByteBuffer.allocateDirect(DumpFile5.BUFFER_SIZE);
+    done = false;
+    file = null;                  // no file assigned yet
+    inputBuffer = new byte[DumpFile5.BUFFER_SIZE];
+    inputBlock = ByteBuffer.wrap(inputBuffer);
+    lineBuffer = new byte[DumpFile5.MAX_WIDTH];
+    lineBlock = ByteBuffer.wrap(lineBuffer);
+    lineOffset = 0;
+    lineShown = lineUsed = 0;     // nothing saved in line buffer yet
+    lines = new DumpFile5Lines(DumpFile5.MAX_WIDTH, (DumpFile5.OUTPUT_SIZE
+      + (2 * (DumpFile5.MAX_DIGITS + (7 * DumpFile5.MAX_WIDTH) + 7))),
+      DumpFile5.OUTPUT_SIZE);     // room for lines beyond the limit
+    name = null;
+    number = -1;                  // not part of a batch with threads
+  }
+
+} // end of DumpFile5Job class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Lines class
+
+  This class holds the state for formatting dump lines: the previous line for
+  finding duplicates, a buffer for the formatted output, and decoded text that
+  continues from one line to the next.  The sequential dump has one of these,
+  and each parallel dump thread has its own.
+*/
+
+class DumpFile5Lines
+{
+  int aheadBytes;                 // input bytes after <aheadEnd>, first low
+  int aheadCount;                 // number of bytes in <aheadBytes>
+  ByteBuffer aheadData;           // buffer being dumped, or null if none
+  int aheadEnd;                   // index after last input byte in <aheadData>
+  int batch;                      // file number waiting in batch, or -1
+  long bytesRead;                 // input bytes, not yet in statistics
+  int digits;                     // hex digits in file offset
+  IOException error;              // first error writing to <sink>, or null
+  long leadEnd;                   // end of run from earlier chunk, or -1
+  boolean leadRun;                // true if run started in earlier chunk
+  long linesOut;                  // lines printed, not yet in statistics
+  long linesSkipped;              // identical lines not printed, same
+  ByteBuffer oldBlock;            // <oldLine> wrapped as a byte buffer
+  byte[] oldLine;                 // input bytes for previous dump line
+  long oldOffset;                 // file offset for <oldLine> or run start
+  boolean oldValid;               // true if <oldLine> has a previous line
+  byte[] output;                  // formatted output lines
+  ByteBuffer outputBlock;         // <output> wrapped for formatLine()
+  int outputLimit;                // print <output> when used beyond here
+  int outputUsed;                 // number of bytes used in <output>
+  int phase;                      // what we are doing, for the statistics
+  long[] phaseNanos;              // time for each phase, not yet counted
+  long phaseTime;                 // time in nanoseconds when phase started
+  int sameCount;                  // identical dump lines found, up to two
+  Object sink;                    // where formatter library output goes
+  OutputStream stream;            // where output goes, or null for usual
+  int textCarry;                  // bytes of next line shown with this line
+  long textOffset;                // file offset where <textCarry> applies
+
+  public DumpFile5Lines(int width, int size, int limit)
+  {
+    aheadCount = 0;               // no bytes to look ahead at yet
+    aheadData = null;
+    batch = -1;                   // not waiting for earlier files
+    bytesRead = linesOut = linesSkipped = 0; // nothing counted yet
+    digits = DumpFile5.OFFSET_DIGITS;
+    error = null;                 // no errors writing output yet
+    leadEnd = -1;                 // only used by parallel dump threads
+    leadRun = false;
+    oldLine = new byte[width];    // enough for widest dump line
+    oldBlock = ByteBuffer.wrap(oldLine);
+    oldOffset = 0;
+    oldValid = false;             // no previous line yet
+    output = (size > 0) ? new byte[size] : null; // may be supplied later
+    outputBlock = null;           // wrapped when first needed
+    outputLimit = limit;
+    outputUsed = 0;               // nothing in output buffer yet
+    phaseNanos = new long[DumpFile5Stats.PHASES.length];
+    startPhase(DumpFile5Stats.FORMAT);
+    sameCount = 0;                // no identical dump lines found yet
+    sink = null;                  // output isn't for the formatter library
+    stream = null;                // output goes to the usual place
+    textCarry = 0;                // no character continues from before
+    textOffset = -1;
+  }
+
+/*
+  Start timing a phase, without counting the time since the last phase, such
+  as between files.  setPhase() counts the time for the previous phase, then
+  starts timing a new phase, and returns the previous phase.  These are called
+  once per block of input or output, not for each line.
+*/
+  void startPhase(int next)
+  {
+    phase = next;
+    phaseTime = System.nanoTime();
+  }
+
+  int setPhase(int next)
+  {
+    long now;                     // time in nanoseconds
+    int previous;                 // phase that we are ending
+
+    now = System.nanoTime();
+    previous = phase;
+    phaseNanos[previous] += now - phaseTime;
+    phase = next;
+    phaseTime = now;
+    return (previous);
+  }
+
+} // end of DumpFile5Lines class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Options class
+
+  This class holds the options for a DumpFile5Formatter: the number of bytes
+  per line, 7-bit or 8-bit text, the fewest hexadecimal digits in offsets,
+  the line separator, the character set for the output, and an optional
+  decoder for multi-byte characters in the text column.  The character
+  set must be compatible with ASCII, because digits and spaces are written as
+  single bytes.  Options never change after they are made, so they are safe to
+  share between threads.
+*/
+
+class DumpFile5Options
+{
+  final Charset charset;          // character set for output text
+  final DumpFile5Decoder decoder; // multi-byte text decoder, or null
+  final int digits;               // fewest hex digits in file offsets
+  final boolean eightBit;         // true if we display bytes as 8-bit text
+  final String lineSeparator;     // text at the end of each dump line
+  final int width;                // number of input bytes per dump line
+
+  public DumpFile5Options()
+  {
+    this(16, false);              // same defaults as the main class
+  }
+
+  public DumpFile5Options(int width, boolean eightBit)
+  {
+    this(width, eightBit, DumpFile5.OFFSET_DIGITS, System.getProperty(
+      "line.separator"), Charset.defaultCharset());
+  }
+
+  public DumpFile5Options(
+    int width,                    // number of input bytes per dump line
+    boolean eightBit,             // true for 8-bit text, false for 7-bit
+    int digits,                   // fewest hex digits in file offsets
+    String lineSeparator,         // text at the end of each dump line
+    Charset charset)              // character set for output text
+  {
+    this(width, eightBit, digits, lineSeparator, charset, null);
+  }
+
+  public DumpFile5Options(
+    int width,                    // number of input bytes per dump line
+    boolean eightBit,             // true for 8-bit text, false for 7-bit
+    int digits,                   // fewest hex digits in file offsets
+    String lineSeparator,         // text at the end of each dump line
+    Charset charset,              // character set for output text
+    DumpFile5Decoder decoder)     // UTF-8 or UTF-16 text, or null for bytes
+  {
+    if ((width < 1) || (width > DumpFile5.MAX_WIDTH))
+      throw new IllegalArgumentException("Bytes per line must be from 1 to "
+        + DumpFile5.MAX_WIDTH + ": " + width);
+    if ((digits < 1) || (digits > DumpFile5.MAX_DIGITS))
+      throw new IllegalArgumentException("Offset digits must be from 1 to "
+        + DumpFile5.MAX_DIGITS + ": " + digits);
+    if ((lineSeparator == null) || (lineSeparator.length() == 0)
+      || (charset == null))
+    {
+      throw new IllegalArgumentException(
+        "Line separator and character set are required.");
+    }
+    this.charset = charset;
+    this.decoder = decoder;
+    this.digits = digits;
+    this.eightBit = eightBit;
+    this.lineSeparator = lineSeparator;
+    this.width = width;
+  }
+
+} // end of DumpFile5Options class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Pattern class
+
+  This class holds one search pattern, prepared for the Boyer-Moore-Horspool
+  algorithm.  The pattern is compared from its last byte backwards, and when
+  a byte doesn't match, the byte under the end of the pattern tells us how far
+  we can move ahead, which is often the whole length of the pattern.  Patterns
+  may have hexadecimal bytes with "??" for any byte, plain text, or text where
+  upper and lower case letters are the same.
+*/
+
+class DumpFile5Pattern
+{
+  static final int ANY_CASE = 2;  // text, upper and lower case are the same
+  static final int HEX = 0;       // hexadecimal bytes, "??" for any byte
+  static final int MAX_LENGTH = 1024; // most bytes in a pattern
+  static final int TEXT = 1;      // text, exactly as typed
+
+  byte[] fold;                    // input byte values before comparing
+  int length;                     // number of bytes in pattern
+  byte[] pattern;                 // pattern bytes, already folded
+  int[] shift;                    // how far to move for byte under the end
+  boolean[] wild;                 // true where any byte matches
+
+  public DumpFile5Pattern(String text, int kind)
+    throws NumberFormatException
+  {
+    int c;                        // one byte or character value
+    byte[] bytes;                 // pattern bytes as given
+    int digit;                    // value of one hexadecimal digit
+    int i;                        // index variable
+    int k;                        // index variable
+    int used;                     // number of pattern bytes found
+
+    /* Convert the text into pattern bytes.  Hexadecimal bytes are pairs of
+    digits, which may be separated by spaces. */
+
+    fold = new byte[256];         // no folding unless case doesn't matter
+    for (c = 0; c < 256; c ++)
+    {
+      fold[c] = (byte) (((kind == ANY_CASE) && (c >= 'A') && (c <= 'Z'))
+        ? (c + 'a' - 'A') : c);
+    }
+    if (kind == HEX)
+    {
+      bytes = new byte[text.length() / 2];
+      wild = new boolean[bytes.length];
+      used = 0;                   // no pattern bytes yet
+      for (i = 0; i < text.length(); i ++)
+      {
+        if (Character.isWhitespace(text.charAt(i)))
+          continue;               // ignore spaces between bytes
+        if ((i + 1) >= text.length())
+          throw new NumberFormatException("hex digits must be in pairs");
+        if ((text.charAt(i) == '?') && (text.charAt(i + 1) == '?'))
+          wild[used ++] = true;   // this byte matches anything
+        else
+        {
+          for (k = i; k <= (i + 1); k ++)
+          {
+            digit = Character.digit(text.charAt(k), 16);
+            if (digit < 0)
+              throw new NumberFormatException("not a hex digit or \"??\": "
+                + text.charAt(k));
+            bytes[used] = (byte) ((bytes[used] << 4) | digit);
+          }
+          used ++;
+        }
+        i ++;                     // we used two characters
+      }
+    }
+    else
+    {
+      bytes = text.getBytes();    // default character set, like output
+      used = bytes.length;
+      wild = new boolean[used];
+    }
+    if (used == 0)
+      throw new NumberFormatException("empty pattern");
+    if (used > MAX_LENGTH)
+      throw new NumberFormatException("longer than " + MAX_LENGTH
+        + " bytes");
+
+    length = used;
+    pattern = new byte[length];
+    for (i = 0; i < length; i ++)
+      pattern[i] = fold[((int) bytes[i]) & 0x000000FF];
+
+    /* For each byte value under the end of the pattern, find the distance to
+    the last place before the end where that byte matches the pattern. */
+
+    shift = new int[256];
+    for (c = 0; c < 256; c ++)
+    {
+      shift[c] = length;          // byte isn't in pattern, skip over it
+      for (i = 0; i < (length - 1); i ++)
+      {
+        if (wild[i] || (fold[c] == pattern[i]))
+          shift[c] = length - 1 - i;
+      }
+    }
+  }
+
+/*
+  Return the index of the first match that starts at or after <index> and ends
+  before <end> in a buffer, or -1 if there is no match.
+*/
+  int find(ByteBuffer data, int index, int end)
+  {
+    int i;                        // index where pattern starts in buffer
+    int k;                        // index in pattern
+    int last;                     // index of last byte in pattern
+
+    last = length - 1;
+    for (i = index; (i + last) < end; i += shift[((int) data.get(i + last))
+      & 0x000000FF])
+    {
+      for (k = last; (k >= 0) && (wild[k] || (fold[((int) data.get(i + k))
+        & 0x000000FF] == pattern[k])); k --)
+      {
+        /* Compare backwards while bytes match. */
+      }
+      if (k < 0)                  // did all bytes match?
+        return (i);
+    }
+    return (-1);                  // no match in this buffer
+  }
+
+} // end of DumpFile5Pattern class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Pipe class
+
+  This class passes blocks of decompressed bytes from the thread that reads a
+  compressed file to the thread that dumps them.  Blocks are used in a ring:
+  full blocks wait in order starting at <first>, and the reading thread fills
+  the next free block.  The dumping thread keeps its block until it releases
+  it, so neither thread ever copies a block or waits while the other one works,
+  unless all blocks are full or all are empty.
+*/
+
+class DumpFile5Pipe implements Runnable
+{
+  static final int FILL = 0;      // fill each block, for compressed files
+  static final int FOLLOW = 2;    // like PARTIAL, then wait for file to grow
+  static final int PARTIAL = 1;   // give each block after one read
+
+  ByteBuffer[] blocks;            // ring of input blocks
+  FileChannel channel;            // compressed file, for progress, or null
+  int count;                      // number of full blocks waiting
+  boolean done;                   // true when no more blocks are coming
+  long endOffset;                 // stream offset after last byte to dump
+  String error;                   // error message from reading, or null
+  int first;                      // index of oldest full block
+  InputStream input;              // decompressed input bytes
+  int mode;                       // how blocks are read: FILL, PARTIAL, ...
+  long startOffset;               // stream offset of first byte to dump
+  boolean stopped;                // true if dumping thread wants no more
+
+  public DumpFile5Pipe(InputStream input, FileChannel channel,
+    long startOffset, long endOffset, int mode)
+  {
+    int i;                        // index variable
+
+    blocks = new ByteBuffer[DumpFile5.PIPE_BLOCKS];
+    for (i = 0; i < blocks.length; i ++)
+      blocks[i] = ByteBuffer.wrap(new byte[DumpFile5.BUFFER_SIZE]);
+    this.channel = channel;
+    count = first = 0;            // no full blocks yet
+    done = stopped = false;
+    this.endOffset = endOffset;
+    error = null;                 // no errors yet
+    this.input = input;
+    this.mode = mode;
+    this.startOffset = startOffset;
+  }
+
+  /* Call the thread method in the main class. */
+
+  public void run()
+  {
+    DumpFile5.pipeRunner(this);
+  }
+
+/*
+  Reading thread: wait for a free block, or return null if the dumping thread
+  has stopped.  The block is given to the dumping thread with give().
+*/
+  synchronized ByteBuffer take()
+  {
+    while ((stopped == false) && (count >= blocks.length))
+    {
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+    return (stopped ? null : blocks[(first + count) % blocks.length]);
+  }
+
+  synchronized void give()
+  {
+    count ++;                     // one more full block waiting
+    this.notifyAll();
+  }
+
+  synchronized void finish()
+  {
+    done = true;                  // reading thread is done, maybe by error
+    this.notifyAll();
+  }
+
+  synchronized void pause(long millis)
+  {
+    if (stopped == false)         // wait, unless dumping thread is done
+    {
+      try { this.wait(millis); } catch (InterruptedException ie) { }
+    }
+  }
+
+/*
+  Dumping thread: wait for the oldest full block, or return null at the end.
+  The block stays ours until release() frees it to be filled again.
+*/
+  synchronized ByteBuffer next()
+  {
+    while ((done == false) && (count == 0))
+    {
+      try { this.wait(); } catch (InterruptedException ie) { }
+    }
+    return ((count > 0) ? blocks[first] : null);
+  }
+
+/*
+  Dumping thread: wait up to a number of milliseconds for a full block, and
+  return true if there is one, or if no more blocks are coming.
+*/
+  synchronized boolean ready(long millis)
+  {
+    if ((done == false) && (count == 0))
+    {
+      try { this.wait(millis); } catch (InterruptedException ie) { }
+    }
+    return (done || (count > 0));
+  }
+
+  synchronized void release()
+  {
+    first = (first + 1) % blocks.length; // next full block, if any
+    count --;
+    this.notifyAll();
+  }
+
+  synchronized void stop()
+  {
+    stopped = true;               // tell reading thread that we are done
+    this.notifyAll();
+  }
+
+} // end of DumpFile5Pipe class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Server class
+
+  This class serves hex views of files in one folder (and its subfolders) over
+  HTTP, with the JDK's built-in web server, for the "--serve" option.  A page
+  is a range of one file, formatted with a given width and 8-bit flag.  Pages
+  are kept in a cache with the least recently used page removed first, and the
+  cache key has the file's modification time and size, so a changed file is
+  formatted again.  Requests are handled by a fixed pool of threads.  Each
+  request reads its range with positional reads on its own file channel, and
+  formats it with a shared formatter, so requests never wait for each other
+  except for a moment while looking in the cache.
+*/
+
+class DumpFile5Server implements HttpHandler
+{
+  static final int CACHE_BYTES = 0x4000000; // most bytes of cached pages
+  static final int PAGE_DEFAULT = 0x1000; // input bytes when no length given
+  static final int PAGE_LIMIT = 0x100000; // most input bytes in one page
+
+  LinkedHashMap<String, byte[]> cache; // formatted pages, least recent first
+  long cacheUsed;                 // bytes of formatted pages in <cache>
+  DumpFile5Formatter[] formatters; // for each width, 7-bit then 8-bit
+  String prefix;                  // <rootPath> with a separator at the end
+  File root;                      // folder with files that we serve
+  String rootPath;                // canonical path name for <root>
+  HttpServer server;              // JDK web server, once started
+
+  public DumpFile5Server(File root) throws IOException
+  {
+    int i;                        // index variable
+
+    this.root = root.getCanonicalFile();
+    if (this.root.isDirectory() == false)
+      throw new FileNotFoundException("not a folder: " + root.getPath());
+    this.rootPath = this.root.getPath();
+    this.prefix = this.rootPath.endsWith(File.separator) ? this.rootPath
+      : (this.rootPath + File.separator);
+    this.cache = new LinkedHashMap<String, byte[]>(64, 0.75f,
+      true);                      // in order of access
+    this.cacheUsed = 0;
+    this.formatters = new DumpFile5Formatter[2
+      * DumpFile5.DUMP_WIDTHS.length];
+    for (i = 0; i < this.formatters.length; i ++)
+    {
+      this.formatters[i] = new DumpFile5Formatter(new DumpFile5Options(
+        Integer.parseInt(DumpFile5.DUMP_WIDTHS[i / 2]), ((i % 2) != 0),
+        DumpFile5.OFFSET_DIGITS, "\n", Charset.forName("UTF-8"),
+        DumpFile5.textDecoder));  // any "--text" option applies to all pages
+    }
+  }
+
+/*
+  Start serving on a port of the loopback address, with the given number of
+  threads.  Only programs on this computer can connect, so other people see
+  these files only through something like an SSH tunnel that we don't manage.
+*/
+  void start(int port, int threads) throws IOException
+  {
+    server = HttpServer.create(new InetSocketAddress(
+      InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/dump/", this);
+    server.createContext("/stats", this);
+    server.setExecutor(Executors.newFixedThreadPool(threads));
+    server.start();
+  }
+
+/*
+  Look for a page in the cache, and count it as a hit or a miss.  The cache
+  is locked only while looking and adding, never while reading or formatting.
+*/
+  byte[] getPage(String key)
+  {
+    byte[] page;                  // cached page, or null
+
+    synchronized (cache)
+    {
+      page = cache.get(key);      // also makes it most recently used
+    }
+    DumpFile5.stats.addCache(page != null);
+    return (page);
+  }
+
+  void putPage(String key, byte[] page)
+  {
+    Iterator<byte[]> oldest;      // pages from least recently used
+    byte[] previous;              // page that we replaced, if any
+
+    if (page.length > CACHE_BYTES) // too big to keep with anything else
+      return;
+    synchronized (cache)
+    {
+      previous = cache.put(key, page);
+      if (previous != null)       // another thread formatted the same page
+        cacheUsed -= previous.length;
+      cacheUsed += page.length;
+      oldest = cache.values().iterator();
+      while (cacheUsed > CACHE_BYTES)
+      {
+        cacheUsed -= oldest.next().length;
+        oldest.remove();
+      }
+    }
+  }
+
+/*
+  Handle one request.  "/dump/" followed by a path name inside our folder
+  returns a page of a file, or a list of names in a folder.  The query may
+  have "offset" (negative from the end of the file), "length", "width", and
+  "e" for 8-bit text (1) or 7-bit text (0).  "/stats" returns the counters.
+*/
+  public void handle(HttpExchange exchange) throws IOException
+  {
+    String[] pairs;               // "name=value" from the query
+    byte[] body;                  // response to send
+    boolean eightBit;             // true if we display bytes as 8-bit text
+    File file;                    // canonical file or folder being asked for
+    int i;                        // index variable
+    long length;                  // number of input bytes in page
+    long offset;                  // file offset of first byte in page
+    String path;                  // decoded path name from the request
+    String query;                 // raw query text, or null
+    int split;                    // index of "=" in a query pair
+    int status;                   // HTTP status code
+    String type;                  // content type of <body>
+    String value;                 // decoded value of a query pair
+    int width;                    // number of input bytes per dump line
+
+    type = "text/plain; charset=UTF-8"; // for pages, lists, and errors
+    try
+    {
+      if (exchange.getRequestMethod().equals("GET") == false)
+        throw new DumpFile5ServerError(405, "Only GET is allowed.");
+      path = exchange.getRequestURI().getPath();
+      if (path.equals("/stats"))
+      {
+        body = getStats().getBytes("UTF-8");
+        status = 200;
+      }
+      else if (path.startsWith("/dump/"))
+      {
+        /* Options start as the command line had them, and the query can
+        change them for this request. */
+
+        eightBit = DumpFile5.eightBitFlag;
+        length = PAGE_DEFAULT;
+        offset = 0;
+        width = DumpFile5.dumpWidth;
+        query = exchange.getRequestURI().getRawQuery();
+        pairs = (query == null) ? new String[0] : query.split("&");
+        for (i = 0; i < pairs.length; i ++)
+        {
+          split = pairs[i].indexOf('=');
+          value = (split < 0) ? "" : URLDecoder.decode(pairs[i].substring(
+            split + 1), "UTF-8");
+          if (pairs[i].startsWith("offset="))
+            offset = parseNumber(value, "offset");
+          else if (pairs[i].startsWith("length="))
+            length = parseNumber(value, "length");
+          else if (pairs[i].startsWith("width="))
+            width = (int) parseNumber(value, "width");
+          else if (pairs[i].startsWith("e="))
+            eightBit = value.equals("1");
+        }
+        if ((length < 0) || (length > PAGE_LIMIT))
+          throw new DumpFile5ServerError(400, ("Length must be from 0 to "
+            + PAGE_LIMIT + " bytes."));
+
+        file = new File(root, path.substring(6)).getCanonicalFile();
+        if ((file.getPath().equals(rootPath) == false)
+          && (file.getPath().startsWith(prefix) == false))
+        {
+          throw new DumpFile5ServerError(403, "Not inside the served folder.");
+        }
+        if (file.isDirectory())
+          body = listFolder(file).getBytes("UTF-8");
+        else
+          body = makePage(file, offset, length, width, eightBit, exchange);
+        status = 200;
+      }
+      else
+        throw new DumpFile5ServerError(404, "Not found.");
+    }
+    catch (DumpFile5ServerError dse)
+    {
+      body = (dse.getMessage() + "\n").getBytes("UTF-8");
+      status = dse.status;
+    }
+    catch (FileNotFoundException fnfe)
+    {
+      body = "File not found or not readable.\n".getBytes("UTF-8");
+      status = 404;
+    }
+    catch (IOException ioe)
+    {
+      body = ("Can't read from input file: " + ioe.getMessage() + "\n")
+        .getBytes("UTF-8");
+      status = 500;
+    }
+
+    exchange.getResponseHeaders().set("Content-Type", type);
+    exchange.sendResponseHeaders(status, body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+
+/*
+  Return the counters for "/stats" as lines of text.
+*/
+  String getStats()
+  {
+    int count;                    // number of cached pages
+    long hits;                    // pages found in the cache
+    long misses;                  // pages that had to be formatted
+    long used;                    // bytes of cached pages
+
+    synchronized (cache)
+    {
+      count = cache.size();
+      used = cacheUsed;
+    }
+    synchronized (DumpFile5.stats)
+    {
+      hits = DumpFile5.stats.cacheHits;
+      misses = DumpFile5.stats.cacheMisses;
+    }
+    return ("hits " + hits + "\nmisses " + misses + "\npages " + count
+      + "\nbytes " + used + "\nlimit " + CACHE_BYTES + "\n");
+  }
+
+/*
+  List the names in a folder, one per line, with a "/" after subfolders and
+  the size after files.  Names are in order, the same as the dump.
+*/
+  String listFolder(File folder) throws IOException
+  {
+    StringBuffer buffer;          // list that we are building
+    int i;                        // index variable
+    String[] names;               // names in <folder>
+    File next;                    // one file or subfolder
+
+    names = folder.list();
+    if (names == null)            // can't read the folder
+      throw new FileNotFoundException(folder.getPath());
+    Arrays.sort(names);
+    buffer = new StringBuffer();
+    for (i = 0; i < names.length; i ++)
+    {
+      next = new File(folder, names[i]);
+      if (next.isDirectory())
+        buffer.append(names[i] + "/\n");
+      else
+        buffer.append(names[i] + "  " + next.length() + "\n");
+    }
+    return (buffer.toString());
+  }
+
+/*
+  Return a formatted page of a file, from the cache or by reading the range
+  and formatting it.  The offset is limited to the file size, and a negative
+  offset counts back from the end of the file, like the "-s" option.
+*/
+  byte[] makePage(
+    File file,                    // canonical file to read
+    long offset,                  // file offset of first byte in page
+    long length,                  // number of input bytes wanted
+    int width,                    // number of input bytes per dump line
+    boolean eightBit,             // true if we display bytes as 8-bit text
+    HttpExchange exchange)        // for the response headers
+    throws IOException
+  {
+    ByteBuffer block;             // input bytes for the page
+    FileChannel channel;          // NIO channel for <in>
+    int choice;                   // index in <formatters>
+    int i;                        // index variable
+    FileInputStream in;           // input file stream
+    String key;                   // cache key for this page
+    ByteArrayOutputStream out;    // formatted page
+    byte[] page;                  // formatted page, cached or new
+    long size;                    // size of file in bytes
+
+    choice = -1;
+    for (i = 0; i < DumpFile5.DUMP_WIDTHS.length; i ++)
+    {
+      if (Integer.parseInt(DumpFile5.DUMP_WIDTHS[i]) == width)
+        choice = (2 * i) + (eightBit ? 1 : 0);
+    }
+    if (choice < 0)
+      throw new DumpFile5ServerError(400, ("Width must be one of 4, 8, 12,"
+        + " 16, 24, or 32 bytes."));
+
+    in = new FileInputStream(file); // throws exception if not readable
+    try
+    {
+      channel = in.getChannel();
+      size = channel.size();
+      if (offset < 0)             // count back from end of file
+        offset = Math.max(0, (size + offset));
+      offset = Math.min(offset, size);
+      length = Math.min(length, (size - offset));
+
+      key = file.getPath() + "\n" + file.lastModified() + "\n" + size + "\n"
+        + offset + "\n" + length + "\n" + choice;
+      page = getPage(key);
+      exchange.getResponseHeaders().set("X-Cache", ((page != null) ? "hit"
+        : "miss"));
+      if (page == null)
+      {
+        block = ByteBuffer.allocate((int) length);
+        while (block.hasRemaining()) // positional reads don't share a position
+        {
+          if (channel.read(block, (offset + block.position())) < 0)
+            throw new EOFException("file is shorter than when opened");
+        }
+        block.flip();
+        out = new ByteArrayOutputStream((int) (length * 5) + 100);
+        formatters[choice].format(block, offset, Channels.newChannel(out));
+        page = out.toByteArray();
+        putPage(key, page);
+      }
+    }
+    finally
+    {
+      in.close();
+    }
+    return (page);
+  }
+
+/*
+  Parse a number from the query, with the same rules as the command line.
+*/
+  static long parseNumber(String text, String name)
+    throws DumpFile5ServerError
+  {
+    try
+    {
+      return (DumpFile5.parseOffset(text, 0));
+    }
+    catch (NumberFormatException nfe)
+    {
+      throw new DumpFile5ServerError(400, ("Invalid " + name + ": "
+        + nfe.getMessage()));
+    }
+  }
+
+} // end of DumpFile5Server class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5ServerError class
+
+  This class is an error in a request to DumpFile5Server, with the HTTP status
+  code to send back.
+*/
+
+class DumpFile5ServerError extends IOException
+{
+  private static final long serialVersionUID = 1L; // for Serializable
+
+  int status;                     // HTTP status code, such as 404
+
+  public DumpFile5ServerError(int status, String message)
+  {
+    super(message);
+    this.status = status;
+  }
+
+} // end of DumpFile5ServerError class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Stats class
+
+  This class adds up the statistics for dumping files: bytes read, lines
+  printed and skipped, and nanoseconds spent in each phase by all threads.
+  Each thread counts in its own DumpFile5Lines object and adds its counts here
+  once per output block, so the dump doesn't wait on a shared lock for every
+  line.  The same numbers are published as read-only attributes of an MBean,
+  which JMX clients such as JConsole can watch during a long dump, along with
+  the page cache hits and misses for the "--serve" option.
+*/
+
+class DumpFile5Stats implements DynamicMBean
+{
+  static final String[] NAMES = {"BytesRead", "LinesPrinted", "LinesSkipped",
+    "ReadNanos", "FormatNanos", "WriteNanos", "WaitNanos", "ElapsedMillis",
+    "MegabytesPerSecond", "LinesPerSecond", "CacheHits", "CacheMisses"};
+                                  // MBean attributes, in order
+  static final String OBJECT_NAME = "DumpFile5:type=Statistics";
+  static final String[] PHASES = {"read", "format", "write", "wait"};
+  static final int FORMAT = 1;    // formatting lines, and comparing them
+  static final int READ = 0;      // reading or decompressing input
+  static final int WAIT = 3;      // waiting for other threads
+  static final int WRITE = 2;     // writing output
+
+  long bytesRead;                 // input bytes dumped
+  long cacheHits;                 // server pages found in the cache
+  long cacheMisses;               // server pages that had to be formatted
+  long linesOut;                  // lines printed
+  long linesSkipped;              // identical lines not printed
+  long[] nanos;                   // time for each phase, all threads
+  long startTime;                 // milliseconds when batch started
+
+  public DumpFile5Stats()
+  {
+    nanos = new long[PHASES.length];
+    reset();
+  }
+
+  synchronized void reset()
+  {
+    bytesRead = linesOut = linesSkipped = 0;
+    java.util.Arrays.fill(nanos, 0);
+    startTime = System.currentTimeMillis();
+  }
+
+  synchronized void addLines(DumpFile5Lines lines)
+  {
+    int i;                        // index variable
+
+    bytesRead += lines.bytesRead;
+    linesOut += lines.linesOut;
+    linesSkipped += lines.linesSkipped;
+    lines.bytesRead = lines.linesOut = lines.linesSkipped = 0;
+    for (i = 0; i < nanos.length; i ++)
+    {
+      nanos[i] += lines.phaseNanos[i];
+      lines.phaseNanos[i] = 0;
+    }
+  }
+
+  synchronized void addNanos(int phase, long time)
+  {
+    nanos[phase] += time;
+  }
+
+/*
+  Count one page from DumpFile5Server.  These counters are not reset for each
+  batch, because the server runs until the program is stopped.
+*/
+  synchronized void addCache(boolean hit)
+  {
+    if (hit)
+      cacheHits ++;
+    else
+      cacheMisses ++;
+  }
+
+/*
+  MBean attributes, which are all read-only numbers.
+*/
+  synchronized Object getValue(int index)
+  {
+    long elapsed;                 // milliseconds since batch started
+
+    elapsed = Math.max(1, (System.currentTimeMillis() - startTime));
+    switch (index)
+    {
+      case 0: return (Long.valueOf(bytesRead));
+      case 1: return (Long.valueOf(linesOut));
+      case 2: return (Long.valueOf(linesSkipped));
+      case 7: return (Long.valueOf(elapsed));
+      case 8: return (Double.valueOf(bytesRead * 1000.0 / elapsed / 0x100000));
+      case 9: return (Double.valueOf(linesOut * 1000.0 / elapsed));
+      case 10: return (Long.valueOf(cacheHits));
+      case 11: return (Long.valueOf(cacheMisses));
+      default: return (Long.valueOf(nanos[index - 3]));
+    }
+  }
+
+  public Object getAttribute(String name) throws AttributeNotFoundException
+  {
+    int i;                        // index variable
+
+    for (i = 0; i < NAMES.length; i ++)
+    {
+      if (NAMES[i].equals(name))
+        return (getValue(i));
+    }
+    throw new AttributeNotFoundException(name);
+  }
+
+  public AttributeList getAttributes(String[] names)
+  {
+    int i;                        // index variable
+    AttributeList result;         // attributes that we found
+
+    result = new AttributeList();
+    for (i = 0; i < names.length; i ++)
+    {
+      try { result.add(new Attribute(names[i], getAttribute(names[i]))); }
+      catch (AttributeNotFoundException anfe) { } // leave out unknown names
+    }
+    return (result);
+  }
+
+  public MBeanInfo getMBeanInfo()
+  {
+    MBeanAttributeInfo[] attributes; // description of each attribute
+    int i;                        // index variable
+
+    attributes = new MBeanAttributeInfo[NAMES.length];
+    for (i = 0; i < NAMES.length; i ++)
+    {
+      attributes[i] = new MBeanAttributeInfo(NAMES[i], (((i == 8) || (i == 9))
+        ? "java.lang.Double" : "java.lang.Long"), NAMES[i], true, false,
+        false);
+    }
+    return (new MBeanInfo(this.getClass().getName(),
+      "Dump File statistics for the current batch of files", attributes,
+      null, null, null));
+  }
+
+  public Object invoke(String action, Object[] params, String[] signature)
+    throws ReflectionException
+  {
+    throw new ReflectionException(new NoSuchMethodException(action));
+  }
+
+  public void setAttribute(Attribute attribute)
+    throws AttributeNotFoundException
+  {
+    throw new AttributeNotFoundException("read-only: " + attribute.getName());
+  }
+
+  public AttributeList setAttributes(AttributeList list)
+  {
+    return (new AttributeList()); // nothing can be changed
+  }
+
+} // end of DumpFile5Stats class
 
-    /* Write lines to output file. */
+// ------------------------------------------------------------------------- //
 
-    try                           // catch file I/O errors
+/*
+  DumpFile5Task class
+
+  This class is one dump job: a list of files and folders, dumped with the
+  options that are set when the job runs.  Jobs are Runnable and a Future, so
+  they can be run directly, in a thread, or by an executor service, and the
+  caller can wait for the result, which is the number of input bytes dumped.
+  A job can be cancelled, paused, and resumed from any thread, and reports its
+  progress as bytes done out of the total, with an estimated time left.  All
+  fields are protected by <batchLock> in the main class, which the dump
+  threads already use to add up their progress.
+*/
+
+class DumpFile5Task implements Future<Long>, Runnable
+{
+  boolean cancelled;              // true if cancelled before the end
+  boolean done;                   // true when finished, or cancelled
+  File[] files;                   // files and folders to dump
+  long pauseStart;                // milliseconds when last paused
+  volatile boolean paused;        // true while dump threads should wait
+  long pauseTotal;                // milliseconds spent paused before now
+  long progressDone;              // number of input bytes dumped so far
+  long progressTotal;             // total number of input bytes to dump
+  long startTime;                 // milliseconds when started, or zero
+
+  public DumpFile5Task(File[] files)
+  {
+    cancelled = done = paused = false; // not started yet
+    this.files = files;
+    pauseStart = pauseTotal = 0;
+    progressDone = progressTotal = 0; // sizes added when run
+    startTime = 0;
+  }
+
+/*
+  Cancel this job.  If it is running, the dump threads stop at the end of their
+  current block.  Returns <false> if the job has already finished.
+*/
+  public boolean cancel(boolean interrupt)
+  {
+    synchronized (DumpFile5.batchLock)
     {
-      output = new FileWriter(fileChooser.getSelectedFile());
-                                  // try to open output file
-      outputText.write(output);   // couldn't be much easier for writing!
-      output.close();             // try to close output file
+      if (done)                   // too late to cancel
+        return (false);
+      cancelled = true;
+      if (DumpFile5.task == this) // cancel while holding the lock, so that
+        DumpFile5.cancelOpen();   // a job started next isn't cancelled too
     }
-    catch (IOException ioe)
+    return (true);
+  }
+
+/*
+  Wait for the job to finish, and return the number of input bytes dumped.  A
+  thread that is interrupted while waiting stops waiting, and the job goes on.
+*/
+  public Long get() throws InterruptedException
+  {
+    synchronized (DumpFile5.batchLock)
     {
-      putOutput("Can't write to output file: " + ioe.getMessage());
+      while (done == false)
+        DumpFile5.batchLock.wait();
+      if (cancelled)
+        throw new CancellationException("Dump job was cancelled.");
+      return (Long.valueOf(progressDone));
     }
-  } // end of saveOutputText() method
+  }
 
+  public Long get(long timeout, TimeUnit unit)
+    throws InterruptedException, TimeoutException
+  {
+    long end;                     // milliseconds when we stop waiting
+    long wait;                    // milliseconds left to wait
+
+    end = System.currentTimeMillis() + unit.toMillis(timeout);
+    synchronized (DumpFile5.batchLock)
+    {
+      while (done == false)
+      {
+        if ((wait = end - System.currentTimeMillis()) <= 0)
+          throw new TimeoutException("Dump job hasn't finished.");
+        DumpFile5.batchLock.wait(wait);
+      }
+    }
+    return (get());
+  }
 
 /*
-  showHelp() method
+  Progress as input bytes dumped, total input bytes, and the estimated number
+  of milliseconds left, or -1 if we don't know yet.  Time spent paused doesn't
+  count towards the speed.
+*/
+  long getDone()
+  {
+    synchronized (DumpFile5.batchLock) { return (progressDone); }
+  }
 
-  Show the help summary.  This is a UNIX standard and is expected for all
-  console applications, even very simple ones.
+  long getEta()
+  {
+    long elapsed;                 // milliseconds spent dumping, not paused
+    long now;                     // current time in milliseconds
+
+    synchronized (DumpFile5.batchLock)
+    {
+      if (done || (startTime == 0) || (progressDone <= 0)
+        || (progressTotal <= 0))
+      {
+        return (done ? 0 : -1);
+      }
+      now = System.currentTimeMillis();
+      elapsed = now - startTime - pauseTotal - (paused ? (now - pauseStart)
+        : 0);
+      return (Math.max(0, Math.round(elapsed * (double) (progressTotal
+        - progressDone) / progressDone)));
+    }
+  }
+
+  long getTotal()
+  {
+    synchronized (DumpFile5.batchLock) { return (progressTotal); }
+  }
+
+  public boolean isCancelled()
+  {
+    synchronized (DumpFile5.batchLock) { return (cancelled); }
+  }
+
+  public boolean isDone()
+  {
+    synchronized (DumpFile5.batchLock) { return (done); }
+  }
+
+  boolean isPaused() { return (paused); }
+
+/*
+  Pause the job, which takes effect at the end of the current block, and
+  resume it again.  Paused jobs can still be cancelled.
 */
-  static void showHelp()
+  void pause()
   {
-    System.err.println();
-    System.err.println(PROGRAM_TITLE);
-    System.err.println();
-    System.err.println("  java  DumpFile5  [options]  [file names]");
-    System.err.println();
-    System.err.println("Options:");
-    System.err.println("  -? = print this help summary");
-    System.err.println("  -e or -e1 = display input bytes as 8-bit ASCII text");
-    System.err.println("  -e0 = display input bytes as 7-bit plain text (default)");
-    System.err.println("  -w8 = show 8 input bytes per dump line");
-    System.err.println("  -w16 = show 16 input bytes per dump line (default)");
-    System.err.println("  -w24 = show 24 input bytes per dump line");
-    System.err.println();
-    System.err.println("Output may be redirected with the \">\" operator.  If no file names are given on");
-    System.err.println("the command line, then a graphical interface will open.");
-    System.err.println();
-    System.err.println(COPYRIGHT_NOTICE);
-//  System.err.println();
+    synchronized (DumpFile5.batchLock)
+    {
+      if ((paused == false) && (done == false))
+      {
+        pauseStart = System.currentTimeMillis();
+        paused = true;
+      }
+    }
+  }
 
-  } // end of showHelp() method
+  void resume()
+  {
+    synchronized (DumpFile5.batchLock)
+    {
+      if (paused)
+      {
+        pauseTotal += System.currentTimeMillis() - pauseStart;
+        paused = false;
+        DumpFile5.batchLock.notifyAll(); // wake up waiting dump threads
+      }
+    }
+  }
+
+  /* Dump the files in the context of the main class. */
+
+  public void run()
+  {
+    DumpFile5.taskRunner(this);
+  }
 
+} // end of DumpFile5Task class
+
+// ------------------------------------------------------------------------- //
 
 /*
-  startBuffer() method
+  DumpFile5View class
+
+  This class is a virtual view of one file, in the same format as the dump
+  output.  Only the visible lines are formatted, each time the view is drawn,
+  from a small cache of bytes read directly from the file.  Memory use doesn't
+  depend on the size of the file, and we can jump to any offset immediately.
+  Line numbers are scaled down for the scroll bar when a file has more lines
+  than a scroll bar can count.
+*/
+
+class DumpFile5View extends JComponent
+  implements AdjustmentListener, KeyListener, MouseListener, MouseWheelListener
+{
+  /* constants */
 
-  Clear a line buffer to spaces, insert the file offset in hexadecimal, and put
-  in the marker characters ("|") around the ASCII text.
+  static final int CACHE_SIZE = 0x10000; // bytes of file kept for drawing
+  static final int MARGIN = 10;   // pixels around text, same as text area
+  static final int SCROLL_LIMIT = 0x40000000; // largest scroll bar maximum
+  private static final long serialVersionUID = 1L; // for Serializable
+
+  /* instance variables */
+
+  byte[] cacheBuffer;             // bytes of file near the visible lines
+  long cacheStart;                // file offset of first byte in cache
+  int cacheUsed;                  // number of valid bytes in <cacheBuffer>
+  boolean eightBit;               // true if we display bytes as 8-bit text
+  String errorText;               // message if file can't be read, or null
+  File file;                      // file being viewed, or null
+  FileInputStream fileInput;      // open input stream for <file>
+  long fileSize;                  // size of <file> in bytes
+  int digits;                     // hex digits in file offsets
+  char[] lineChars;               // one formatted line for drawing
+  long lineCount;                 // number of dump lines in file
+  long lineScale;                 // lines per scroll bar unit
+  Color markColor;                // background for marked bytes
+  int markLength;                 // number of marked bytes
+  long markOffset;                // file offset of marked bytes, or -1
+  int rowCount;                   // number of lines visible in window
+  JScrollBar scrollBar;           // vertical scroll bar for this view
+  boolean scrollUpdate;           // true while we change <scrollBar>
+  long topLine;                   // line number at top of window
+  int width;                      // number of input bytes per dump line
+
+  /* constructor */
+
+  public DumpFile5View(int width, boolean eightBit)
+  {
+    super();                      // initialize our superclass first
+    this.cacheBuffer = new byte[CACHE_SIZE];
+    this.eightBit = eightBit;
+    this.file = null;             // nothing to view yet
+    this.lineChars = new char[DumpFile5.MAX_DIGITS + (4 * DumpFile5
+      .MAX_WIDTH) + 5];           // longest line that we can format
+    this.markColor = Color.yellow; // until caller picks a better color
+    this.rowCount = 1;            // until we know the window size
+    this.width = width;
+
+    this.scrollBar = new JScrollBar(JScrollBar.VERTICAL);
+    this.scrollBar.addAdjustmentListener(this);
+
+    this.addKeyListener(this);
+    this.addMouseListener(this);
+    this.addMouseWheelListener(this);
+    this.setFocusable(true);      // we accept scrolling keys
+    this.setOpaque(true);         // we paint our whole background
+    this.resetFile();             // no cache, no lines, top of file
+  }
+
+/*
+  Open a new file for viewing, and close any previous file.  Only the size is
+  read here; bytes are read when the view is drawn.
 */
-  static void startBuffer(StringBuffer buffer, long offset)
+  void openFile(File newFile) throws IOException
   {
-    clearLine(buffer);          // clear buffer to all spaces
-    putHex(buffer, 0, OFFSET_DIGITS, offset); // put file offset in hexadecimal
-    buffer.setCharAt(textStart - 1, '|'); // put left side marker for text
-    buffer.setCharAt(textStart + dumpWidth, '|'); // put right side marker
+    FileInputStream input;        // new input stream
+
+    input = new FileInputStream(newFile); // throws exception if not readable
+    this.closeFile();             // close any previous file
+    this.errorText = null;        // no errors reading new file yet
+    this.file = newFile;
+    this.fileInput = input;
+    this.fileSize = input.getChannel().size();
+    this.resetFile();             // start at the top of the new file
+  }
 
-  } // end of startBuffer() method
+  void closeFile()
+  {
+    if (this.fileInput != null)
+    {
+      try { this.fileInput.close(); } catch (IOException ioe) { }
+      this.fileInput = null;
+    }
+    this.file = null;
+    this.fileSize = 0;
+  }
 
+  void resetFile()
+  {
+    this.cacheStart = this.cacheUsed = 0; // cache is empty
+    this.markOffset = -1;         // nothing marked
+    this.topLine = 0;             // start at the top of the file
+    this.setOptions(this.width, this.eightBit); // count lines and redraw
+  }
 
 /*
-  userButton() method
+  Change the number of bytes per line or the 8-bit text option.  The first
+  byte at the top of the window stays visible, and nothing is read from the
+  file if the cache still has the visible lines.
+*/
+  void setOptions(int newWidth, boolean newEightBit)
+  {
+    long topOffset;               // file offset at top of window
+
+    topOffset = this.topLine * this.width;
+    this.eightBit = newEightBit;
+    this.width = newWidth;
+    this.lineCount = Math.max(1, ((this.fileSize + this.width - 1)
+      / this.width));             // even an empty file has one dump line
+    this.lineScale = (this.lineCount / SCROLL_LIMIT) + 1;
+    this.digits = DumpFile5.OFFSET_DIGITS; // same digits as dump output
+    while ((this.digits < DumpFile5.MAX_DIGITS) && ((this.fileSize >>> (4
+      * this.digits)) != 0))
+    {
+      this.digits ++;
+    }
+    this.setTopLine(topOffset / this.width);
+  }
 
-  This method is called by our action listener actionPerformed() to process
-  buttons, in the context of the main DumpFile5 class.
+/*
+  Jump to a file offset, which goes at the top of the window if possible.
 */
-  static void userButton(ActionEvent event)
+  void gotoOffset(long offset)
   {
-    Object source = event.getSource(); // where the event came from
-    if (source == cancelButton)   // "Cancel" button
+    this.setTopLine(offset / this.width);
+  }
+
+/*
+  Mark a range of bytes, such as a match from searching, which is drawn with a
+  different background color.  The caller moves the window if necessary.
+*/
+  void setMark(long offset, int length)
+  {
+    this.markLength = length;
+    this.markOffset = offset;
+    this.repaint();
+  }
+
+/*
+  Set the line number at the top of the window, keeping the window full if we
+  can, then update the scroll bar and redraw.
+*/
+  void setTopLine(long line)
+  {
+    this.topLine = Math.max(0, Math.min(line, (this.lineCount
+      - this.rowCount)));
+    this.scrollUpdate = true;     // ignore our own adjustment events
+    this.scrollBar.setValues((int) (this.topLine / this.lineScale),
+      (int) Math.max(1, (this.rowCount / this.lineScale)), 0,
+      (int) Math.max(1, ((this.lineCount + this.lineScale - 1)
+      / this.lineScale)));
+    this.scrollBar.setBlockIncrement((int) Math.max(1, (this.rowCount
+      / this.lineScale)));
+    this.scrollUpdate = false;
+    this.repaint();
+  }
+
+/*
+  Make sure that the cache has a range of bytes from the file.  Return the
+  index of the first byte in the cache, or -1 if the file can't be read.  We
+  read a little before the requested range, for scrolling backwards.
+*/
+  int loadCache(long offset, int length)
+  {
+    ByteBuffer block;             // <cacheBuffer> wrapped for channel reads
+    int count;                    // number of bytes read by channel
+    FileChannel channel;          // NIO channel for <fileInput>
+
+    if ((offset >= this.cacheStart) && ((offset + length) <= (this.cacheStart
+      + this.cacheUsed)))
     {
-      cancelOpen();               // stop opening files
+      return ((int) (offset - this.cacheStart)); // already in cache
     }
-    else if (source == exitButton) // "Exit" button
+    try
     {
-      System.exit(0);             // exit from this application
+      channel = this.fileInput.getChannel();
+      this.cacheStart = Math.max(0, (offset - (CACHE_SIZE / 4)));
+      this.cacheUsed = 0;         // nothing valid in cache while reading
+      block = ByteBuffer.wrap(this.cacheBuffer);
+      while (block.hasRemaining() && ((count = channel.read(block,
+        (this.cacheStart + block.position()))) > 0))
+      {
+        /* Keep reading until the cache is full or we reach end of file. */
+      }
+      this.cacheUsed = block.position();
     }
-    else if (source == fontNameDialog) // font name for output text area
+    catch (IOException ioe)
     {
-      /* We can safely assume that the font name is valid, because we obtained
-      the names from getAvailableFontFamilyNames(), and the user can't edit
-      this dialog field. */
+      this.errorText = "Can't read from input file: " + ioe.getMessage();
+      return (-1);
+    }
+    if ((offset + length) > (this.cacheStart + this.cacheUsed))
+      return (-1);                // file got shorter after we opened it
+    return ((int) (offset - this.cacheStart));
+  }
 
-      fontName = (String) fontNameDialog.getSelectedItem();
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+/*
+  Format one dump line from bytes in the cache into <lineChars>, and return
+  the number of characters.  This is the same layout as formatLine() in the
+  main class, without the lookup tables, because we only need a screenful.
+*/
+  int formatChars(long offset, int index, int length)
+  {
+    int c;                        // input character
+    int hex;                      // where next hexadecimal digits go
+    int i;                        // index variable
+    char[] line;                  // same as <lineChars>
+    long rem;                     // remaining file offset to convert
+    int text;                     // where next text character goes
+
+    line = this.lineChars;
+    rem = offset;
+    for (i = (this.digits - 1); i >= 0; i --)
+    {
+      line[i] = (char) DumpFile5.HEX_DIGITS[(int) (rem & 0x0F)];
+      rem = rem >> 4;
     }
-    else if (source == fontSizeDialog) // point size for output text area
+    hex = this.digits;
+    line[hex ++] = ' ';
+    line[hex ++] = ' ';
+    text = hex + (3 * this.width) + 2;
+    for (i = 0; i < this.width; i ++)
     {
-      /* We can safely parse the point size as an integer, because we supply
-      the only choices allowed, and the user can't edit this dialog field. */
+      if (i < length)
+      {
+        c = ((int) this.cacheBuffer[index + i]) & 0x000000FF;
+        line[hex ++] = (char) DumpFile5.HEX_DIGITS[c >> 4];
+        line[hex ++] = (char) DumpFile5.HEX_DIGITS[c & 0x0F];
+        if ((c < 0x20)            // check for unprintable characters
+          || ((this.eightBit == false) && (c >= 0x7F))
+          || ((this.eightBit == true) && (c == 0x7F)))
+        {
+          line[text ++] = '.';    // substitute
+        }
+        else
+          line[text ++] = (char) c; // use original char
+      }
+      else
+      {
+        line[hex ++] = ' ';       // fill missing bytes with spaces
+        line[hex ++] = ' ';
+        line[text ++] = ' ';
+      }
+      line[hex ++] = ' ';
+    }
+    line[hex ++] = ' ';
+    line[hex] = '|';
+    line[text ++] = '|';
+    return (text);
+  }
 
-      fontSize = Integer.parseInt((String) fontSizeDialog.getSelectedItem());
-      outputText.setFont(new Font(fontName, Font.PLAIN, fontSize));
+/*
+  Draw the visible lines.  This is the only place where lines are formatted.
+*/
+  protected void paintComponent(Graphics gr)
+  {
+    int i;                        // index variable
+    int index;                    // index of line's bytes in cache
+    int length;                   // number of characters in line
+    long line;                    // line number in file
+    int lineHeight;               // pixels from one line to the next
+    int mark;                     // column of marked byte in line
+    FontMetrics metrics;          // size of text in our font
+    long offset;                  // file offset for a line
+    int row;                      // row number in window
+    int rows;                     // number of rows that fit in window
+    int y;                        // vertical pixel position of text baseline
+
+    gr.setColor(this.getBackground());
+    gr.fillRect(0, 0, this.getWidth(), this.getHeight());
+    gr.setColor(this.getForeground());
+    gr.setFont(this.getFont());
+    metrics = gr.getFontMetrics();
+    lineHeight = Math.max(1, metrics.getHeight());
+    y = MARGIN + metrics.getAscent();
+
+    rows = Math.max(1, ((this.getHeight() - (2 * MARGIN)) / lineHeight));
+    if (rows != this.rowCount)    // window size has changed?
+    {
+      this.rowCount = rows;       // fix scroll bar, which repaints again
+      this.setTopLine(this.topLine);
     }
-    else if (source == openButton) // "Open Files" button
+
+    if (this.file == null)
     {
-      openFiles();                // select and open files
+      gr.drawString("Click the \"View File\" button to select a file.",
+        MARGIN, y);
+      return;
     }
-    else if (source == saveButton) // "Save Output As" button
+    for (row = 0; row <= rows; row ++) // includes a partial row at bottom
     {
-      saveOutputText();           // save output text in a file
+      line = this.topLine + row;
+      if (line >= this.lineCount)
+        break;                    // no more lines in file
+      offset = line * this.width;
+      index = this.loadCache(offset, (int) Math.min(this.width,
+        (this.fileSize - offset)));
+      if (index < 0)              // can't read from file?
+      {
+        gr.drawString(((this.errorText != null) ? this.errorText
+          : "End of file reached early."), MARGIN, y);
+        break;
+      }
+      length = this.formatChars(offset, index, (int) Math.min(this.width,
+        (this.fileSize - offset)));
+
+      /* Fill the background behind marked bytes, both the hexadecimal digits
+      and the text character.  Widths are measured on the formatted line, so
+      this works for any font. */
+
+      gr.setColor(this.markColor);
+      for (i = 0; i < this.width; i ++)
+      {
+        if (((offset + i) < this.markOffset) || ((offset + i)
+          >= (this.markOffset + this.markLength)))
+        {
+          continue;               // this byte isn't marked
+        }
+        mark = this.digits + 2 + (3 * i); // hexadecimal digits
+        gr.fillRect((MARGIN + metrics.charsWidth(this.lineChars, 0, mark)),
+          (y - metrics.getAscent()), metrics.charsWidth(this.lineChars, mark,
+          2), lineHeight);
+        mark = this.digits + 2 + (3 * this.width) + 2 + i; // text character
+        gr.fillRect((MARGIN + metrics.charsWidth(this.lineChars, 0, mark)),
+          (y - metrics.getAscent()), metrics.charsWidth(this.lineChars, mark,
+          1), lineHeight);
+      }
+      gr.setColor(this.getForeground());
+
+      gr.drawChars(this.lineChars, 0, length, MARGIN, y);
+      y += lineHeight;
     }
-    else
+  }
+
+/*
+  Scrolling with the scroll bar, keyboard, and mouse wheel.
+*/
+  public void adjustmentValueChanged(AdjustmentEvent event)
+  {
+    if (this.scrollUpdate == false) // not caused by our own update?
+      this.setTopLine(((long) event.getValue()) * this.lineScale);
+  }
+
+  public void keyPressed(KeyEvent event)
+  {
+    switch (event.getKeyCode())
     {
-      putOutput("Error in userButton(): ActionEvent not recognized: " + event);
+      case KeyEvent.VK_DOWN: this.setTopLine(this.topLine + 1); break;
+      case KeyEvent.VK_END: this.setTopLine(this.lineCount); break;
+      case KeyEvent.VK_HOME: this.setTopLine(0); break;
+      case KeyEvent.VK_PAGE_DOWN:
+        this.setTopLine(this.topLine + this.rowCount); break;
+      case KeyEvent.VK_PAGE_UP:
+        this.setTopLine(this.topLine - this.rowCount); break;
+      case KeyEvent.VK_UP: this.setTopLine(this.topLine - 1); break;
+      default: break;             // ignore all other keys
     }
-  } // end of userButton() method
+  }
 
-} // end of DumpFile5 class
+  public void keyReleased(KeyEvent event) { }
+  public void keyTyped(KeyEvent event) { }
+
+  public void mouseClicked(MouseEvent event) { }
+  public void mouseEntered(MouseEvent event) { }
+  public void mouseExited(MouseEvent event) { }
+  public void mousePressed(MouseEvent event)
+  {
+    this.requestFocus();          // click on view so that keys scroll view
+  }
+  public void mouseReleased(MouseEvent event) { }
+
+  public void mouseWheelMoved(MouseWheelEvent event)
+  {
+    this.setTopLine(this.topLine + (3 * event.getWheelRotation()));
+  }
+
+} // end of DumpFile5View class
 
 // ------------------------------------------------------------------------- //
 
 /*
-  DumpFile5User class
-
-  This class listens to input from the user and passes back event parameters to
-  static methods in the main class.
+  DumpFile5Window class
+
+  This class creates the graphical interface.  It isn't part of the main class
+  because Java checks all methods in a class when the class is loaded, and
+  that would load AWT and Swing classes for a console dump that never shows a
+  window.  The graphical objects are still fields in the main class, where the
+  rest of the program uses them.  For the same reason, the main class keeps
+  the window only as a Component, the parent for dialog boxes.
 */
 
-class DumpFile5User implements ActionListener, Runnable
+class DumpFile5Window implements Runnable
 {
-  /* empty constructor */
+  String[] fontNames;             // installed font families, or null
 
-  public DumpFile5User() { }
+  public DumpFile5Window() { fontNames = null; }
 
-  /* button listener, dialog boxes, etc */
+  /* Create the window, its buttons, options, and text area.  Called once,
+  from the main() method, when no file names are on the command line. */
 
-  public void actionPerformed(ActionEvent event)
+  static void create()
   {
-    DumpFile5.userButton(event);
+    ActionListener action;        // our shared action listener
+    JFrame frame;                 // this application's window
+
+
+    /* The standard Java interface style is the most reliable, but you can
+    switch to something closer to the local system, if you want. */
+
+    try
+    {
+      UIManager.setLookAndFeel(
+        UIManager.getCrossPlatformLookAndFeelClassName());
+//      UIManager.getSystemLookAndFeelClassName());
+    }
+    catch (Exception ulafe)
+    {
+      System.err.println("Unsupported Java look-and-feel: " + ulafe);
+    }
+
+    /* Initialize shared graphical objects. */
+
+    action = new DumpFile5User(); // create our shared action listener
+    DumpFile5.fileChooser = new JFileChooser(); // our shared file chooser
+
+    /* Create the graphical interface as a series of little panels inside
+    bigger panels.  The intermediate panel names are of no lasting importance
+    and hence are only numbered (panel1, panel2, etc). */
+
+    /* Create a vertical box to stack buttons and options. */
+
+    Box panel1 = new Box(BoxLayout.Y_AXIS);
+    panel1.add(Box.createVerticalStrut(9)); // extra space at panel top
+
+    /* Create a horizontal panel to hold the action buttons. */
+
+    JPanel panel2 = new JPanel(new FlowLayout(FlowLayout.CENTER, 12, 5));
+
+    DumpFile5.openButton = new JButton("Open Files...");
+    DumpFile5.openButton.addActionListener(action);
+    DumpFile5.openButton.setMnemonic(KeyEvent.VK_O);
+    DumpFile5.openButton.setToolTipText("Select one or more files.");
+    panel2.add(DumpFile5.openButton);
+
+    DumpFile5.cancelButton = new JButton("Cancel");
+    DumpFile5.cancelButton.addActionListener(action);
+    DumpFile5.cancelButton.setEnabled(false);
+    DumpFile5.cancelButton.setMnemonic(KeyEvent.VK_C);
+    DumpFile5.cancelButton.setToolTipText("Stop finding/opening files.");
+    panel2.add(DumpFile5.cancelButton);
+
+    DumpFile5.pauseButton = new JButton("Pause");
+    DumpFile5.pauseButton.addActionListener(action);
+    DumpFile5.pauseButton.setEnabled(false);
+    DumpFile5.pauseButton.setMnemonic(KeyEvent.VK_P);
+    DumpFile5.pauseButton.setToolTipText("Pause or resume dumping files.");
+    panel2.add(DumpFile5.pauseButton);
+
+    DumpFile5.viewButton = new JButton("View File...");
+    DumpFile5.viewButton.addActionListener(action);
+    DumpFile5.viewButton.setMnemonic(KeyEvent.VK_V);
+    DumpFile5.viewButton.setToolTipText("Browse one file of any size.");
+    panel2.add(DumpFile5.viewButton);
+
+    DumpFile5.dumpButton = new JButton("Dump to File...");
+    DumpFile5.dumpButton.addActionListener(action);
+    DumpFile5.dumpButton.setMnemonic(KeyEvent.VK_D);
+    DumpFile5.dumpButton.setToolTipText(
+      "Dump files directly into an output file.");
+    panel2.add(DumpFile5.dumpButton);
+
+    DumpFile5.saveButton = new JButton("Save Output As...");
+    DumpFile5.saveButton.addActionListener(action);
+    DumpFile5.saveButton.setMnemonic(KeyEvent.VK_S);
+    DumpFile5.saveButton.setToolTipText("Save output text in a file.");
+    panel2.add(DumpFile5.saveButton);
+
+    DumpFile5.exitButton = new JButton("Exit");
+    DumpFile5.exitButton.addActionListener(action);
+    DumpFile5.exitButton.setMnemonic(KeyEvent.VK_X);
+    DumpFile5.exitButton.setToolTipText("Close this program.");
+    panel2.add(DumpFile5.exitButton);
+
+    panel1.add(panel2);
+    panel1.add(Box.createVerticalStrut(2)); // extra space between panels
+
+    /* Create a horizontal panel for options. */
+
+    JPanel panel3 = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 5));
+
+    /* Finding the installed font families can take seconds when there are
+    many fonts, so the list starts with only our default font name, and the
+    rest are filled in by a background thread after the window appears. */
+
+    DumpFile5.fontNameDialog = new JComboBox<String>(new String[] {
+      DumpFile5.fontName});
+    DumpFile5.fontNameDialog.setEditable(false); // user must select a choice
+    DumpFile5.fontNameDialog.setSelectedItem(DumpFile5.fontName);
+    DumpFile5.fontNameDialog.setToolTipText("Font name for displayed text.");
+    DumpFile5.fontNameDialog.addActionListener(action); // don't fire early
+    panel3.add(DumpFile5.fontNameDialog);
+
+    DumpFile5.fontSizeDialog = new JComboBox(DumpFile5.FONT_SIZES);
+    DumpFile5.fontSizeDialog.setEditable(false); // user must select a choice
+    DumpFile5.fontSizeDialog.setSelectedItem(String.valueOf(
+      DumpFile5.fontSize));
+                                  // selected item is our default size
+    DumpFile5.fontSizeDialog.setToolTipText("Point size for displayed text.");
+    DumpFile5.fontSizeDialog.addActionListener(action); // don't fire early
+    panel3.add(DumpFile5.fontSizeDialog);
+
+    panel3.add(Box.createHorizontalStrut(40));
+
+    DumpFile5.dumpWidthDialog = new JComboBox(DumpFile5.DUMP_WIDTHS);
+    DumpFile5.dumpWidthDialog.setEditable(false); // user must select a choice
+    DumpFile5.dumpWidthDialog.setSelectedItem(String.valueOf(
+      DumpFile5.dumpWidth));
+                                  // selected item is our default size
+    DumpFile5.dumpWidthDialog.setToolTipText(
+      "Number of input bytes per dump line.");
+    DumpFile5.dumpWidthDialog.addActionListener(action); // don't fire early
+    panel3.add(DumpFile5.dumpWidthDialog);
+    panel3.add(new JLabel("bytes per line"));
+
+    panel3.add(Box.createHorizontalStrut(30));
+
+    DumpFile5.eightBitCheckbox = new JCheckBox("8-bit text",
+      DumpFile5.eightBitFlag);
+    DumpFile5.eightBitCheckbox.setToolTipText(
+      "Select to display input bytes as 8-bit ASCII text.");
+    DumpFile5.eightBitCheckbox.addActionListener(action); // redraw file view
+    panel3.add(DumpFile5.eightBitCheckbox);
+
+    panel1.add(panel3);
+
+    /* Create a horizontal panel for the range of bytes to dump. */
+
+    JPanel panel8 = new JPanel(new FlowLayout(FlowLayout.CENTER, 5, 2));
+
+    panel8.add(new JLabel("Start offset:"));
+    DumpFile5.rangeStartText = new JTextField(10);
+    DumpFile5.rangeStartText.setToolTipText(
+      "First byte to dump; negative counts from end; blank for zero.");
+    panel8.add(DumpFile5.rangeStartText);
+
+    panel8.add(Box.createHorizontalStrut(20));
+
+    panel8.add(new JLabel("Length:"));
+    DumpFile5.rangeLengthText = new JTextField(10);
+    DumpFile5.rangeLengthText.setToolTipText(
+      "Number of bytes to dump; blank for rest of file.");
+    panel8.add(DumpFile5.rangeLengthText);
+
+    panel8.add(Box.createHorizontalStrut(20));
+    panel8.add(new JLabel("(decimal, 0x hex, k/m/g suffix)"));
+
+    panel1.add(panel8);
+    panel1.add(Box.createVerticalStrut(1)); // extra space at panel bottom
+
+    /* Put above boxed options in a panel that is centered horizontally. */
+
+    JPanel panel4 = new JPanel(new FlowLayout(FlowLayout.CENTER, 0, 0));
+    panel4.add(panel1);
+
+    /* Create a scrolling text area to hold the generated output. */
+
+    DumpFile5.outputText = new JTextArea(6, 30);
+    DumpFile5.outputText.setEditable(false); // user can't change this text area
+    DumpFile5.outputText.setFont(new Font(DumpFile5.fontName, Font.PLAIN,
+      DumpFile5.fontSize));
+    DumpFile5.outputText.setLineWrap(false); // don't allow text lines to wrap
+    DumpFile5.outputText.setMargin(new Insets(10, 12, 10, 12));
+    DumpFile5.outputText.setText(
+      "\nDump files in hexadecimal and as 8-bit text bytes."
+      + "\n\nChoose your options; then open files that you want to dump.\n\n"
+      + DumpFile5.COPYRIGHT_NOTICE + "\n\n");
+
+    /* Create a virtual view of one file, with its own scroll bar and a field
+    for jumping to an offset in the file. */
+
+    DumpFile5.viewFile = new DumpFile5View(DumpFile5.dumpWidth,
+      DumpFile5.eightBitFlag);
+    DumpFile5.viewFile.setBackground(DumpFile5.outputText.getBackground());
+    DumpFile5.viewFile.setFont(DumpFile5.outputText.getFont());
+    DumpFile5.viewFile.setForeground(DumpFile5.outputText.getForeground());
+    DumpFile5.viewFile.markColor = DumpFile5.outputText.getSelectionColor();
+
+    JPanel panel6 = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+    panel6.add(new JLabel("Go to hexadecimal offset:"));
+    DumpFile5.viewOffsetText = new JTextField(12);
+    DumpFile5.viewOffsetText.addActionListener(action);
+    DumpFile5.viewOffsetText.setToolTipText("Type an offset and press Enter.");
+    panel6.add(DumpFile5.viewOffsetText);
+
+    /* Another row has a search pattern, and buttons to jump to the next or
+    previous match.  Searching runs in a separate thread. */
+
+    JPanel panel10 = new JPanel(new FlowLayout(FlowLayout.LEFT, 5, 2));
+    panel10.add(new JLabel("Find:"));
+    DumpFile5.viewFindText = new JTextField(20);
+    DumpFile5.viewFindText.addActionListener(action);
+    DumpFile5.viewFindText.setToolTipText("Type a pattern and press Enter.");
+    panel10.add(DumpFile5.viewFindText);
+
+    DumpFile5.viewFindType = new JComboBox<String>(new String[] {
+      "hex bytes", "text", "text, any case"});
+    DumpFile5.viewFindType.setEditable(false); // user must select a choice
+    DumpFile5.viewFindType.setToolTipText(
+      "Hex bytes may have ?? for any byte.");
+    panel10.add(DumpFile5.viewFindType);
+
+    DumpFile5.viewNextButton = new JButton("Next");
+    DumpFile5.viewNextButton.addActionListener(action);
+    DumpFile5.viewNextButton.setMnemonic(KeyEvent.VK_N);
+    DumpFile5.viewNextButton.setToolTipText("Jump to next match in file.");
+    panel10.add(DumpFile5.viewNextButton);
+
+    DumpFile5.viewPrevButton = new JButton("Previous");
+    DumpFile5.viewPrevButton.addActionListener(action);
+    DumpFile5.viewPrevButton.setMnemonic(KeyEvent.VK_P);
+    DumpFile5.viewPrevButton.setToolTipText("Jump to previous match in file.");
+    panel10.add(DumpFile5.viewPrevButton);
+
+    DumpFile5.viewFindLabel = new JLabel("");
+    panel10.add(DumpFile5.viewFindLabel);
+    DumpFile5.viewTimer = new Timer(DumpFile5.PUBLISH_DELAY, action);
+                                  // checks for search done
+
+    Box panel9 = new Box(BoxLayout.Y_AXIS);
+    panel9.add(panel6);
+    panel9.add(panel10);
+
+    JPanel panel7 = new JPanel(new BorderLayout(0, 0));
+    panel7.add(panel9, BorderLayout.NORTH);
+    panel7.add(DumpFile5.viewFile, BorderLayout.CENTER);
+    DumpFile5.heatmap = new DumpFile5Heatmap(); // beside scroll bar
+    DumpFile5.heatmap.setBackground(DumpFile5.outputText.getBackground());
+    JPanel panel11 = new JPanel(new BorderLayout(2, 0));
+    panel11.add(DumpFile5.viewFile.scrollBar, BorderLayout.WEST);
+    panel11.add(DumpFile5.heatmap, BorderLayout.EAST);
+    panel7.add(panel11, BorderLayout.EAST);
+
+    DumpFile5.outputTabs = new JTabbedPane();
+    DumpFile5.outputTabs.addTab("Dump Output", new JScrollPane(
+      DumpFile5.outputText));
+    DumpFile5.outputTabs.addTab("File View", panel7);
+
+    /* Create a progress bar for long dumps, and a timer that updates the
+    progress bar while a dump is running.  The same timer moves output from
+    the dump thread into the text area, a batch at a time. */
+
+    DumpFile5.progressBar = new JProgressBar(0, 1000); // tenths of a percent
+    DumpFile5.progressBar.setStringPainted(true); // show percentage as text
+    DumpFile5.progressBar.setString("");  // but nothing until we start dumping
+    DumpFile5.progressTimer = new Timer(DumpFile5.PUBLISH_DELAY, action);
+                                  // ten times a second
+    DumpFile5.publishBuffer = new StringBuffer(); // no dump output waiting
+    DumpFile5.publishScroll = false;
+
+    /* Create the main window frame for this application.  Stack buttons and
+    options above the text area.  Keep text in the center so that it expands
+    horizontally and vertically. */
+
+    frame = new JFrame(DumpFile5.PROGRAM_TITLE);
+    Container panel5 = frame.getContentPane(); // where content meets frame
+    panel5.setLayout(new BorderLayout(5, 5));
+    panel5.add(panel4, BorderLayout.NORTH);
+    panel5.add(DumpFile5.outputTabs, BorderLayout.CENTER);
+    panel5.add(DumpFile5.progressBar, BorderLayout.SOUTH);
+
+    frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+    frame.setLocation(50, 50);    // top left corner of application window
+    frame.setSize(780, 500);      // initial size of application window
+    frame.validate();             // do the application window layout
+    DumpFile5.mainFrame = frame;  // parent for dialog boxes
+    frame.setVisible(true);       // show the application window
+
+    /* Start the background thread for the list of font names. */
+
+    new Thread(new DumpFile5Window(), "fontRunner").start();
   }
 
-  /* Call a separate heavy-duty processing thread in the main class. */
+  /* Find the names of installed font families in a background thread, then
+  run again on the GUI event thread to put them in the font list.  Changing
+  the list model keeps the selected name and doesn't fire an action. */
 
   public void run()
   {
-    DumpFile5.openFilesRunner();
+    DefaultComboBoxModel<String> model; // new list of font names
+
+    if (this.fontNames == null)   // background thread
+    {
+      this.fontNames = GraphicsEnvironment.getLocalGraphicsEnvironment()
+        .getAvailableFontFamilyNames();
+      EventQueue.invokeLater(this); // call again on GUI event thread
+    }
+    else
+    {
+      model = new DefaultComboBoxModel<String>(this.fontNames);
+      model.setSelectedItem(DumpFile5.fontName);
+      DumpFile5.fontNameDialog.setModel(model);
+    }
   }
 
-} // end of DumpFile5User class
+} // end of DumpFile5Window class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  DumpFile5Worker class
+
+  This class runs one background thread in the context of the main class: for
+  chunks of one large file, for a batch of files, for regions of a file being
+  searched, for searching the file view, or for making the number format.
+*/
+
+class DumpFile5Worker implements Runnable
+{
+  static final int BATCH = 1;     // dump a batch of files
+  static final int CHUNKS = 0;    // dump chunks of one large file
+  static final int NUMBERS = 4;   // make number format before it's needed
+  static final int SEARCH = 2;    // search regions of one large file
+  static final int VIEW = 3;      // search the file view for next match
+
+  int kind;                       // what this thread does
+
+  public DumpFile5Worker(int kind) { this.kind = kind; }
+
+  /* Call a thread method in the main class. */
+
+  public void run()
+  {
+    if (this.kind == BATCH)
+      DumpFile5.batchRunner();
+    else if (this.kind == SEARCH)
+      DumpFile5.searchRunner();
+    else if (this.kind == VIEW)
+      DumpFile5.viewRunner();
+    else if (this.kind == NUMBERS)
+      DumpFile5.formatComma(0);   // result isn't used, only the format
+    else
+      DumpFile5.chunkRunner();
+  }
+
+} // end of DumpFile5Worker class
 
 /* Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL. */
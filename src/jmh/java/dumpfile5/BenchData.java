@@ -0,0 +1,169 @@
+/*
+  Dump File #5 - Benchmark Data and Access to the Dump Program
+  Java class name: BenchData
+
+  Shared code for the JMH benchmarks in this package.  JMH doesn't allow
+  benchmarks in the default package, and a class in a named package can't
+  refer to classes in the default package, so the DumpFile5 classes are found
+  by name and called through method handles.  The handles are looked up once
+  for each trial, and calling them costs nothing next to formatting a whole
+  buffer.
+*/
+
+package dumpfile5;
+
+import java.io.*;                 // files and output streams
+import java.lang.invoke.*;        // method handles into the dump program
+import java.lang.reflect.*;       // finding classes in the default package
+import java.net.URISyntaxException; // class path of the dump program
+import java.nio.*;                // byte buffers
+import java.nio.channels.*;       // byte channels for dump output
+import java.util.Arrays;          // filling buffers with zeros
+import java.util.Random;          // input data for benchmarks
+
+final class BenchData
+{
+  /* constants */
+
+  static final String[] TYPES = {"random", "text", "zeros", "sparse"};
+                                  // kinds of input data, in order
+
+  private BenchData() { }         // only static methods here
+
+/*
+  Fill a buffer with one kind of input data: random bytes, printable text with
+  line breaks, all zeros, or sparse data that is mostly zeros with a few
+  random blocks.  Random and text data have no duplicate dump lines; zeros and
+  sparse data are mostly duplicates.  The caller gives us the random numbers,
+  so that the same seed always creates the same data.
+*/
+  static void fill(
+    String type,                  // kind of data from <TYPES>
+    byte[] data,                  // buffer to be filled
+    Random random)                // source of random numbers
+  {
+    int i;                        // index variable
+    int j;                        // index variable
+
+    Arrays.fill(data, (byte) 0);  // zeros unless something else is wanted
+    if (type.equals("random"))
+      random.nextBytes(data);
+    else if (type.equals("text"))
+    {
+      for (i = 0; i < data.length; i ++)
+      {
+        j = random.nextInt(80);   // mostly letters, some spaces and newlines
+        data[i] = (byte) ((j == 0) ? '\n' : (j < 12) ? ' '
+          : ('a' + random.nextInt(26)));
+      }
+    }
+    else if (type.equals("sparse"))
+    {
+      for (i = 0; i < data.length; i += 0x1000) // one block in 16 is random
+      {
+        if (random.nextInt(16) == 0)
+        {
+          for (j = i; j < Math.min(data.length, (i + 0x1000)); j ++)
+            data[j] = (byte) random.nextInt(256);
+        }
+      }
+    }
+    else if (type.equals("zeros") == false)
+      throw new IllegalArgumentException("Unknown kind of data: " + type);
+  }
+
+/*
+  Create a file with the given number of megabytes, with every kind of data
+  mixed one megabyte at a time.  The file is deleted when the JVM exits, if
+  the caller doesn't delete it first.
+*/
+  static File mixedFile(int megabytes) throws IOException
+  {
+    byte[][] blocks;              // one megabyte of each kind of data
+    File file;                    // file that we create
+    int i;                        // index variable
+    FileOutputStream out;         // output stream for creating file
+
+    blocks = new byte[TYPES.length][0x100000];
+    for (i = 0; i < blocks.length; i ++)
+      fill(TYPES[i], blocks[i], new Random(i));
+    file = File.createTempFile("DumpFile5", ".bin");
+    file.deleteOnExit();          // in case we don't get to delete it
+    out = new FileOutputStream(file);
+    try
+    {
+      for (i = 0; i < megabytes; i ++)
+        out.write(blocks[i % blocks.length]);
+    }
+    finally { out.close(); }
+    return (file);
+  }
+
+/*
+  Make a formatter with the given bytes per line and 7-bit or 8-bit text, and
+  return a handle for its format(ByteBuffer, long, WritableByteChannel) method,
+  already bound to that formatter.
+*/
+  static MethodHandle formatter(int width, boolean eightBit)
+    throws ReflectiveOperationException
+  {
+    Constructor<?> formatter;     // DumpFile5Formatter(DumpFile5Options)
+    Method format;                // format() with a byte channel for output
+    Constructor<?> options;       // DumpFile5Options(int, boolean)
+
+    options = Class.forName("DumpFile5Options").getConstructor(int.class,
+      boolean.class);
+    options.setAccessible(true);  // public, but in a package-private class
+    formatter = Class.forName("DumpFile5Formatter").getConstructor(
+      options.getDeclaringClass());
+    formatter.setAccessible(true);
+    format = formatter.getDeclaringClass().getMethod("format",
+      ByteBuffer.class, long.class, WritableByteChannel.class);
+    format.setAccessible(true);
+    return (MethodHandles.lookup().unreflect(format).bindTo(
+      formatter.newInstance(options.newInstance(width, eightBit))));
+  }
+
+/*
+  Return the class path entry with the DumpFile5 program, for running the
+  program in its own JVM.
+*/
+  static String programPath()
+    throws ReflectiveOperationException, URISyntaxException
+  {
+    return (new File(Class.forName("DumpFile5").getProtectionDomain()
+      .getCodeSource().getLocation().toURI()).getPath());
+  }
+
+} // end of BenchData class
+
+// ------------------------------------------------------------------------- //
+
+/*
+  BenchSink class
+
+  A byte channel that counts dump output and throws it away, so that the
+  benchmarks measure formatting without the cost of writing output.
+*/
+
+final class BenchSink implements WritableByteChannel
+{
+  long count;                     // number of bytes written so far
+
+  public void close() { }
+
+  public boolean isOpen() { return (true); }
+
+  public int write(ByteBuffer buffer)
+  {
+    int length;                   // number of bytes in <buffer>
+
+    length = buffer.remaining();
+    buffer.position(buffer.limit()); // all bytes have been "written"
+    count += length;
+    return (length);
+  }
+
+} // end of BenchSink class
+
+/* Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL. */
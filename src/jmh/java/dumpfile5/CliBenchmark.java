@@ -0,0 +1,75 @@
+/*
+  Dump File #5 - Command Line Benchmark
+  Java class name: CliBenchmark
+
+  Measure the whole program from start to finish: create a large file with
+  every kind of benchmark data mixed one megabyte at a time, then run
+  "java DumpFile5" on that file in its own JVM, the same as a user would, with
+  the dump output thrown away.  This covers reading the file, formatting, and
+  writing the output, and compares sequential dumps ("-p0") with parallel
+  dumps ("-p").  The default file is 2 GB; choose another size with:
+
+      gradle jmh -Pjmh="CliBenchmark -p megabytes=8192"
+
+  The score is in seconds for one dump, including a fraction of a second to
+  start the JVM.  Divide the megabytes by the score for megabytes per second.
+*/
+
+package dumpfile5;
+
+import java.io.*;                 // files and processes
+import java.util.concurrent.TimeUnit; // units for benchmark results
+import org.openjdk.jmh.annotations.*; // JMH benchmark annotations
+
+@BenchmarkMode(Mode.SingleShotTime)
+@Fork(1)
+@Measurement(iterations = 3)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 1)
+
+public class CliBenchmark
+{
+  /* parameters from JMH */
+
+  @Param({"2048"})
+  public int megabytes;           // size of file to dump
+
+  @Param({"-p0", "-p"})
+  public String threads;          // sequential or parallel dump option
+
+  /* instance variables */
+
+  File file;                      // file that we dump
+  ProcessBuilder program;         // command line for the dump program
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    file = BenchData.mixedFile(megabytes);
+    program = new ProcessBuilder(new File(System.getProperty("java.home"),
+      ("bin" + File.separator + "java")).getPath(), "-cp",
+      BenchData.programPath(), "DumpFile5", threads, file.getPath());
+    program.redirectError(ProcessBuilder.Redirect.INHERIT);
+    program.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    file.delete();
+  }
+
+  @Benchmark
+  public void dump() throws IOException, InterruptedException
+  {
+    int status;                   // exit code from the dump program
+
+    status = program.start().waitFor();
+    if (status != 0)
+      throw new IOException("DumpFile5 failed with exit code " + status);
+  }
+
+} // end of CliBenchmark class
+
+/* Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL. */
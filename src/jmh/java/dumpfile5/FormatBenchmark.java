@@ -0,0 +1,79 @@
+/*
+  Dump File #5 - Formatting Benchmark
+  Java class name: FormatBenchmark
+
+  Measure how fast dump lines are formatted in memory, for each number of bytes
+  per line ("-w"), for 7-bit and 8-bit text ("-e0" and "-e1"), and for random,
+  text, zero-filled, and sparse input.  Random and text input have no
+  duplicate lines; zero-filled and sparse input are mostly duplicates, which
+  exercises the ellipses for identical lines.  This is the hot path of every
+  dump: hexadecimal digits, text characters, and comparing each line with the
+  one before it.
+
+  Each operation formats the same 16 MB buffer as one complete dump, and the
+  score is in megabytes of input per second.  Output is counted and thrown
+  away.
+*/
+
+package dumpfile5;
+
+import java.lang.invoke.MethodHandle; // bound format() method
+import java.nio.ByteBuffer;       // input data in memory
+import java.util.Random;          // input data for benchmarks
+import java.util.concurrent.TimeUnit; // units for benchmark results
+import org.openjdk.jmh.annotations.*; // JMH benchmark annotations
+
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OperationsPerInvocation(FormatBenchmark.MEGABYTES)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+
+public class FormatBenchmark
+{
+  /* constants */
+
+  static final int MEGABYTES = 16; // size of input buffer in megabytes
+
+  /* parameters from JMH */
+
+  @Param({"random", "text", "zeros", "sparse"})
+  public String data;             // kind of input data
+
+  @Param({"false", "true"})
+  public boolean eightBit;        // true if we display bytes as 8-bit text
+
+  @Param({"4", "8", "12", "16", "24", "32"}) // same as DUMP_WIDTHS
+  public int width;               // number of input bytes per dump line
+
+  /* instance variables */
+
+  MethodHandle format;            // formatter's format() for a byte channel
+  ByteBuffer input;               // input bytes, never changed
+  BenchSink sink;                 // counts and discards dump output
+
+  @Setup(Level.Trial)
+  public void setup() throws ReflectiveOperationException
+  {
+    byte[] bytes;                 // input data for this kind of benchmark
+
+    bytes = new byte[MEGABYTES * 0x100000];
+    BenchData.fill(data, bytes, new Random(data.hashCode()));
+    format = BenchData.formatter(width, eightBit);
+    input = ByteBuffer.wrap(bytes);
+    sink = new BenchSink();
+  }
+
+  @Benchmark
+  public long format() throws Throwable
+  {
+    sink.count = 0;
+    format.invoke(input, 0L, sink); // one complete dump of the buffer
+    return (sink.count);          // so that JMH knows the output was used
+  }
+
+} // end of FormatBenchmark class
+
+/* Copyright (c) 2007 by Keith Fenske.  Apache License or GNU GPL. */